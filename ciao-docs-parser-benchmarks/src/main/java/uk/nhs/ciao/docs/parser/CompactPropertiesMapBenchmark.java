@@ -0,0 +1,67 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Compares populating the properties of a document held in a {@link java.util.LinkedHashMap} and
+ * in a {@link CompactPropertiesMap}.
+ * <p>
+ * Keys and values are shared between documents so that only the map structures are allocated. Run with
+ * the GC profiler (<code>-prof gc</code>) to compare the bytes allocated per document
+ * (<code>gc.alloc.rate.norm</code>) - this includes tables discarded while the map grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompactPropertiesMapBenchmark {
+	@Param({"10", "50"})
+	public int properties;
+	
+	private String[] keys;
+	private String[] values;
+	
+	@Setup
+	public void setup() {
+		keys = new String[properties];
+		values = new String[properties];
+		for (int index = 0; index < properties; index++) {
+			keys[index] = "property" + index;
+			values[index] = "value" + index;
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Object> linkedHashMap() {
+		return populate(Maps.<String, Object>newLinkedHashMap());
+	}
+	
+	@Benchmark
+	public Map<String, Object> compactPropertiesMap() {
+		return populate(new CompactPropertiesMap());
+	}
+	
+	private Map<String, Object> populate(final Map<String, Object> map) {
+		for (int index = 0; index < keys.length; index++) {
+			map.put(keys[index], values[index]);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,62 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the number of NHS number validations per second using {@link NHSNumber#valueOf(CharSequence)}
+ * and using the primitive {@link NHSNumber#parse(CharSequence)}.
+ * <p>
+ * The candidates are a random mix of valid and invalid numbers in normalised and display forms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NHSNumberBenchmark {
+	private static final int CANDIDATES = 1000;
+	
+	private String[] candidates;
+	
+	@Setup
+	public void setup() {
+		final Random random = new Random(1);
+		candidates = new String[CANDIDATES];
+		for (int index = 0; index < CANDIDATES; index++) {
+			final String digits = String.format("%010d", (long)(random.nextDouble() * 9999999999L));
+			candidates[index] = index % 2 == 0 ? digits : digits.substring(0, 3) + " " + digits.substring(3, 6)
+					+ " " + digits.substring(6);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CANDIDATES)
+	public void valueOf(final Blackhole blackhole) {
+		for (final String candidate: candidates) {
+			blackhole.consume(NHSNumber.valueOf(candidate).normalise().isValid());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CANDIDATES)
+	public void parse(final Blackhole blackhole) {
+		for (final String candidate: candidates) {
+			blackhole.consume(NHSNumber.parse(candidate) != NHSNumber.INVALID);
+		}
+	}
+}
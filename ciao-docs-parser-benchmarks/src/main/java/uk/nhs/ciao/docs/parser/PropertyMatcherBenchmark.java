@@ -0,0 +1,109 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the number of selections per second made by the {@link PropertyPath} interpreter and
+ * by compiled {@link PropertyMatcher} chains.
+ * <p>
+ * The selectors are evaluated against a discharge summary with nested medication lists
+ * (<code>medications[*].doses[*]</code>). Each operation selects the first value and then all values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyMatcherBenchmark {
+	@Param({
+		"dischargeSummary.medications[*].name",
+		"dischargeSummary.medications[*].doses[*].amount",
+		"dischargeSummary.medications[*].doses[*].*",
+		"dischargeSummary.medications[3].doses[0].route",
+		"dischargeSummary.*.nhsNumber"
+	})
+	public String selector;
+	
+	@Param("20")
+	public int medications;
+	
+	@Param("5")
+	public int doses;
+	
+	private Map<String, Object> properties;
+	private Object[] segments;
+	private PropertyMatcher matcher;
+	
+	@Setup
+	public void setup() {
+		final boolean allowWildcards = true;
+		properties = createDischargeSummary(medications, doses);
+		segments = PropertyPath.parse(selector, allowWildcards);
+		matcher = PropertyMatcher.compile(segments);
+	}
+	
+	@Benchmark
+	public void interpreted(final Blackhole blackhole) {
+		blackhole.consume(PropertyPath.getEntry(Object.class, properties, segments));
+		blackhole.consume(PropertyPath.findAll(Object.class, properties, segments));
+	}
+	
+	@Benchmark
+	public void compiled(final Blackhole blackhole) {
+		final Object[] prefix = new Object[segments.length];
+		blackhole.consume(matcher.first(Object.class, properties, prefix));
+		
+		final List<Map.Entry<Object[], Object>> results = Lists.newArrayList();
+		matcher.all(Object.class, properties, prefix, results);
+		blackhole.consume(results);
+	}
+	
+	private static Map<String, Object> createDischargeSummary(final int medications, final int doses) {
+		final List<Object> medicationList = Lists.newArrayList();
+		for (int medication = 0; medication < medications; medication++) {
+			final List<Object> doseList = Lists.newArrayList();
+			for (int dose = 0; dose < doses; dose++) {
+				final Map<String, Object> doseMap = Maps.newLinkedHashMap();
+				doseMap.put("amount", (dose + 1) * 5 + "mg");
+				doseMap.put("frequency", "Twice daily");
+				doseMap.put("route", "Oral");
+				doseList.add(doseMap);
+			}
+			
+			final Map<String, Object> medicationMap = Maps.newLinkedHashMap();
+			medicationMap.put("name", "Medication " + medication);
+			medicationMap.put("doses", doseList);
+			medicationList.add(medicationMap);
+		}
+		
+		final Map<String, Object> patient = Maps.newLinkedHashMap();
+		patient.put("nhsNumber", "9434765919");
+		
+		final Map<String, Object> summary = Maps.newLinkedHashMap();
+		summary.put("patient", patient);
+		summary.put("medications", medicationList);
+		
+		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		properties.put("dischargeSummary", summary);
+		return properties;
+	}
+}
@@ -0,0 +1,91 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the number of property lookups per second when names and selectors are parsed
+ * on each lookup and when they are resolved via the interned {@link PropertyName#valueOf(String)}
+ * and {@link PropertySelector#valueOf(String)}.
+ * <p>
+ * Each operation looks up every property name of a small patient document plus a set of
+ * selectors (including wildcards and escaped characters).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyNameBenchmark {
+	private static final String[] SELECTORS = {
+		"name", "addresses[0]", "addresses[*].city", "addresses[0].*", "addresses[2].*",
+		"addresses[1].unmapped", "key\\.with\\[\\]\\.special\\.chars"
+	};
+	
+	private Map<String, Object> properties;
+	private List<String> names;
+	
+	@Setup
+	public void setup() {
+		properties = Maps.newLinkedHashMap();
+		properties.put("name", "Mr Example");
+		properties.put("age", 28);
+		properties.put("addresses", Lists.<Object>newArrayList(
+				createAddress("17 Somewhere Road", "London", "AB12 3CD"),
+				createAddress("27 Somewhere Else", "Oxford", "CD34 5EF")));
+		properties.put("key.with[].special.chars", "special-value");
+		
+		names = Lists.newArrayList();
+		for (final PropertyName name: PropertyName.findAll(properties, true)) {
+			if (!name.isRoot()) {
+				names.add(name.getPath());
+			}
+		}
+	}
+	
+	@Benchmark
+	public void parsed(final Blackhole blackhole) {
+		final boolean allowWildcards = true;
+		for (final String name: names) {
+			blackhole.consume(new PropertyName(PropertyPath.parse(name)).get(properties));
+		}
+		for (final String selector: SELECTORS) {
+			blackhole.consume(new PropertySelector(PropertyPath.parse(selector, allowWildcards)).selectValue(properties));
+		}
+	}
+	
+	@Benchmark
+	public void interned(final Blackhole blackhole) {
+		for (final String name: names) {
+			blackhole.consume(PropertyName.valueOf(name).get(properties));
+		}
+		for (final String selector: SELECTORS) {
+			blackhole.consume(PropertySelector.valueOf(selector).selectValue(properties));
+		}
+	}
+	
+	private static Map<String, Object> createAddress(final String addressLine, final String city, final String postcode) {
+		final Map<String, Object> address = Maps.newLinkedHashMap();
+		address.put("addressLine", addressLine);
+		address.put("city", city);
+		address.put("postcode", postcode);
+		return address;
+	}
+}
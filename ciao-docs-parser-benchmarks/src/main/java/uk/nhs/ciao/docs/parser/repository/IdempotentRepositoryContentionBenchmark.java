@@ -0,0 +1,116 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of idempotent repositories when many consumers poll the same folder.
+ * <p>
+ * Each consumer (benchmark thread) repeatedly 'lists' the same folder of file names and, for each file, follows
+ * the checks made by the Camel file consumer: the file is skipped if it is in the idempotent repository,
+ * otherwise it is claimed via the in-progress repository, added to the idempotent repository and then
+ * released. Each operation checks a single file. The repositories are recreated for each iteration, and
+ * the iteration fails if any file is processed more than once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(64)
+public class IdempotentRepositoryContentionBenchmark {
+	@Param({"memory", "concurrent"})
+	public String repository;
+	
+	@Param("20000")
+	public int files;
+	
+	private IdempotentRepository<String> idempotentRepository;
+	private IdempotentRepository<String> inProgressRepository;
+	private final AtomicInteger consumers = new AtomicInteger();
+	private AtomicInteger processed;
+	
+	/**
+	 * The listing position of a consumer - consumers start listing at different positions, as if
+	 * polling at different times
+	 */
+	@State(Scope.Thread)
+	public static class Consumer {
+		private int offset;
+		private int count;
+		
+		@Setup
+		public void setup(final IdempotentRepositoryContentionBenchmark benchmark) {
+			offset = benchmark.consumers.getAndIncrement() * 997;
+		}
+		
+		private String nextFileName(final int files) {
+			return "/input/document-" + ((offset + count++) % files) + ".pdf";
+		}
+	}
+	
+	@Setup(Level.Iteration)
+	public void setup() throws Exception {
+		if ("memory".equals(repository)) {
+			idempotentRepository = MemoryIdempotentRepository.memoryIdempotentRepository(files * 2);
+			inProgressRepository = MemoryIdempotentRepository.memoryIdempotentRepository(files * 2);
+		} else {
+			final ConcurrentIdempotentRepository concurrentIdempotentRepository = new ConcurrentIdempotentRepository();
+			final ConcurrentIdempotentRepository concurrentInProgressRepository = new ConcurrentIdempotentRepository();
+			concurrentIdempotentRepository.start();
+			concurrentInProgressRepository.start();
+			idempotentRepository = concurrentIdempotentRepository;
+			inProgressRepository = concurrentInProgressRepository;
+		}
+		processed = new AtomicInteger();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		if (idempotentRepository instanceof ConcurrentIdempotentRepository) {
+			((ConcurrentIdempotentRepository)idempotentRepository).stop();
+			((ConcurrentIdempotentRepository)inProgressRepository).stop();
+		}
+		
+		if (processed.get() > files) {
+			throw new IllegalStateException(repository + ": files were processed more than once - expected at most "
+					+ files + ", actual: " + processed.get());
+		}
+	}
+	
+	@Benchmark
+	public boolean poll(final Consumer consumer) {
+		final String fileName = consumer.nextFileName(files);
+		if (idempotentRepository.contains(fileName) || !inProgressRepository.add(fileName)) {
+			return false;
+		}
+		
+		try {
+			if (idempotentRepository.add(fileName)) {
+				processed.incrementAndGet();
+				return true;
+			}
+			return false;
+		} finally {
+			inProgressRepository.remove(fileName);
+		}
+	}
+}
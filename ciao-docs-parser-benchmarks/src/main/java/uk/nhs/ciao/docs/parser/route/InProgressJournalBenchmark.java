@@ -0,0 +1,129 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Compares the number of in-progress events stored per second using the individual
+ * file layout and an {@link InProgressJournal}.
+ * <p>
+ * Each layout is measured with the same durability guarantee: with each event synced to disk before
+ * it is acknowledged (a file channel force per file, or a journal sync per batch), and with syncing left
+ * to the operating system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class InProgressJournalBenchmark {
+	private static final byte[] CONTENT = "{\"event\":\"sent\"}".getBytes(Charsets.UTF_8);
+	
+	@Param({"files", "journal"})
+	public String layout;
+	
+	@Param({"true", "false"})
+	public boolean sync;
+	
+	private File root;
+	private InProgressJournal journal;
+	private AtomicInteger sequence;
+	
+	@Setup
+	public void setup() throws Exception {
+		root = Files.createTempDir();
+		sequence = new AtomicInteger();
+		if ("journal".equals(layout)) {
+			journal = new InProgressJournal(new File(root, "journal"), sync ? 0 : -1, 512);
+			journal.start();
+		}
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		if (journal != null) {
+			journal.stop();
+			journal = null;
+		}
+		deleteRecursively(root);
+	}
+	
+	@Benchmark
+	public void store() throws Exception {
+		final int index = sequence.incrementAndGet();
+		final String correlationId = Integer.toString(index % 1000);
+		final String path = correlationId + "/events/" + index + "-document-sent";
+		
+		if (journal != null) {
+			journal.append(correlationId, path, CONTENT).get();
+		} else {
+			storeFile(new File(root, path));
+		}
+	}
+	
+	private void storeFile(final File file) throws IOException {
+		Files.createParentDirs(file);
+		
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(CONTENT);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			if (sync) {
+				channel.force(false);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static void deleteRecursively(final File folder) throws IOException {
+		java.nio.file.Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+				java.nio.file.Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult postVisitDirectory(final Path directory, final IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				java.nio.file.Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,306 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.IllegalFieldValueException;
+import org.joda.time.LocalDate;
+import org.joda.time.chrono.ISOChronology;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeParser;
+import org.joda.time.format.DateTimeParserBucket;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Parses dates matching a pattern without throwing exceptions for values which do not match.
+ * <p>
+ * Parsers are immutable and thread-safe - instances created via {@link #forPattern(String, boolean)} are
+ * shared by all callers using the same pattern.
+ * <p>
+ * Values of the common patterns <code>dd/MM/yyyy</code>, <code>dd-MMM-yyyy</code> and <code>yyyyMMdd</code>
+ * are parsed by hand when they are in canonical form (e.g. two digit days). All other values are parsed by
+ * the Joda parser of the pattern - failed matches are reported by position rather than by exception, so
+ * only non-canonical values which match the pattern but contain out-of-range fields (e.g. <code>31/2/2015</code>)
+ * incur the cost of an exception.
+ */
+public final class DateParser {
+	/**
+	 * The maximum number of distinct pattern parsers to retain
+	 */
+	private static final int MAX_PARSERS = 100;
+
+	private static final ConcurrentMap<String, DateParser> PARSERS = CacheBuilder.newBuilder()
+			.maximumSize(MAX_PARSERS)
+			.<String, DateParser>build()
+			.asMap();
+
+	private static final int DEFAULT_YEAR = 2000;
+
+	/**
+	 * Returned by the fast formats for values in canonical form with out-of-range fields
+	 */
+	private static final LocalDate INVALID_DATE = new LocalDate(0, ISOChronology.getInstanceUTC());
+
+	private final FastFormat fastFormat;
+	private final DateTimeParser parser;
+	private final Chronology chronology;
+	private final Locale locale;
+	private final Integer pivotYear;
+	private final boolean lenient;
+	private final String[] shortMonths;
+
+	private DateParser(final FastFormat fastFormat, final DateTimeFormatter formatter, final boolean lenient) {
+		this.fastFormat = fastFormat;
+		this.parser = Preconditions.checkNotNull(formatter.getParser(), "formatter does not support parsing");
+		this.chronology = DateTimeUtils.getChronology(formatter.getChronology()).withUTC();
+		this.locale = formatter.getLocale() == null ? Locale.getDefault() : formatter.getLocale();
+		this.pivotYear = formatter.getPivotYear();
+		this.lenient = lenient;
+		this.shortMonths = fastFormat == FastFormat.TEXT_MONTH ? DateFormatSymbols.getInstance(locale).getShortMonths() : null;
+	}
+
+	/**
+	 * Returns the shared parser for the specified pattern which requires the whole value to match
+	 */
+	public static DateParser forPattern(final String pattern) {
+		final boolean lenient = false;
+		return forPattern(pattern, lenient);
+	}
+
+	/**
+	 * Returns the shared parser for the specified pattern
+	 *
+	 * @param pattern The Joda date pattern to parse
+	 * @param lenient true if values may contain unmatched trailing text
+	 * @throws IllegalArgumentException If the pattern is not valid
+	 */
+	public static DateParser forPattern(final String pattern, final boolean lenient) {
+		Preconditions.checkNotNull(pattern);
+
+		final String key = (lenient ? "~" : "=") + pattern;
+		DateParser parser = PARSERS.get(key);
+		if (parser == null) {
+			parser = new DateParser(FastFormat.forPattern(pattern), DateTimeFormat.forPattern(pattern), lenient);
+			final DateParser existing = PARSERS.putIfAbsent(key, parser);
+			if (existing != null) {
+				parser = existing;
+			}
+		}
+
+		return parser;
+	}
+
+	/**
+	 * Creates a new (unshared) parser using the specified Joda formatter
+	 *
+	 * @param formatter The formatter to parse values with
+	 * @param lenient true if values may contain unmatched trailing text
+	 */
+	public static DateParser forFormatter(final DateTimeFormatter formatter, final boolean lenient) {
+		Preconditions.checkNotNull(formatter);
+		return new DateParser(FastFormat.NONE, formatter, lenient);
+	}
+
+	/**
+	 * Tests if the specified value is a valid date
+	 */
+	public boolean isValid(final CharSequence value) {
+		return parse(value) != null;
+	}
+
+	/**
+	 * Parses the specified value
+	 *
+	 * @return The parsed date, or null if the value is null or is not a valid date
+	 */
+	public LocalDate parse(final CharSequence value) {
+		if (value == null) {
+			return null;
+		}
+
+		final String text = value.toString();
+		final LocalDate date = fastFormat.parse(this, text);
+		if (date == INVALID_DATE) {
+			return null;
+		}
+		return date != null ? date : parseWithFormatter(text);
+	}
+
+	private LocalDate parseWithFormatter(final String text) {
+		final DateTimeParserBucket bucket = new DateTimeParserBucket(0, chronology, locale, pivotYear, DEFAULT_YEAR);
+		final int position = parser.parseInto(bucket, text, 0);
+		if (position < 0 || (!lenient && position < text.length())) {
+			return null;
+		}
+
+		try {
+			return new LocalDate(bucket.computeMillis(true, text), chronology);
+		} catch (IllegalFieldValueException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Tests if the parsed value ends at the specified index
+	 */
+	private boolean isEnd(final String text, final int index) {
+		if (index == text.length()) {
+			return true;
+		}
+
+		// Joda would continue parsing any trailing digits into the final field
+		return lenient && !isDigit(text, index);
+	}
+
+	/**
+	 * Creates the date for the specified fields - or {@link #INVALID_DATE} if they are out of range
+	 */
+	private LocalDate createDate(final int year, final int month, final int day) {
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+			return INVALID_DATE;
+		}
+		return new LocalDate(year, month, day, chronology);
+	}
+
+	private static int daysInMonth(final int year, final int month) {
+		switch (month) {
+		case 2:
+			final boolean leapYear = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+			return leapYear ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Parses the specified number of digits, returning -1 if any character is not a digit
+	 */
+	private static int parseDigits(final String text, final int start, final int count) {
+		if (start + count > text.length()) {
+			return -1;
+		}
+
+		int value = 0;
+		for (int index = start; index < start + count; index++) {
+			if (!isDigit(text, index)) {
+				return -1;
+			}
+			value = (value * 10) + (text.charAt(index) - '0');
+		}
+		return value;
+	}
+
+	private static boolean isDigit(final String text, final int index) {
+		final char c = text.charAt(index);
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isChar(final String text, final int index, final char c) {
+		return index < text.length() && text.charAt(index) == c;
+	}
+
+	/**
+	 * Hand-rolled parsers for common patterns.
+	 * <p>
+	 * Each parser only accepts values in canonical form, returning null otherwise - these values are
+	 * handled by the Joda parser. Canonical values with out-of-range fields are rejected by returning
+	 * {@link DateParser#INVALID_DATE}.
+	 */
+	private enum FastFormat {
+		NONE {
+			@Override
+			public LocalDate parse(final DateParser parser, final String text) {
+				return null;
+			}
+		},
+
+		/**
+		 * dd/MM/yyyy
+		 */
+		SLASHED {
+			@Override
+			public LocalDate parse(final DateParser parser, final String text) {
+				if (!isChar(text, 2, '/') || !isChar(text, 5, '/') || text.length() < 10 || !parser.isEnd(text, 10)) {
+					return null;
+				}
+
+				final int day = parseDigits(text, 0, 2);
+				final int month = parseDigits(text, 3, 2);
+				final int year = parseDigits(text, 6, 4);
+				return day < 0 || month < 0 || year < 0 ? null : parser.createDate(year, month, day);
+			}
+		},
+
+		/**
+		 * dd-MMM-yyyy
+		 */
+		TEXT_MONTH {
+			@Override
+			public LocalDate parse(final DateParser parser, final String text) {
+				if (!isChar(text, 2, '-') || !isChar(text, 6, '-') || text.length() < 11 || !parser.isEnd(text, 11)) {
+					return null;
+				}
+
+				final int day = parseDigits(text, 0, 2);
+				final int year = parseDigits(text, 7, 4);
+				final int month = parseMonth(parser.shortMonths, text, 3);
+				return day < 0 || month < 0 || year < 0 ? null : parser.createDate(year, month, day);
+			}
+
+			/**
+			 * Matches the three character month name (ignoring case) - names of other lengths are
+			 * left to the Joda parser
+			 */
+			private int parseMonth(final String[] shortMonths, final String text, final int start) {
+				for (int month = 0; month < 12; month++) {
+					final String name = shortMonths[month];
+					if (name.length() == 3 && text.regionMatches(true, start, name, 0, 3)) {
+						return month + 1;
+					}
+				}
+				return -1;
+			}
+		},
+
+		/**
+		 * yyyyMMdd
+		 */
+		COMPACT {
+			@Override
+			public LocalDate parse(final DateParser parser, final String text) {
+				if (text.length() < 8 || !parser.isEnd(text, 8)) {
+					return null;
+				}
+
+				final int year = parseDigits(text, 0, 4);
+				final int month = parseDigits(text, 4, 2);
+				final int day = parseDigits(text, 6, 2);
+				return day < 0 || month < 0 || year < 0 ? null : parser.createDate(year, month, day);
+			}
+		};
+
+		public abstract LocalDate parse(DateParser parser, String text);
+
+		public static FastFormat forPattern(final String pattern) {
+			if ("dd/MM/yyyy".equals(pattern)) {
+				return SLASHED;
+			} else if ("dd-MMM-yyyy".equals(pattern)) {
+				return TEXT_MONTH;
+			} else if ("yyyyMMdd".equals(pattern)) {
+				return COMPACT;
+			}
+			return NONE;
+		}
+	}
+}
@@ -1,11 +1,28 @@
 package uk.nhs.ciao.docs.parser;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 
 /**
  * Represents an NHS number
+ * <p>
+ * The static <code>parse</code> methods validate candidate values without allocating - valid
+ * numbers are returned as a primitive <code>long</code> (see {@link #format(long)}) and invalid
+ * values as {@link #INVALID}.
  */
 public class NHSNumber {
+	/**
+	 * Value returned by the <code>parse</code> methods for an invalid NHS number
+	 */
+	public static final long INVALID = -1L;
+	
+	private static final int LENGTH = 10;
+	private static final long MAX_VALUE = 9999999999L;
+	
 	private final String displayValue;
 	private final String value;
 	
@@ -107,8 +124,184 @@ public class NHSNumber {
 	 * Tests if the specified string value represents a valid NHS number
 	 */
 	public static boolean isValid(final CharSequence value) {
-		final String digits = extractDigits(value);
-		return passesMod11Algorithm(digits);
+		return parse(value) != INVALID;
+	}
+	
+	/**
+	 * Tests if the specified primitive value represents a valid NHS number
+	 */
+	public static boolean isValid(final long value) {
+		if (value < 0 || value > MAX_VALUE) {
+			return false;
+		}
+		
+		long remaining = value / 10;
+		int weightedSum = 0;
+		for (int weight = 2; weight <= LENGTH; weight++) {
+			weightedSum += (int)(remaining % 10) * weight;
+			remaining /= 10;
+		}
+		
+		return checkDigit(weightedSum) == value % 10;
+	}
+	
+	/**
+	 * Validates and normalises the specified value without allocating
+	 * <p>
+	 * As with {@link #valueOf(CharSequence)} all non-digit characters are ignored.
+	 * 
+	 * @return The digits of the NHS number as a primitive long, or {@link #INVALID}
+	 * 		if the value is null or not a valid NHS number
+	 */
+	public static long parse(final CharSequence value) {
+		if (value == null) {
+			return INVALID;
+		}
+		
+		long number = 0;
+		int digits = 0;
+		int weightedSum = 0;
+		for (int index = 0; index < value.length(); index++) {
+			final char c = value.charAt(index);
+			if (c < '0' || c > '9') {
+				continue;
+			} else if (digits == LENGTH) {
+				return INVALID;
+			}
+			
+			final int digit = c - '0';
+			number = (number * 10) + digit;
+			digits++;
+			if (digits < LENGTH) {
+				weightedSum += digit * (11 - digits);
+			}
+		}
+		
+		return digits == LENGTH && checkDigit(weightedSum) == number % 10 ? number : INVALID;
+	}
+	
+	/**
+	 * Validates and normalises each of the specified values
+	 * 
+	 * @return An array containing the result of {@link #parse(CharSequence)} for each value (in the
+	 * 		same order)
+	 */
+	public static long[] parseAll(final List<? extends CharSequence> values) {
+		final long[] numbers = new long[values.size()];
+		int index = 0;
+		for (final CharSequence value: values) {
+			numbers[index++] = parse(value);
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Formats a primitive NHS number (as returned by {@link #parse(CharSequence)}) in normalised form
+	 */
+	public static String format(final long value) {
+		Preconditions.checkArgument(value >= 0 && value <= MAX_VALUE, "Not an NHS number: %s", value);
+		return Strings.padStart(Long.toString(value), LENGTH, '0');
+	}
+	
+	/**
+	 * Finds all valid NHS numbers in the specified text in a single pass.
+	 * <p>
+	 * A candidate is either ten consecutive digits or digits grouped as <code>3 3 4</code>
+	 * separated by a single space or hyphen (e.g. <code>943 476 5919</code>). Candidates must not be
+	 * directly preceded or followed by another digit.
+	 * 
+	 * @return The valid NHS numbers in the order they appear in the text - the display value of
+	 * 		each number is the matched text
+	 */
+	public static List<NHSNumber> findAll(final CharSequence text) {
+		if (text == null) {
+			return Collections.emptyList();
+		}
+		
+		List<NHSNumber> numbers = null;
+		final int length = text.length();
+		int index = 0;
+		while (index < length) {
+			if (!isDigit(text, index) || isDigit(text, index - 1)) {
+				index++;
+				continue;
+			}
+			
+			final int end = matchCandidate(text, index);
+			if (end < 0) {
+				// Skip the rest of this run of digits
+				do {
+					index++;
+				} while (isDigit(text, index));
+				continue;
+			}
+			
+			final CharSequence candidate = text.subSequence(index, end);
+			if (parse(candidate) != INVALID) {
+				if (numbers == null) {
+					numbers = Lists.newArrayList();
+				}
+				numbers.add(valueOf(candidate));
+			}
+			index = end;
+		}
+		
+		return numbers == null ? Collections.<NHSNumber>emptyList() : numbers;
+	}
+	
+	/**
+	 * Returns the end index of the candidate starting at the specified index, or -1 if
+	 * no candidate starts at the index
+	 */
+	private static int matchCandidate(final CharSequence text, final int start) {
+		int index = start;
+		final int groupEnd = index + 3;
+		while (index < groupEnd && isDigit(text, index)) {
+			index++;
+		}
+		if (index < groupEnd) {
+			return -1;
+		}
+		
+		final int end;
+		if (isDigit(text, index)) {
+			// Ungrouped - the remaining 7 digits
+			end = start + LENGTH;
+			for (index++; index < end; index++) {
+				if (!isDigit(text, index)) {
+					return -1;
+				}
+			}
+		} else {
+			// Grouped 3 3 4 - both separators must match
+			final char separator = index < text.length() ? text.charAt(index) : 0;
+			if (separator != ' ' && separator != '-') {
+				return -1;
+			}
+			
+			end = start + LENGTH + 2;
+			for (index++; index < end; index++) {
+				final boolean separatorIndex = index == start + 7;
+				if (separatorIndex ? (index >= text.length() || text.charAt(index) != separator) : !isDigit(text, index)) {
+					return -1;
+				}
+			}
+		}
+		
+		return isDigit(text, end) ? -1 : end;
+	}
+	
+	private static boolean isDigit(final CharSequence text, final int index) {
+		if (index < 0 || index >= text.length()) {
+			return false;
+		}
+		
+		final char c = text.charAt(index);
+		return c >= '0' && c <= '9';
+	}
+	
+	private static int checkDigit(final int weightedSum) {
+		return (11 - (weightedSum % 11)) % 11;
 	}
 	
 	/**
@@ -146,7 +339,6 @@ public class NHSNumber {
 			weightedSum += (digits.charAt(index) - '0') * (10 - index);
 		}
 		
-		final int check = (11 - (weightedSum % 11)) % 11;
-		return check == (digits.charAt(9) - '0');
+		return checkDigit(weightedSum) == (digits.charAt(9) - '0');
 	}
 }
@@ -24,7 +24,6 @@ import uk.nhs.ciao.docs.parser.xml.SAXContentToDOMHandler;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * A {@link DocumentParser} backed by Apache Tika.
@@ -34,11 +33,14 @@ import com.google.common.collect.Maps;
  * are extracted from the DOM and returned.
  * <p>
  * Whitespace text nodes are normalised in the intermediate document
+ * <p>
+ * Instances are safe to use from multiple threads concurrently - each thread
+ * uses a separate SAX to DOM handler.
  */
 public class TikaDocumentParser implements DocumentParser {
 	private final Parser parser;
 	private final PropertiesExtractor<Document> propertiesExtractor;
-	private final SAXContentToDOMHandler handler;
+	private final ThreadLocal<SAXContentToDOMHandler> handlers;
 	
 	/**
 	 * Creates a new document parser backed by the specified Tika parser and
@@ -48,7 +50,11 @@ public class TikaDocumentParser implements DocumentParser {
 			throws ParserConfigurationException {
 		this.parser = Preconditions.checkNotNull(parser);
 		this.propertiesExtractor = Preconditions.checkNotNull(propertiesExtractor);
-		this.handler = createHandler();
+		
+		// Fail fast if the handler cannot be configured
+		final SAXContentToDOMHandler initialHandler = createHandler();
+		this.handlers = new ThreadLocal<SAXContentToDOMHandler>();
+		handlers.set(initialHandler);
 	}
 	
 	/**
@@ -73,6 +79,7 @@ public class TikaDocumentParser implements DocumentParser {
 	 * representation
 	 */
 	private Document parseToDom(final InputStream in) throws IOException {
+		final SAXContentToDOMHandler handler = getHandler();
 		try {
 			final Metadata metadata = new Metadata();
 			final ParseContext context = new ParseContext();
@@ -98,7 +105,7 @@ public class TikaDocumentParser implements DocumentParser {
 			return;
 		}
 		
-		final Map<String, Object> metadata = Maps.newLinkedHashMap();
+		final Map<String, Object> metadata = new CompactPropertiesMap();
 		if (properties.containsKey(PropertyNames.METADATA)) {			
 			metadata.putAll((Map<String, ?>)properties.get(PropertyNames.METADATA));
 		}
@@ -126,6 +133,23 @@ public class TikaDocumentParser implements DocumentParser {
 		}
 	}
 
+	/**
+	 * Returns the handler associated with the current thread - creating it if required
+	 */
+	private SAXContentToDOMHandler getHandler() throws IOException {
+		SAXContentToDOMHandler handler = handlers.get();
+		if (handler == null) {
+			try {
+				handler = createHandler();
+			} catch (ParserConfigurationException e) {
+				throw new IOException(e);
+			}
+			handlers.set(handler);
+		}
+		
+		return handler;
+	}
+	
 	/**
 	 * Creates a new handler to converter SAX content to DOM.
 	 * <p>
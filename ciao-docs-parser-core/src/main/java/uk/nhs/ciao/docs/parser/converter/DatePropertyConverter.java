@@ -2,12 +2,14 @@ package uk.nhs.ciao.docs.parser.converter;
 
 import java.util.Locale;
 
-import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.nhs.ciao.docs.parser.DateParser;
+
 import com.google.common.base.Strings;
 
 /**
@@ -22,13 +24,13 @@ public class DatePropertyConverter implements PropertyConverter {
 	 */
 	private static final DateTimeFormatter HL7_FORMAT = DateTimeFormat.forPattern("yyyyMMdd").withLocale(Locale.getDefault());
 	
-	private final DateTimeFormatter parseFormat;
+	private final DateParser parser;
 	
 	/**
 	 * Constructs a new date property converter using the specified pattern as the input format
 	 */
 	public DatePropertyConverter(final String pattern) {
-		parseFormat = DateTimeFormat.forPattern(pattern);
+		parser = DateParser.forPattern(pattern);
 	}
 	
 	@Override
@@ -37,13 +39,13 @@ public class DatePropertyConverter implements PropertyConverter {
 			return value;
 		}
 		
-		try {
-			final DateTime date = parseFormat.parseDateTime(value);
-			return HL7_FORMAT.print(date);
-		} catch (Exception e) {
+		final LocalDate date = parser.parse(value);
+		if (date == null) {
 			LOGGER.debug("Unable to parse property name: {} value: {} - continuing with original value",
-					name, value, e);
+					name, value);
 			return value;
 		}
+		
+		return HL7_FORMAT.print(date);
 	}
 }
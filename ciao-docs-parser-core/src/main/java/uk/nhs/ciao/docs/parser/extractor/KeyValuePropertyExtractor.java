@@ -4,10 +4,11 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
+import uk.nhs.ciao.docs.parser.PropertyLabels;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
-import com.google.common.collect.Maps;
 
 /**
  * PropertyExtractor which uses a regex to split text into key + value pairs
@@ -34,14 +35,15 @@ public class KeyValuePropertyExtractor implements PropertiesExtractor<NodeStream
 			return null;
 		}
 		
-		final Map<String, Object> properties = Maps.newHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		
 		while (nodes.hasNext()) {
 			final String text = nodes.take().getTextContent();
 			final Matcher matcher = splitPattern.matcher(text);
 			
 			if (matcher.find()) {
-				final String propertyName = whitespaceMode.normalizeWhitespace(text.substring(0, matcher.start()));
+				final String propertyName = PropertyLabels.intern(
+						whitespaceMode.normalizeWhitespace(text.substring(0, matcher.start())));
 				final String value;
 				if (matcher.end() < text.length()) {
 					value = whitespaceMode.normalizeWhitespace(text.substring(matcher.end()));
@@ -0,0 +1,29 @@
+package uk.nhs.ciao.docs.parser.extractor;
+
+import java.util.Map;
+
+import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
+
+/**
+ * Extracts key/value properties from a document directly into an existing properties structure.
+ * <p>
+ * Composite extractors (e.g. {@link SplitterPropertiesExtractor}) can pass their own properties
+ * to these extractors instead of merging a separately extracted map into them.
+ *
+ * @param <T> The document representation that properties can be extracted from
+ */
+public interface MergingPropertiesExtractor<T> extends PropertiesExtractor<T> {
+
+	/**
+	 * Extracts known properties from the specified document and merges them into the target
+	 * properties.
+	 * <p>
+	 * The result must be equivalent to merging the properties returned by
+	 * {@link #extractProperties(Object)} into the target.
+	 *
+	 * @param document The document to extract properties from
+	 * @param target The properties to add the extracted properties to
+	 * @throws UnsupportedDocumentTypeException If the type of document is not supported by this extractor
+	 */
+	void extractProperties(T document, Map<String, Object> target) throws UnsupportedDocumentTypeException;
+}
@@ -6,8 +6,8 @@ import java.util.Map;
 import org.w3c.dom.Node;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
@@ -58,7 +58,7 @@ public class NestedObjectPropertyExtractor implements PropertiesExtractor<NodeSt
 			return null;
 		}
 		
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		properties.put(propertyName, value);
 		return properties;
 	}
@@ -88,7 +88,7 @@ public class NestedObjectPropertyExtractor implements PropertiesExtractor<NodeSt
 			return null;
 		}
 		
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		if (values != null) {
 			properties.put(propertyName, values);
 		} else {
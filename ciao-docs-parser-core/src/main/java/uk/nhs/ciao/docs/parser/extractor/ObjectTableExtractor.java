@@ -6,21 +6,22 @@ import java.util.List;
 import java.util.Map;
 
 import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
+import uk.nhs.ciao.docs.parser.PropertyLabels;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
+import uk.nhs.ciao.docs.parser.xml.NodeSetExpression;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * Property extractor which returns a property containing a single object or list of objects
@@ -37,14 +38,18 @@ import com.google.common.collect.Maps;
  * empty string is used for the value.
  */
 public class ObjectTableExtractor implements PropertiesExtractor<NodeStream> {
-	private final XPathExpression expression;
+	private final NodeSetExpression expression;
 	private final String propertyName;
 	
 	public ObjectTableExtractor(final XPath xpath, final String expression, final String propertyName) throws XPathExpressionException {
-		this(xpath.compile(expression), propertyName);
+		this(NodeSetExpression.compile(xpath, expression), propertyName);
 	}
 	
 	public ObjectTableExtractor(final XPathExpression expression, final String propertyName) {
+		this(NodeSetExpression.of(expression), propertyName);
+	}
+	
+	public ObjectTableExtractor(final NodeSetExpression expression, final String propertyName) {
 		this.expression = Preconditions.checkNotNull(expression);
 		this.propertyName = Preconditions.checkNotNull(propertyName);
 	}
@@ -61,14 +66,14 @@ public class ObjectTableExtractor implements PropertiesExtractor<NodeStream> {
 			
 			boolean addingNames = names.isEmpty();					
 			try {
-				final NodeList nodeList = (NodeList)expression.evaluate(node, XPathConstants.NODESET);
+				final NodeList nodeList = expression.evaluate(node);
 				Map<String, Object> object = null;
 				
 				for (int index = 0; index < nodeList.getLength(); index++) {
 					final String value = collapseWhitespaceAndTrim(nodeList.item(index).getTextContent());
 
 					if (addingNames) {
-						names.add(value);
+						names.add(PropertyLabels.intern(value));
 						if (!Strings.isNullOrEmpty(value)) {
 							addedNonEmptyName = true;
 						}
@@ -76,7 +81,7 @@ public class ObjectTableExtractor implements PropertiesExtractor<NodeStream> {
 						final String name = names.get(index);
 						if (!Strings.isNullOrEmpty(name)) {
 							if (object == null) {
-								object = Maps.newLinkedHashMap();
+								object = new CompactPropertiesMap();
 							}
 							object.put(name, Strings.nullToEmpty(value));
 						}
@@ -99,7 +104,7 @@ public class ObjectTableExtractor implements PropertiesExtractor<NodeStream> {
 			return null;
 		}
 		
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		properties.put(propertyName, objects);
 		return properties;
 	}
@@ -3,11 +3,11 @@ package uk.nhs.ciao.docs.parser.extractor;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
 
 /**
  * Property extractor which uses a delegate to extract a set of properties, then
@@ -38,7 +38,7 @@ public class PrefixedPropertyExtractor implements PropertiesExtractor<NodeStream
 			return delegateProperties;
 		}
 		
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		for (final Entry<String, Object> entry: delegateProperties.entrySet()) {
 			final String name = prefixMode.addPrefix(prefix, entry.getKey());
 			properties.put(name, entry.getValue());
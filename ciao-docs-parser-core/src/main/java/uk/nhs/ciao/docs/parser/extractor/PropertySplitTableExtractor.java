@@ -3,7 +3,6 @@ package uk.nhs.ciao.docs.parser.extractor;
 import java.util.Map;
 
 import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -14,9 +13,11 @@ import org.w3c.dom.NodeList;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
+import uk.nhs.ciao.docs.parser.PropertyLabels;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
+import uk.nhs.ciao.docs.parser.xml.NodeSetExpression;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
 /**
@@ -26,8 +27,8 @@ import uk.nhs.ciao.docs.parser.xml.NodeStream;
  * the extra properties are added with blank values.
  */
 public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStream> {
-	private final XPathExpression nameExpression;
-	private final XPathExpression valueExpression;
+	private final NodeSetExpression nameExpression;
+	private final NodeSetExpression valueExpression;
 	private final WhitespaceMode whitespaceMode;
 	private final PropertyNameDetector propertyNameDetector;
 	
@@ -38,7 +39,8 @@ public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStre
 	
 	public PropertySplitTableExtractor(final XPath xpath, final String nameExpression,
 			final String valueExpression, final WhitespaceMode whitespaceMode) throws XPathExpressionException {
-		this(xpath.compile(nameExpression), xpath.compile(valueExpression), whitespaceMode);
+		this(NodeSetExpression.compile(xpath, nameExpression), NodeSetExpression.compile(xpath, valueExpression),
+				whitespaceMode, PropertyNameDetector.ENDS_WITH_COLON);
 	}
 
 	public PropertySplitTableExtractor(final XPathExpression nameExpression,
@@ -46,12 +48,18 @@ public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStre
 		this(nameExpression, valueExpression, whitespaceMode, PropertyNameDetector.ENDS_WITH_COLON);
 	}
 	
+	public PropertySplitTableExtractor(final XPathExpression nameExpression,
+			final XPathExpression valueExpression, final WhitespaceMode whitespaceMode,
+			final PropertyNameDetector propertyNameDetector) {
+		this(NodeSetExpression.of(nameExpression), NodeSetExpression.of(valueExpression), whitespaceMode, propertyNameDetector);
+	}
+	
 	/**
 	 * @param keyExpression The xpath expression used to find property name nodes
 	 * @param valueExpression The xpath expression used to find property value nodes
 	 */
-	public PropertySplitTableExtractor(final XPathExpression nameExpression,
-			final XPathExpression valueExpression, final WhitespaceMode whitespaceMode,
+	public PropertySplitTableExtractor(final NodeSetExpression nameExpression,
+			final NodeSetExpression valueExpression, final WhitespaceMode whitespaceMode,
 			final PropertyNameDetector propertyNameDetector) {
 		this.nameExpression = Preconditions.checkNotNull(nameExpression);
 		this.valueExpression = Preconditions.checkNotNull(valueExpression);
@@ -62,7 +70,7 @@ public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStre
 	@Override
 	public Map<String, Object> extractProperties(final NodeStream nodes)
 			throws UnsupportedDocumentTypeException {
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		
 		while (nodes.hasNext()) {
 			try {
@@ -80,8 +88,8 @@ public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStre
 			return;
 		}
 		
-		final NodeList nameNodes = (NodeList)nameExpression.evaluate(root, XPathConstants.NODESET);
-		final NodeList valueNodes = (NodeList)valueExpression.evaluate(root, XPathConstants.NODESET);
+		final NodeList nameNodes = nameExpression.evaluate(root);
+		final NodeList valueNodes = valueExpression.evaluate(root);
 
 		for (int index = 0; index < nameNodes.getLength(); index++) {
 			String name = Strings.nullToEmpty(nameNodes.item(index).getTextContent()).trim();
@@ -93,6 +101,7 @@ public class PropertySplitTableExtractor implements PropertiesExtractor<NodeStre
 			if (name.isEmpty()) {
 				continue;
 			}
+			name = PropertyLabels.intern(name);
 			
 			String value = "";
 			if (index < valueNodes.getLength()) {
@@ -6,13 +6,14 @@ import java.util.Map;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
+import uk.nhs.ciao.docs.parser.PropertyLabels;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * Dynamically extracts properties for a stream of nodes.
@@ -54,7 +55,7 @@ public class PropertyTableExtractor implements PropertiesExtractor<NodeStream> {
 	@Override
 	public Map<String, Object> extractProperties(final NodeStream nodes)
 			throws UnsupportedDocumentTypeException {
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		String name = null;
 		String value = null;
 		List<String> values = null;
@@ -72,7 +73,7 @@ public class PropertyTableExtractor implements PropertiesExtractor<NodeStream> {
 					}
 					
 					name = propertyNameDetector.getPropertyName(trimmedText);
-					name = whitespaceMode.normalizeWhitespace(name);
+					name = PropertyLabels.intern(whitespaceMode.normalizeWhitespace(name));
 					value = null;
 					values = null;
 				} else if (!trimmedText.isEmpty()) {
@@ -8,12 +8,12 @@ import java.util.Set;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.logging.CiaoLogger;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -84,7 +84,7 @@ public class RegexPropertiesExtractor implements PropertiesExtractor<Document> {
 	@Override
 	public Map<String, Object> extractProperties(final Document document)
 			throws UnsupportedDocumentTypeException {
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 		final String textContent = getTextContent(document);
 		
 		for (final RegexPropertyFinder propertyFinder: propertyFinders) {
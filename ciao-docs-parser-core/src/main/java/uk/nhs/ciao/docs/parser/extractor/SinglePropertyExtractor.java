@@ -3,12 +3,12 @@ package uk.nhs.ciao.docs.parser.extractor;
 import java.util.List;
 import java.util.Map;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.xml.NodeStream;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 public class SinglePropertyExtractor implements PropertiesExtractor<NodeStream> {
 	private final String propertyName;
@@ -64,7 +64,7 @@ public class SinglePropertyExtractor implements PropertiesExtractor<NodeStream>
 			}
 		}
 		
-		final Map<String, Object> properties = Maps.newHashMap();
+		final Map<String, Object> properties = new CompactPropertiesMap();
 
 		if (values == null) {
 			value = whitespaceMode.normalizeWhitespace(value);
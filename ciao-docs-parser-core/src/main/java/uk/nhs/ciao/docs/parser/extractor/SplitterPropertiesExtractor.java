@@ -5,8 +5,8 @@ import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
+import uk.nhs.ciao.docs.parser.CompactPropertiesMap;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.extractor.PropertiesExtractor;
 import uk.nhs.ciao.docs.parser.xml.NodeSelector;
@@ -14,21 +14,32 @@ import uk.nhs.ciao.docs.parser.xml.NodeStream;
 import uk.nhs.ciao.docs.parser.xml.NodeStream.Mark;
 import uk.nhs.ciao.util.TreeMerge;
 
-public class SplitterPropertiesExtractor implements PropertiesExtractor<NodeStream> {
+/**
+ * Properties extractor which selects parts of the node stream and passes each selection
+ * to a separate extractor.
+ * <p>
+ * The properties of all selections are combined into a single properties map. Selections
+ * handled by a {@link MergingPropertiesExtractor} (e.g. a nested splitter) write directly into
+ * the combined properties - only the maps returned by other extractors are deep-merged.
+ */
+public class SplitterPropertiesExtractor implements MergingPropertiesExtractor<NodeStream> {
 	private final List<SelectionHandler> selectionHandlers = Lists.newArrayList();
 	private final TreeMerge treeMerge = new TreeMerge();
 	
 	@Override
 	public Map<String, Object> extractProperties(final NodeStream nodes)
 			throws UnsupportedDocumentTypeException {
-		final Map<String, Object> properties = Maps.newLinkedHashMap();
-		
+		final Map<String, Object> properties = new CompactPropertiesMap();
+		extractProperties(nodes, properties);
+		return properties;
+	}
+	
+	@Override
+	public void extractProperties(final NodeStream nodes, final Map<String, Object> target)
+			throws UnsupportedDocumentTypeException {
 		for (final SelectionHandler selectionHandler: selectionHandlers) {
-			final Map<String, Object> extractedProperties = selectionHandler.selectAndExtract(nodes);
-			combineProperties(properties, extractedProperties);
+			selectionHandler.selectAndExtract(nodes, target);
 		}
-		
-		return properties;
 	}
 	
 	public void addSelection(final NodeSelector selector, final PropertiesExtractor<NodeStream> extractor) {
@@ -39,13 +50,6 @@ public class SplitterPropertiesExtractor implements PropertiesExtractor<NodeStre
 		selectionHandlers.add(new SelectionHandler(selector, mode, extractor));
 	}
 	
-	private void combineProperties(final Map<String, Object> properties,
-			final Map<String, Object> extractedProperties) {
-		if (extractedProperties != null) {
-			treeMerge.mergeInto(extractedProperties, properties);
-		}
-	}
-
 	private class SelectionHandler {
 		private final NodeSelector selector;
 		private final Mode mode;
@@ -57,21 +61,28 @@ public class SplitterPropertiesExtractor implements PropertiesExtractor<NodeStre
 			this.extractor = Preconditions.checkNotNull(extractor);
 		}
 		
-		public Map<String, Object> selectAndExtract(final NodeStream nodes) throws UnsupportedDocumentTypeException {
+		@SuppressWarnings("unchecked")
+		public void selectAndExtract(final NodeStream nodes, final Map<String, Object> properties)
+				throws UnsupportedDocumentTypeException {
 			final Mark initialMark = nodes.mark();
 			final NodeStream selectedNodes = selector.selectNodes(nodes);
 			if (selectedNodes == null) {
 				initialMark.resetStream();
-				return null;
+				return;
+			}
+			
+			if (extractor instanceof MergingPropertiesExtractor) {
+				((MergingPropertiesExtractor<NodeStream>)extractor).extractProperties(selectedNodes, properties);
+			} else {
+				final Map<String, Object> extractedProperties = extractor.extractProperties(selectedNodes);
+				if (extractedProperties != null) {
+					treeMerge.mergeInto(extractedProperties, properties);
+				}
 			}
 			
-			final Map<String, Object> extractedProperties =
-					extractor.extractProperties(selectedNodes);
 			if (mode == Mode.RESET_NODES) {
 				initialMark.resetStream();
 			}
-			
-			return extractedProperties;
 		}
 	}
 	
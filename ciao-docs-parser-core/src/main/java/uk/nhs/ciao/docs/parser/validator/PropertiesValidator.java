@@ -4,26 +4,30 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.DateTimeFormatterBuilder;
-import org.joda.time.format.DateTimeParser;
-import org.joda.time.format.DateTimeParserBucket;
 
+import uk.nhs.ciao.docs.parser.DateParser;
 import uk.nhs.ciao.docs.parser.PropertyName;
+import uk.nhs.ciao.docs.parser.PropertySelector;
+import uk.nhs.ciao.docs.parser.PropertySelectorSet;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
 import uk.nhs.ciao.docs.parser.extractor.PropertiesExtractor;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 /**
  * Validates a set of properties against a configurable set of rules
+ * <p>
+ * The values checked by all property validations (e.g. {@link NonEmptyPropertyValidation}) are
+ * selected using a single traversal of the properties - see {@link PropertySelectorSet}.
  */
 public class PropertiesValidator implements PropertiesExtractor<Map<String, Object>> {
 	private List<PropertiesValidation> validations = Lists.newArrayList();
+	private volatile CompiledValidations compiledValidations;
 
 	/**
 	 * {@inheritDoc}
@@ -38,9 +42,7 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 	@Override
 	public Map<String, Object> extractProperties(final Map<String, Object> properties) throws UnsupportedDocumentTypeException {
 		final ValidationResult result = new ValidationResult();
-		for (final PropertiesValidation validation: validations) {
-			validation.validate(properties, result);
-		}
+		getCompiledValidations().validate(properties, result);
 		
 		result.assertIsValid();
 		
@@ -144,6 +146,19 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 		addValidation(new NHSNumberPropertyValidation(PropertyName.valueOf(propertyName)));
 	}
 	
+	/**
+	 * Returns the compiled form of the current validations - recompiling if the validations
+	 * have been changed
+	 */
+	private CompiledValidations getCompiledValidations() {
+		CompiledValidations compiled = compiledValidations;
+		if (compiled == null || !compiled.isCompiledFrom(validations)) {
+			compiled = new CompiledValidations(validations);
+			compiledValidations = compiled;
+		}
+		return compiled;
+	}
+	
 	/**
 	 * Checks that the extracted properties passes a validation test.
 	 */
@@ -157,6 +172,83 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 		void validate(Map<String, Object> properties, ValidationResult result);
 	}
 	
+	/**
+	 * Checks the value of a single property.
+	 * <p>
+	 * When run by {@link PropertiesValidator} the values of all property validations are selected
+	 * in a single traversal of the properties.
+	 */
+	interface PropertyValueValidation extends PropertiesValidation {
+		/**
+		 * The name of the property to check
+		 */
+		PropertyName getPropertyName();
+		
+		/**
+		 * Tests that the specified property value passes the validation
+		 * 
+		 * @param value The value of the property (or null if the property is not present)
+		 * @param result The result of the validation
+		 */
+		void validateValue(Object value, ValidationResult result);
+	}
+	
+	/**
+	 * Snapshot of the validations with the selectors of all property validations compiled into a
+	 * single {@link PropertySelectorSet}
+	 */
+	private static class CompiledValidations {
+		private final List<PropertiesValidation> validations;
+		private final List<PropertySelector> selectors;
+		private final PropertySelectorSet selectorSet;
+		
+		public CompiledValidations(final List<PropertiesValidation> validations) {
+			this.validations = ImmutableList.copyOf(validations);
+			this.selectors = Lists.newArrayListWithCapacity(validations.size());
+			
+			final List<PropertySelector> valueSelectors = Lists.newArrayList();
+			for (final PropertiesValidation validation: this.validations) {
+				PropertySelector selector = null;
+				if (validation instanceof PropertyValueValidation) {
+					selector = ((PropertyValueValidation)validation).getPropertyName().toPropertySelector();
+					valueSelectors.add(selector);
+				}
+				selectors.add(selector);
+			}
+			this.selectorSet = PropertySelectorSet.of(valueSelectors);
+		}
+		
+		/**
+		 * Tests if this snapshot contains the same validation instances as the specified list
+		 */
+		public boolean isCompiledFrom(final List<PropertiesValidation> validations) {
+			if (this.validations.size() != validations.size()) {
+				return false;
+			}
+			
+			for (int index = 0; index < validations.size(); index++) {
+				if (this.validations.get(index) != validations.get(index)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		public void validate(final Map<String, Object> properties, final ValidationResult result) {
+			final Map<PropertySelector, Object> values = selectorSet.selectValues(properties);
+			
+			for (int index = 0; index < validations.size(); index++) {
+				final PropertiesValidation validation = validations.get(index);
+				final PropertySelector selector = selectors.get(index);
+				if (selector == null) {
+					validation.validate(properties, result);
+				} else {
+					((PropertyValueValidation)validation).validateValue(values.get(selector), result);
+				}
+			}
+		}
+	}
+	
 	public static class ValidationResult {
 		private List<Object> errors = Lists.newArrayList();
 
@@ -208,17 +300,25 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 	 * Checks that the extracted properties contains a property of the specified name
 	 * and that the associated value is not empty.
 	 */
-	public static class NonEmptyPropertyValidation implements PropertiesValidation {
+	public static class NonEmptyPropertyValidation implements PropertyValueValidation {
 		private final PropertyName propertyName;
 		
 		public NonEmptyPropertyValidation(final PropertyName propertyName) {
 			this.propertyName = Preconditions.checkNotNull(propertyName);
 		}
 		
+		@Override
+		public PropertyName getPropertyName() {
+			return propertyName;
+		}
+		
 		@Override
 		public void validate(final Map<String, Object> properties, final ValidationResult result) {
-			final Object value = propertyName.get(properties);
-			
+			validateValue(propertyName.get(properties), result);
+		}
+		
+		@Override
+		public void validateValue(final Object value, final ValidationResult result) {
 			final boolean isEmpty;
 			if (value instanceof CharSequence) {
 				isEmpty = ((CharSequence) value).length() == 0;
@@ -234,26 +334,38 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 		}
 	}
 	
-	public static class DatePropertyValidation implements PropertiesValidation {
+	public static class DatePropertyValidation implements PropertyValueValidation {
 		private final PropertyName propertyName;
-		private final DateTimeFormatter formatter;
+		private final DateParser parser;
 		private final boolean required;
 		
 		public DatePropertyValidation(final PropertyName propertyName, final String pattern, final boolean required, final boolean lenient) {
-			this(propertyName, DateTimeFormat.forPattern(pattern), required, lenient);
+			this(propertyName, DateParser.forPattern(pattern, lenient), required);
 		}
 		
 		public DatePropertyValidation(final PropertyName propertyName, final DateTimeFormatter formatter,
 				final boolean required, final boolean lenient) {
-			Preconditions.checkNotNull(formatter);
-			this.propertyName = Preconditions.checkNotNull(propertyName);			
-			this.formatter = lenient ? createLenientDateTimeFormatter(formatter) : formatter;
+			this(propertyName, DateParser.forFormatter(formatter, lenient), required);
+		}
+		
+		private DatePropertyValidation(final PropertyName propertyName, final DateParser parser, final boolean required) {
+			this.propertyName = Preconditions.checkNotNull(propertyName);
+			this.parser = Preconditions.checkNotNull(parser);
 			this.required = required;
 		}
 		
+		@Override
+		public PropertyName getPropertyName() {
+			return propertyName;
+		}
+		
 		@Override
 		public void validate(final Map<String, Object> properties, final ValidationResult result) {
-			final Object value = propertyName.get(properties);
+			validateValue(propertyName.get(properties), result);
+		}
+		
+		@Override
+		public void validateValue(final Object value, final ValidationResult result) {
 			if (value == null) {
 				if (required) {
 					result.addPropertyValidationError(propertyName, "must be specified");
@@ -261,53 +373,31 @@ public class PropertiesValidator implements PropertiesExtractor<Map<String, Obje
 				return;
 			}
 			
-			try {
-				formatter.parseMillis(value.toString());
-			} catch (IllegalArgumentException e) {
+			if (!parser.isValid(value.toString())) {
 				result.addPropertyValidationError(propertyName, "is not a valid date: " + value);
 			}
 		}
 	}
 	
-	
-	/**
-	 * Adapts the specified date formatter accept and parse values containing trailing unmatched text.
-	 */
-	private static DateTimeFormatter createLenientDateTimeFormatter(final DateTimeFormatter formatter) {
-		return new DateTimeFormatterBuilder()
-			.append(formatter)
-			.appendOptional(new RemainingTextGobbler())
-			.toFormatter();
-	}
-	
-	/**
-	 * Special-case {@link DateTimeParser} which ignores/gobbles any unmatched trailing text when
-	 * parsing a date time
-	 */
-	private static class RemainingTextGobbler implements DateTimeParser {
-		@Override
-		public int estimateParsedLength() {
-			return 100;
-		}
-		
-		@Override
-		public int parseInto(final DateTimeParserBucket bucket, final String text, final int position) {
-			// Consume all trailing text
-			return text.length();
-		}
-	}
-	
-	public static class NHSNumberPropertyValidation implements PropertiesValidation {
+	public static class NHSNumberPropertyValidation implements PropertyValueValidation {
 		private final PropertyName propertyName;
 		
 		public NHSNumberPropertyValidation(final PropertyName propertyName) {
 			this.propertyName = Preconditions.checkNotNull(propertyName);
 		}
 		
+		@Override
+		public PropertyName getPropertyName() {
+			return propertyName;
+		}
+		
 		@Override
 		public void validate(final Map<String, Object> properties, final ValidationResult result) {
-			final Object value = propertyName.get(properties);
-			
+			validateValue(propertyName.get(properties), result);
+		}
+		
+		@Override
+		public void validateValue(final Object value, final ValidationResult result) {
 			if (value == null) {
 				result.addPropertyValidationError(propertyName, "must be specified");
 //TODO: Currently disabled - example/test documents do not contain valid NHS numbers!
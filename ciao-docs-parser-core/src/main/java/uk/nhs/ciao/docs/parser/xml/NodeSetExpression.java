@@ -0,0 +1,121 @@
+package uk.nhs.ciao.docs.parser.xml;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+/**
+ * XPath expression which selects a set of nodes.
+ * <p>
+ * Neither {@link XPath} nor {@link XPathExpression} instances are thread-safe. Expressions created
+ * via {@link #compile(XPath, String)} are compiled separately by each thread which evaluates them
+ * (using an XPath with the same namespace context and resolvers as the original), so extractors
+ * shared by concurrent consumers evaluate their expressions in parallel without locking.
+ * <p>
+ * Expressions created via {@link #of(XPathExpression)} wrap the specified pre-compiled instance - they
+ * must only be evaluated by one thread at a time.
+ */
+public abstract class NodeSetExpression {
+	/**
+	 * Compiles the expression, failing fast if it is not valid
+	 *
+	 * @param xpath The XPath used to compile the expression for the calling thread - other threads
+	 * 		use a new XPath with the same configuration
+	 */
+	public static NodeSetExpression compile(final XPath xpath, final String expression) throws XPathExpressionException {
+		return new ThreadLocalNodeSetExpression(xpath, expression);
+	}
+
+	/**
+	 * Wraps the specified pre-compiled (single-threaded) expression
+	 */
+	public static NodeSetExpression of(final XPathExpression expression) {
+		return new SimpleNodeSetExpression(expression);
+	}
+
+	/**
+	 * Evaluates the expression against the specified node
+	 */
+	public NodeList evaluate(final Node node) throws XPathExpressionException {
+		return (NodeList)getExpression().evaluate(node, XPathConstants.NODESET);
+	}
+
+	/**
+	 * The expression instance to be used by the calling thread
+	 */
+	protected abstract XPathExpression getExpression();
+
+	private static class SimpleNodeSetExpression extends NodeSetExpression {
+		private final XPathExpression expression;
+
+		public SimpleNodeSetExpression(final XPathExpression expression) {
+			this.expression = Preconditions.checkNotNull(expression);
+		}
+
+		@Override
+		protected XPathExpression getExpression() {
+			return expression;
+		}
+	}
+
+	private static class ThreadLocalNodeSetExpression extends NodeSetExpression {
+		private final String expression;
+		private final NamespaceContext namespaceContext;
+		private final XPathFunctionResolver functionResolver;
+		private final XPathVariableResolver variableResolver;
+		private final ThreadLocal<XPathExpression> expressions;
+
+		public ThreadLocalNodeSetExpression(final XPath xpath, final String expression) throws XPathExpressionException {
+			this.expression = Preconditions.checkNotNull(expression);
+			this.namespaceContext = xpath.getNamespaceContext();
+			this.functionResolver = xpath.getXPathFunctionResolver();
+			this.variableResolver = xpath.getXPathVariableResolver();
+
+			// Fail fast if the expression cannot be compiled
+			final XPathExpression initialExpression = xpath.compile(expression);
+			this.expressions = new ThreadLocal<XPathExpression>();
+			expressions.set(initialExpression);
+		}
+
+		@Override
+		protected XPathExpression getExpression() {
+			XPathExpression result = expressions.get();
+			if (result == null) {
+				result = compileForCurrentThread();
+				expressions.set(result);
+			}
+			return result;
+		}
+
+		private XPathExpression compileForCurrentThread() {
+			final XPath xpath = XPathFactory.newInstance().newXPath();
+			if (namespaceContext != null) {
+				xpath.setNamespaceContext(namespaceContext);
+			}
+			if (functionResolver != null) {
+				xpath.setXPathFunctionResolver(functionResolver);
+			}
+			if (variableResolver != null) {
+				xpath.setXPathVariableResolver(variableResolver);
+			}
+
+			try {
+				return xpath.compile(expression);
+			} catch (XPathExpressionException e) {
+				// Already compiled successfully by the constructor
+				throw Throwables.propagate(e);
+			}
+		}
+	}
+}
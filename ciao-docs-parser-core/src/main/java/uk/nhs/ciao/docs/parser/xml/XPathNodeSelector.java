@@ -3,7 +3,6 @@ package uk.nhs.ciao.docs.parser.xml;
 import java.util.List;
 
 import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -15,13 +14,17 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 
 public class XPathNodeSelector implements NodeSelector {
-	private final XPathExpression expression;
+	private final NodeSetExpression expression;
 	
 	public XPathNodeSelector(final XPath xpath, final String expression) throws XPathExpressionException {
-		this(xpath.compile(expression));
+		this(NodeSetExpression.compile(xpath, expression));
 	}
 	
 	public XPathNodeSelector(final XPathExpression expression) {
+		this(NodeSetExpression.of(expression));
+	}
+	
+	public XPathNodeSelector(final NodeSetExpression expression) {
 		this.expression = Preconditions.checkNotNull(expression);
 	}
 	
@@ -33,7 +36,7 @@ public class XPathNodeSelector implements NodeSelector {
 		while (nodes.hasNext()) {
 			final Node node = nodes.take();
 			try {
-				final NodeList selection = (NodeList)expression.evaluate(node, XPathConstants.NODESET);
+				final NodeList selection = expression.evaluate(node);
 				if (selection == null || selection.getLength() == 0) {
 					continue;
 				} else if (nodeList == null) {
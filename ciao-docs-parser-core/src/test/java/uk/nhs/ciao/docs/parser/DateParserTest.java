@@ -0,0 +1,66 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DateParser}
+ */
+public class DateParserTest {
+	@Test
+	public void testParsersAreShared() {
+		assertSame(DateParser.forPattern("dd/MM/yyyy"), DateParser.forPattern("dd/MM/yyyy", false));
+		assertNotSame(DateParser.forPattern("dd/MM/yyyy"), DateParser.forPattern("dd/MM/yyyy", true));
+	}
+
+	@Test
+	public void testParseSlashedDate() {
+		final DateParser parser = DateParser.forPattern("dd/MM/yyyy");
+		assertEquals(new LocalDate(2016, 2, 29), parser.parse("29/02/2016"));
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("1/2/2015"));
+		assertNull(parser.parse("29/02/2015"));
+		assertNull(parser.parse("01/13/2015"));
+		assertNull(parser.parse("01/02/2015 10:00"));
+		assertNull(parser.parse("not a date"));
+		assertNull(parser.parse(""));
+		assertNull(parser.parse(null));
+	}
+
+	@Test
+	public void testParseTextMonthDate() {
+		final DateParser parser = DateParser.forPattern("dd-MMM-yyyy");
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("01-Feb-2015"));
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("01-FEB-2015"));
+		assertNull(parser.parse("31-Apr-2015"));
+		assertNull(parser.parse("01-Foo-2015"));
+	}
+
+	@Test
+	public void testParseCompactDate() {
+		final DateParser parser = DateParser.forPattern("yyyyMMdd");
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("20150201"));
+		assertNull(parser.parse("20150230"));
+		assertNull(parser.parse("2015020"));
+	}
+
+	@Test
+	public void testLenientParserIgnoresTrailingText() {
+		final boolean lenient = true;
+		final DateParser parser = DateParser.forPattern("dd/MM/yyyy", lenient);
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("01/02/2015 10:00"));
+		assertNull(parser.parse("31/02/2015 10:00"));
+		assertFalse(parser.isValid("not a date"));
+	}
+
+	@Test
+	public void testParseOtherPatterns() {
+		final boolean lenient = false;
+		final DateParser parser = DateParser.forFormatter(DateTimeFormat.forPattern("yyyy-MM-dd"), lenient);
+		assertEquals(new LocalDate(2015, 2, 1), parser.parse("2015-02-01"));
+		assertNull(parser.parse("2015-02-31"));
+		assertNull(parser.parse("01/02/2015"));
+	}
+}
@@ -2,6 +2,9 @@ package uk.nhs.ciao.docs.parser;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 /**
@@ -51,6 +54,36 @@ public class NHSNumberTest {
 		}
 		
 		assertFalse(NHSNumber.isValid(number));
+		assertEquals(NHSNumber.INVALID, NHSNumber.parse(number));
+	}
+	
+	@Test
+	public void testParseNormalisesValidNumbers() {
+		assertEquals(9434765919L, NHSNumber.parse("943 476 5919"));
+		assertEquals(9434765919L, NHSNumber.parse("943-476-5919 "));
+		assertTrue(NHSNumber.isValid("9434765919"));
+		assertTrue(NHSNumber.isValid(9434765919L));
+		assertFalse(NHSNumber.isValid(9434765918L));
+		assertFalse(NHSNumber.isValid(-1L));
+		assertEquals("9434765919", NHSNumber.format(NHSNumber.parse("943 476 5919")));
+	}
+	
+	@Test
+	public void testParseAll() {
+		final long[] expected = {9434765919L, NHSNumber.INVALID, NHSNumber.INVALID};
+		assertArrayEquals(expected, NHSNumber.parseAll(Arrays.asList("943 476 5919", "123 456 789 0", null)));
+	}
+	
+	@Test
+	public void testFindAll() {
+		final String text = "NHS No: 943 476 5919, ref 943-476-5918, tel 01234 567890\n"
+				+ "Previous: 9434765919; order 19434765919 and 943 476-5919";
+		final List<NHSNumber> numbers = NHSNumber.findAll(text);
+		
+		assertEquals(2, numbers.size());
+		assertEquals("943 476 5919", numbers.get(0).getDisplayValue());
+		assertEquals("9434765919", numbers.get(1).getDisplayValue());
+		assertTrue(NHSNumber.findAll("no numbers here").isEmpty());
 	}
 	
 	@Test
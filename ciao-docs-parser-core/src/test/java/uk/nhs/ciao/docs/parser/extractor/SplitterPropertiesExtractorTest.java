@@ -0,0 +1,166 @@
+package uk.nhs.ciao.docs.parser.extractor;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
+import uk.nhs.ciao.docs.parser.xml.NodeSelector;
+import uk.nhs.ciao.docs.parser.xml.NodeStream;
+import uk.nhs.ciao.util.TreeMerge;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Unit tests for {@link SplitterPropertiesExtractor}
+ * <p>
+ * Nested splitters merge into the properties of their parent in place - the results should match
+ * a {@link TreeMerge} of the properties extracted separately at each level.
+ */
+public class SplitterPropertiesExtractorTest {
+	private static final NodeSelector SELECT_ALL = new NodeSelector() {
+		@Override
+		public NodeStream selectNodes(final NodeStream nodes) {
+			return nodes;
+		}
+	};
+	
+	private TreeMerge treeMerge;
+	private NodeStream nodes;
+	
+	@Before
+	public void setup() {
+		treeMerge = new TreeMerge();
+		nodes = NodeStream.createEmptyStream();
+	}
+	
+	@Test
+	public void whenNestedSplittersExtractNestedMapsThenTheyShouldBeMergedAsWithTreeMerge() throws UnsupportedDocumentTypeException {
+		final Map<String, Object> header = map("document", map("title", "Discharge summary"));
+		final Map<String, Object> patientName = map("document", map("patient", map("name", "Mr Example")));
+		final Map<String, Object> patientNumber = map("document", map("patient", map("nhsNumber", "9434765919")));
+		
+		final SplitterPropertiesExtractor nested = splitter(patientName, patientNumber);
+		final SplitterPropertiesExtractor extractor = splitter(header);
+		extractor.addSelection(SELECT_ALL, nested);
+		
+		final Map<String, Object> expected = merge(header, merge(patientName, patientNumber));
+		assertEquals(expected, extractor.extractProperties(nodes));
+	}
+	
+	@Test
+	public void whenNestedSplittersExtractListsThenTheyShouldBeMergedAsWithTreeMerge() throws UnsupportedDocumentTypeException {
+		final Map<String, Object> first = map("medications", Lists.<Object>newArrayList(map("name", "Medication 1")));
+		final Map<String, Object> second = map("medications", Lists.<Object>newArrayList(map("name", "Medication 2")));
+		final Map<String, Object> third = map("medications", Lists.<Object>newArrayList(map("name", "Medication 3"),
+				map("name", "Medication 4")));
+		
+		final SplitterPropertiesExtractor nested = splitter(second, third);
+		final SplitterPropertiesExtractor extractor = splitter(first);
+		extractor.addSelection(SELECT_ALL, nested);
+		
+		final Map<String, Object> expected = merge(first, merge(second, third));
+		assertEquals(expected, extractor.extractProperties(nodes));
+	}
+	
+	@Test
+	public void whenNestedSplittersExtractConflictingKeysThenTheyShouldBeMergedAsWithTreeMerge() throws UnsupportedDocumentTypeException {
+		final Map<String, Object> before = map("status", "draft");
+		before.put("document", map("title", "Original title"));
+		final Map<String, Object> conflictingStatus = map("status", "final");
+		final Map<String, Object> conflictingTitle = map("document", map("title", "Nested title"));
+		final Map<String, Object> conflictingType = map("document", "replaced container");
+		final Map<String, Object> after = map("status", "amended");
+		
+		final SplitterPropertiesExtractor innermost = splitter(conflictingType);
+		final SplitterPropertiesExtractor nested = splitter(conflictingStatus, conflictingTitle);
+		nested.addSelection(SELECT_ALL, innermost);
+		final SplitterPropertiesExtractor extractor = splitter(before);
+		extractor.addSelection(SELECT_ALL, nested);
+		extractor.addSelection(SELECT_ALL, extractorOf(after));
+		
+		final Map<String, Object> expected = merge(before, merge(conflictingStatus, conflictingTitle,
+				merge(conflictingType)), after);
+		assertEquals(expected, extractor.extractProperties(nodes));
+	}
+	
+	@Test
+	public void whenASelectionIsMissingThenItShouldBeSkipped() throws UnsupportedDocumentTypeException {
+		final Map<String, Object> selected = map("selected", "value");
+		final SplitterPropertiesExtractor extractor = splitter(selected);
+		extractor.addSelection(new NodeSelector() {
+			@Override
+			public NodeStream selectNodes(final NodeStream nodes) {
+				return null;
+			}
+		}, extractorOf(map("missing", "value")));
+		
+		assertEquals(selected, extractor.extractProperties(nodes));
+	}
+	
+	/**
+	 * Creates a splitter which selects all nodes for each of the specified properties
+	 */
+	@SafeVarargs
+	private static SplitterPropertiesExtractor splitter(final Map<String, Object>... properties) {
+		final SplitterPropertiesExtractor splitter = new SplitterPropertiesExtractor();
+		for (final Map<String, Object> selection: properties) {
+			splitter.addSelection(SELECT_ALL, extractorOf(selection));
+		}
+		return splitter;
+	}
+	
+	/**
+	 * Creates an extractor which returns a copy of the specified properties - extracted properties
+	 * may be modified when merged
+	 */
+	private static PropertiesExtractor<NodeStream> extractorOf(final Map<String, Object> properties) {
+		return new PropertiesExtractor<NodeStream>() {
+			@Override
+			public Map<String, Object> extractProperties(final NodeStream document) {
+				return copy(properties);
+			}
+		};
+	}
+	
+	/**
+	 * Merges copies of the specified properties into a new map (in order)
+	 */
+	@SafeVarargs
+	private final Map<String, Object> merge(final Map<String, Object>... properties) {
+		final Map<String, Object> result = Maps.newLinkedHashMap();
+		for (final Map<String, Object> source: properties) {
+			treeMerge.mergeInto(copy(source), result);
+		}
+		return result;
+	}
+	
+	private static Map<String, Object> map(final String key, final Object value) {
+		final Map<String, Object> map = Maps.newLinkedHashMap();
+		map.put(key, value);
+		return map;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T copy(final T value) {
+		if (value instanceof Map) {
+			final Map<String, Object> copy = Maps.newLinkedHashMap();
+			for (final Map.Entry<String, Object> entry: ((Map<String, Object>)value).entrySet()) {
+				copy.put(entry.getKey(), copy(entry.getValue()));
+			}
+			return (T)copy;
+		} else if (value instanceof List) {
+			final List<Object> copy = Lists.newArrayList();
+			for (final Object element: (List<Object>)value) {
+				copy.add(copy(element));
+			}
+			return (T)copy;
+		}
+		return value;
+	}
+}
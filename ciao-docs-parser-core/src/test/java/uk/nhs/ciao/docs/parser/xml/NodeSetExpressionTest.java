@@ -0,0 +1,67 @@
+package uk.nhs.ciao.docs.parser.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for {@link NodeSetExpression}
+ */
+public class NodeSetExpressionTest {
+	@Test(expected=XPathExpressionException.class)
+	public void testInvalidExpressionFailsFast() throws XPathExpressionException {
+		NodeSetExpression.compile(XPathFactory.newInstance().newXPath(), "/table[");
+	}
+
+	@Test
+	public void testConcurrentEvaluation() throws Exception {
+		final NodeSetExpression expression = NodeSetExpression.compile(XPathFactory.newInstance().newXPath(), "//td");
+		assertEquals(3, expression.evaluate(parseDocument()).getLength());
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Integer>> results = Lists.newArrayList();
+			for (int task = 0; task < 8; task++) {
+				results.add(executorService.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						// DOM instances are not thread-safe - only the expression is shared
+						final Document document = parseDocument();
+						int found = 0;
+						for (int index = 0; index < 1000; index++) {
+							found += expression.evaluate(document).getLength();
+						}
+						return found;
+					}
+				}));
+			}
+
+			for (final Future<Integer> result: results) {
+				assertEquals(Integer.valueOf(3000), result.get());
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private static Document parseDocument() throws Exception {
+		final String xml = "<table><tr><td>a</td><td>b</td></tr><tr><td>c</td></tr></table>";
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
+	}
+}
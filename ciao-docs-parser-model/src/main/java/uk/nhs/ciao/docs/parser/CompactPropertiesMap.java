@@ -0,0 +1,377 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+
+/**
+ * Insertion-ordered map of properties optimised for memory use.
+ * <p>
+ * Extracted document properties typically contain tens of short keys, for which the per-entry objects of
+ * {@link java.util.LinkedHashMap} dominate the size of the map. Instead this map stores keys and values
+ * alternately in a single array (in insertion order) - maps with more than {@value #LINEAR_SCAN_THRESHOLD}
+ * entries also maintain an open-addressed (linear probing) index of array positions. No objects are
+ * allocated per entry.
+ * <p>
+ * The map has the same iteration order and semantics as <code>LinkedHashMap</code> (including
+ * <code>null</code> keys and values) - replacing the value of an existing key does not change its position.
+ * Entries returned by the iterator remain usable after the map is structurally modified. Unlike
+ * <code>LinkedHashMap</code>, an entry whose key is removed and later re-added reads and writes the new mapping.
+ * Removing an entry is <code>O(size)</code>, which suits the append-mostly use of extracted properties.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class CompactPropertiesMap extends AbstractMap<String, Object> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Maps up to this size are searched linearly and have no index
+	 */
+	static final int LINEAR_SCAN_THRESHOLD = 8;
+	
+	private static final Object[] EMPTY = new Object[0];
+	
+	/**
+	 * Keys at even positions, values at odd positions
+	 */
+	private Object[] entries;
+	
+	/**
+	 * Open-addressed index of entry numbers (plus one) - zero marks an empty slot. Rebuilt when deserialized
+	 */
+	private transient int[] index;
+	private int size;
+	private transient int modCount;
+	private transient Set<Entry<String, Object>> entrySet;
+	
+	/**
+	 * Constructs a new empty map
+	 */
+	public CompactPropertiesMap() {
+		this.entries = EMPTY;
+	}
+	
+	/**
+	 * Constructs a new empty map with space for the specified number of entries
+	 */
+	public CompactPropertiesMap(final int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative");
+		}
+		this.entries = expectedSize == 0 ? EMPTY : new Object[expectedSize * 2];
+	}
+	
+	/**
+	 * Constructs a new map containing the entries of the specified map
+	 */
+	public CompactPropertiesMap(final Map<String, ?> map) {
+		this(map.size());
+		putAll(map);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	public boolean containsKey(final Object key) {
+		return find(key) >= 0;
+	}
+	
+	@Override
+	public Object get(final Object key) {
+		final int entry = find(key);
+		return entry < 0 ? null : entries[entry * 2 + 1];
+	}
+	
+	@Override
+	public Object put(final String key, final Object value) {
+		final int entry = find(key);
+		if (entry >= 0) {
+			final Object previous = entries[entry * 2 + 1];
+			entries[entry * 2 + 1] = value;
+			return previous;
+		}
+		
+		if (size * 2 == entries.length) {
+			entries = Arrays.copyOf(entries, Math.max(8, entries.length * 2));
+		}
+		entries[size * 2] = key;
+		entries[size * 2 + 1] = value;
+		size++;
+		modCount++;
+		
+		if (index != null && size * 2 <= index.length) {
+			addToIndex(key, size - 1);
+		} else if (size > LINEAR_SCAN_THRESHOLD) {
+			rebuildIndex();
+		}
+		return null;
+	}
+	
+	@Override
+	public Object remove(final Object key) {
+		final int entry = find(key);
+		if (entry < 0) {
+			return null;
+		}
+		
+		final Object previous = entries[entry * 2 + 1];
+		removeEntry(entry);
+		return previous;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(entries, 0, size * 2, null);
+		index = null;
+		size = 0;
+		modCount++;
+	}
+	
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+	
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (size > LINEAR_SCAN_THRESHOLD) {
+			rebuildIndex();
+		}
+	}
+	
+	/**
+	 * Returns the entry number of the specified key or -1 if the key is not present
+	 */
+	private int find(final Object key) {
+		if (index == null) {
+			for (int entry = 0; entry < size; entry++) {
+				if (Objects.equal(key, entries[entry * 2])) {
+					return entry;
+				}
+			}
+			return -1;
+		}
+		
+		final int mask = index.length - 1;
+		for (int slot = hash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			final int entry = index[slot] - 1;
+			if (Objects.equal(key, entries[entry * 2])) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+	
+	private void removeEntry(final int entry) {
+		System.arraycopy(entries, (entry + 1) * 2, entries, entry * 2, (size - entry - 1) * 2);
+		size--;
+		entries[size * 2] = null;
+		entries[size * 2 + 1] = null;
+		modCount++;
+		
+		// Entry numbers after the removed entry have shifted
+		if (size > LINEAR_SCAN_THRESHOLD) {
+			rebuildIndex();
+		} else {
+			index = null;
+		}
+	}
+	
+	/**
+	 * Rebuilds the index with at least twice as many slots as entries
+	 */
+	private void rebuildIndex() {
+		final int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+		if (index == null || index.length != capacity) {
+			index = new int[capacity];
+		} else {
+			Arrays.fill(index, 0);
+		}
+		
+		for (int entry = 0; entry < size; entry++) {
+			addToIndex(entries[entry * 2], entry);
+		}
+	}
+	
+	private void addToIndex(final Object key, final int entry) {
+		final int mask = index.length - 1;
+		int slot = hash(key) & mask;
+		while (index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = entry + 1;
+	}
+	
+	private static int hash(final Object key) {
+		if (key == null) {
+			return 0;
+		}
+		
+		// Spread the higher bits - small tables only use the lower bits
+		final int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+	
+	private class EntrySet extends AbstractSet<Entry<String, Object>> {
+		@Override
+		public int size() {
+			return size;
+		}
+		
+		@Override
+		public void clear() {
+			CompactPropertiesMap.this.clear();
+		}
+		
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return new EntryIterator();
+		}
+	}
+	
+	private class EntryIterator implements Iterator<Entry<String, Object>> {
+		private int next;
+		private int lastReturned = -1;
+		private int expectedModCount = modCount;
+		
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+		
+		@Override
+		public Entry<String, Object> next() {
+			checkForModification();
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			
+			lastReturned = next++;
+			return new MapEntry(lastReturned);
+		}
+		
+		@Override
+		public void remove() {
+			if (lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			checkForModification();
+			
+			removeEntry(lastReturned);
+			next = lastReturned;
+			lastReturned = -1;
+			expectedModCount = modCount;
+		}
+		
+		private void checkForModification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+	
+	/**
+	 * Entry view of a key in the map - the value is read from (and written to) the map while the key is
+	 * present. Once the key has been removed the entry retains the last value (as a detached
+	 * <code>LinkedHashMap</code> entry does)
+	 */
+	private class MapEntry implements Entry<String, Object> {
+		private final String key;
+		private Object value;
+		private int entry;
+		private int expectedModCount;
+		
+		public MapEntry(final int entry) {
+			this.key = (String)entries[entry * 2];
+			this.value = entries[entry * 2 + 1];
+			this.entry = entry;
+			this.expectedModCount = modCount;
+		}
+		
+		@Override
+		public String getKey() {
+			return key;
+		}
+		
+		@Override
+		public Object getValue() {
+			final int current = locate();
+			if (current >= 0) {
+				value = entries[current * 2 + 1];
+			}
+			return value;
+		}
+		
+		@Override
+		public Object setValue(final Object value) {
+			final int current = locate();
+			final Object previous;
+			if (current >= 0) {
+				previous = entries[current * 2 + 1];
+				entries[current * 2 + 1] = value;
+			} else {
+				previous = this.value;
+			}
+			
+			this.value = value;
+			return previous;
+		}
+		
+		@Override
+		public int hashCode() {
+			final Object key = getKey();
+			final Object value = getValue();
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof Entry)) {
+				return false;
+			}
+			
+			final Entry<?, ?> other = (Entry<?, ?>)obj;
+			return Objects.equal(getKey(), other.getKey()) && Objects.equal(getValue(), other.getValue());
+		}
+		
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+		
+		/**
+		 * Returns the current entry number of the key (or -1 if removed) - entry numbers shift when
+		 * the map is structurally modified
+		 */
+		private int locate() {
+			if (modCount != expectedModCount) {
+				entry = find(key);
+				expectedModCount = modCount;
+			}
+			return entry;
+		}
+	}
+}
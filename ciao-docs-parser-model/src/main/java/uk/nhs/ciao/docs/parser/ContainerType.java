@@ -4,7 +4,6 @@ import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * Represents a type of container within a dynamic property structure (i.e. contains other properties).
@@ -61,7 +60,7 @@ enum ContainerType {
 		
 		@Override
 		public Map<String, Object> createContainer() {
-			return Maps.newLinkedHashMap();
+			return new CompactPropertiesMap();
 		}
 		
 		@SuppressWarnings("unchecked")
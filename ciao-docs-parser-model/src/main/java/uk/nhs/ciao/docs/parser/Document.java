@@ -19,8 +19,10 @@ import com.google.common.base.Strings;
  * <p>
  * When serialising instances of the class, Jackson uses the JavaBean accessors
  * of this class to determine which JSON properties to include. During
- * unmashalling the annotated constructor of this class is used to determine
+ * unmashalling the annotated factory method of this class is used to determine
  * the JSON to Java properties mapping.
+ * 
+ * @see ReferencedDocument
  */
 public class Document {
 	/**
@@ -32,6 +34,30 @@ public class Document {
 	private final byte[] content;
 	private String mediaType;
 	
+	/**
+	 * Returns a document instance corresponding to the specified properties
+	 * <p>
+	 * If no content is provided but a content reference is specified, a {@link ReferencedDocument}
+	 * is returned - otherwise the content is maintained in memory.
+	 * 
+	 * @param name The name of the document
+	 * @param content The document content - the byte array is stored directly,
+	 * 			no defensive copies are made
+	 * @param mediaType The media type of the document
+	 * @param contentReference The (optional) reference to externally stored content
+	 */
+	@JsonCreator
+	public static Document valueOf(@JsonProperty("name") final String name,
+			@JsonProperty(value="content", required=false) final byte[] content,
+			@JsonProperty(value="mediaType", required=false) final String mediaType,
+			@JsonProperty(value="contentReference", required=false) final String contentReference) {
+		if (content == null && !Strings.isNullOrEmpty(contentReference)) {
+			return new ReferencedDocument(name, contentReference, mediaType);
+		}
+		
+		return new Document(name, content, mediaType);
+	}
+	
 	/**
 	 * Constructs a new document instance using the default media type
 	 * 
@@ -51,10 +77,7 @@ public class Document {
 	 * 			no defensive copies are made
 	 * @param mediaType The media type of the document
 	 */
-	@JsonCreator
-	public Document(@JsonProperty("name") final String name,
-			@JsonProperty("content") final byte[] content,
-			@JsonProperty(value="mediaType", required=false) final String mediaType) {
+	public Document(final String name, final byte[] content, final String mediaType) {
 		this.name = Preconditions.checkNotNull(name);
 		this.content = Preconditions.checkNotNull(content);
 		this.mediaType = Strings.isNullOrEmpty(mediaType) ? DEFAULT_MEDIA_TYPE : mediaType;
@@ -95,6 +118,7 @@ public class Document {
 	 */
 	@JsonIgnore
 	public boolean isEmpty() {
+		final byte[] content = getContent();
 		return content == null || content.length == 0;
 	}
 	
@@ -103,7 +127,7 @@ public class Document {
 	 */
 	@JsonIgnore
 	public String getBase64Content() {
-		return DatatypeConverter.printBase64Binary(content);
+		return DatatypeConverter.printBase64Binary(getContent());
 	}
 	
 	/**
@@ -111,14 +135,14 @@ public class Document {
 	 */
 	@JsonIgnore
 	public InputStream getContentStream() {
-		return new ByteArrayInputStream(content);
+		return new ByteArrayInputStream(getContent());
 	}
 	
 	@Override
 	public String toString() {
 		return MoreObjects.toStringHelper(this)
 				.add("name", name)
-				.add("size", content.length)
+				.add("size", getContent().length)
 				.toString();
 	}
 }
\ No newline at end of file
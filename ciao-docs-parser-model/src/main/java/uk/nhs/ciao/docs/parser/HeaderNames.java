@@ -39,6 +39,13 @@ public final class HeaderNames {
 	 */
 	public static final String COMPLETED_FOLDER = "ciaoCompletedFolder";
 	
+	/**
+	 * The wire format of a serialised parsed document (e.g. <code>json</code> or <code>binary</code>)
+	 * 
+	 * @see uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentFormat
+	 */
+	public static final String PARSED_DOCUMENT_FORMAT = "ciaoParsedDocumentFormat";
+	
 	private HeaderNames() {
 		// Suppress default constructor
 	}
@@ -0,0 +1,118 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Arrays;
+
+/**
+ * Mutable position within a dynamic property structure.
+ * <p>
+ * A single cursor is shared by all properties visited during a traversal - segments are pushed and
+ * popped as the traversal moves through the structure. The cursor provides the same view of the current
+ * property as {@link PropertyName}, and {@link #toPropertyName()} creates an immutable name when required.
+ * 
+ * @see PropertyCursorVisitor
+ */
+public final class PropertyCursor {
+	private Object[] segments;
+	private int depth;
+	
+	/**
+	 * Constructs a new cursor positioned at the specified segments
+	 * 
+	 * @param segments The starting segments - the array is copied
+	 */
+	PropertyCursor(final Object[] segments) {
+		this.segments = Arrays.copyOf(segments, Math.max(16, segments.length * 2));
+		this.depth = segments.length;
+	}
+	
+	/**
+	 * Returns the number of segments in the current position
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Returns the segment at the specified depth - either a String (named) or
+	 * Integer (indexed) segment
+	 */
+	public Object getSegment(final int index) {
+		if (index < 0 || index >= depth) {
+			throw new IndexOutOfBoundsException("index: " + index + ", depth: " + depth);
+		}
+		return segments[index];
+	}
+	
+	/**
+	 * Tests if the cursor is positioned at the root property
+	 */
+	public boolean isRoot() {
+		return depth == 0;
+	}
+	
+	/**
+	 * Tests if the current position ends with an indexed segment
+	 */
+	public boolean isIndexed() {
+		return lastSegment() instanceof Integer;
+	}
+	
+	/**
+	 * Tests if the current position ends with a named segment
+	 */
+	public boolean isNamed() {
+		return lastSegment() instanceof String;
+	}
+	
+	/**
+	 * Returns the ending named segment of the current position (if named),
+	 * otherwise <code>null</code> is returned.
+	 */
+	public String getName() {
+		return isNamed() ? (String)lastSegment() : null;
+	}
+	
+	/**
+	 * Returns the ending index segment of the current position (if indexed),
+	 * otherwise <code>-1</code> is returned.
+	 */
+	public int getIndex() {
+		return isIndexed() ? (Integer)lastSegment() : -1;
+	}
+	
+	/**
+	 * Returns an immutable PropertyName for the current position
+	 */
+	public PropertyName toPropertyName() {
+		return depth == 0 ? PropertyName.getRoot() : new PropertyName(Arrays.copyOf(segments, depth));
+	}
+	
+	/**
+	 * Returns the encoded path of the current position
+	 */
+	@Override
+	public String toString() {
+		return toPropertyName().getPath();
+	}
+	
+	/**
+	 * Moves the cursor to a child of the current position
+	 */
+	void push(final Object segment) {
+		if (depth == segments.length) {
+			segments = Arrays.copyOf(segments, segments.length * 2);
+		}
+		segments[depth++] = segment;
+	}
+	
+	/**
+	 * Moves the cursor to the parent of the current position
+	 */
+	void pop() {
+		segments[--depth] = null;
+	}
+	
+	private Object lastSegment() {
+		return depth == 0 ? null : segments[depth - 1];
+	}
+}
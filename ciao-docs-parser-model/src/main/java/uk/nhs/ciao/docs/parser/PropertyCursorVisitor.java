@@ -0,0 +1,20 @@
+package uk.nhs.ciao.docs.parser;
+
+/**
+ * Visits properties within a dynamic property structure without creating a {@link PropertyName}
+ * for each property.
+ * 
+ * @see PropertyName#accept(Object, PropertyCursorVisitor)
+ */
+public interface PropertyCursorVisitor {
+	/**
+	 * Visits a property
+	 * <p>
+	 * The cursor is reused for every property visited - it is only valid for the duration of this
+	 * call. Use {@link PropertyCursor#toPropertyName()} to retain the name of the property.
+	 * 
+	 * @param cursor The position of the property
+	 * @param value The value of the property
+	 */
+	void onProperty(final PropertyCursor cursor, final Object value);
+}
@@ -0,0 +1,49 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Interns property labels (keys) derived from document text.
+ * <p>
+ * Dynamic extractors derive property names from the text of each document, so the same labels
+ * (e.g. <code>NHS Number</code>, <code>D.O.B</code>, <code>Ward</code>) are otherwise allocated as new strings
+ * for every document. Interning the labels means queued documents share a single instance of each label -
+ * and because the hash code of a string is cached per instance, repeated lookups of an interned
+ * label (e.g. when merging or validating properties) do not re-hash the label.
+ * <p>
+ * The table is bounded to {@value #MAX_LABELS} labels (least-recently used labels are evicted) and
+ * safe for concurrent use. Because labels may be evicted, two equal labels are <em>usually</em> the same
+ * instance - a reference comparison can be used as a fast path but must fall back to {@link String#equals(Object)}.
+ */
+public final class PropertyLabels {
+	/**
+	 * The maximum number of labels retained
+	 */
+	static final int MAX_LABELS = 10000;
+	
+	private static final ConcurrentMap<String, String> LABELS = CacheBuilder.newBuilder()
+			.maximumSize(MAX_LABELS)
+			.<String, String>build()
+			.asMap();
+	
+	private PropertyLabels() {
+		// Suppress default constructor
+	}
+	
+	/**
+	 * Returns the canonical instance of the specified label
+	 * 
+	 * @param label The label to intern
+	 * @return The interned label equal to <code>label</code> - or <code>null</code> if the label is <code>null</code>
+	 */
+	public static String intern(final String label) {
+		if (label == null) {
+			return null;
+		}
+		
+		final String existing = LABELS.putIfAbsent(label, label);
+		return existing == null ? label : existing;
+	}
+}
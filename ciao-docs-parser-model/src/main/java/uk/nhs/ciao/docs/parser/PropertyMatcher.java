@@ -0,0 +1,274 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import uk.nhs.ciao.util.SimpleEntry;
+
+/**
+ * Compiled form of a {@link PropertySelector}.
+ * <p>
+ * Each path segment is resolved once into a specialised matcher (map key, list index, any key
+ * or any index) linked to the matcher of the following segment. Matching walks the chain without
+ * re-examining the segment kinds. The segments of the matched path are written into a fixed-size
+ * prefix buffer - each matcher owns the buffer position at its depth, so nothing is pushed or popped
+ * while matching.
+ */
+abstract class PropertyMatcher {
+	/**
+	 * Position of the segment matched by this matcher (also the number of preceding segments)
+	 */
+	protected final int depth;
+	
+	/**
+	 * Compiles the specified selector segments into a matcher chain
+	 */
+	public static PropertyMatcher compile(final Object[] segments) {
+		PropertyMatcher matcher = new Terminal(segments.length);
+		for (int index = segments.length - 1; index >= 0; index--) {
+			final Object segment = segments[index];
+			if (segment == PropertyPath.ANY_KEY) {
+				matcher = new AnyKey(index, matcher);
+			} else if (segment == PropertyPath.ANY_INDEX) {
+				matcher = new AnyIndex(index, matcher);
+			} else if (segment instanceof Integer) {
+				matcher = new ListIndex(index, (Integer)segment, matcher);
+			} else {
+				matcher = new MapKey(index, (String)segment, matcher);
+			}
+		}
+		return matcher;
+	}
+	
+	protected PropertyMatcher(final int depth) {
+		this.depth = depth;
+	}
+	
+	/**
+	 * Finds the first matching value
+	 * 
+	 * @param type The type of value to match
+	 * @param value The value at this matcher's depth
+	 * @param prefix Buffer receiving the segments of the matched path, or <code>null</code> if the
+	 * 		path is not required
+	 * @return The matching value, or <code>null</code> if there is no match
+	 */
+	public abstract <T> T first(final Class<T> type, final Object value, final Object[] prefix);
+	
+	/**
+	 * Adds all matching values (and their paths) to the results
+	 * 
+	 * @param type The type of value to match
+	 * @param value The value at this matcher's depth
+	 * @param prefix Buffer holding the segments of the path matched so far
+	 * @param results The list to add matches to
+	 */
+	public abstract <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+			final List<Entry<Object[], T>> results);
+	
+	/**
+	 * Matches the end of the selector path
+	 */
+	private static final class Terminal extends PropertyMatcher {
+		public Terminal(final int depth) {
+			super(depth);
+		}
+		
+		@Override
+		public <T> T first(final Class<T> type, final Object value, final Object[] prefix) {
+			return type.isInstance(value) ? type.cast(value) : null;
+		}
+		
+		@Override
+		public <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+				final List<Entry<Object[], T>> results) {
+			if (type.isInstance(value)) {
+				results.add(SimpleEntry.valueOf(Arrays.copyOf(prefix, depth), type.cast(value)));
+			}
+		}
+	}
+	
+	/**
+	 * Matches a named key in a map
+	 */
+	private static final class MapKey extends PropertyMatcher {
+		private final String key;
+		private final PropertyMatcher next;
+		
+		public MapKey(final int depth, final String key, final PropertyMatcher next) {
+			super(depth);
+			this.key = key;
+			this.next = next;
+		}
+		
+		@Override
+		public <T> T first(final Class<T> type, final Object value, final Object[] prefix) {
+			if (!(value instanceof Map)) {
+				return null;
+			}
+			
+			final Object child = ((Map<?, ?>)value).get(key);
+			if (child == null) {
+				return null;
+			}
+			
+			if (prefix != null) {
+				prefix[depth] = key;
+			}
+			return next.first(type, child, prefix);
+		}
+		
+		@Override
+		public <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+				final List<Entry<Object[], T>> results) {
+			if (value instanceof Map) {
+				final Object child = ((Map<?, ?>)value).get(key);
+				if (child != null) {
+					prefix[depth] = key;
+					next.all(type, child, prefix, results);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Matches an index in a list
+	 */
+	private static final class ListIndex extends PropertyMatcher {
+		private final int index;
+		private final Integer boxedIndex;
+		private final PropertyMatcher next;
+		
+		public ListIndex(final int depth, final int index, final PropertyMatcher next) {
+			super(depth);
+			this.index = index;
+			this.boxedIndex = index;
+			this.next = next;
+		}
+		
+		@Override
+		public <T> T first(final Class<T> type, final Object value, final Object[] prefix) {
+			final Object child = get(value);
+			if (child == null) {
+				return null;
+			}
+			
+			if (prefix != null) {
+				prefix[depth] = boxedIndex;
+			}
+			return next.first(type, child, prefix);
+		}
+		
+		@Override
+		public <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+				final List<Entry<Object[], T>> results) {
+			final Object child = get(value);
+			if (child != null) {
+				prefix[depth] = boxedIndex;
+				next.all(type, child, prefix, results);
+			}
+		}
+		
+		private Object get(final Object value) {
+			if (value instanceof List) {
+				final List<?> list = (List<?>)value;
+				return index < list.size() ? list.get(index) : null;
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Matches any key in a map
+	 */
+	private static final class AnyKey extends PropertyMatcher {
+		private final PropertyMatcher next;
+		
+		public AnyKey(final int depth, final PropertyMatcher next) {
+			super(depth);
+			this.next = next;
+		}
+		
+		@Override
+		public <T> T first(final Class<T> type, final Object value, final Object[] prefix) {
+			if (value instanceof Map) {
+				for (final Entry<?, ?> entry: ((Map<?, ?>)value).entrySet()) {
+					if (entry.getValue() == null) {
+						continue;
+					}
+					
+					final T result = next.first(type, entry.getValue(), prefix);
+					if (result != null) {
+						if (prefix != null) {
+							prefix[depth] = entry.getKey();
+						}
+						return result;
+					}
+				}
+			}
+			return null;
+		}
+		
+		@Override
+		public <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+				final List<Entry<Object[], T>> results) {
+			if (value instanceof Map) {
+				for (final Entry<?, ?> entry: ((Map<?, ?>)value).entrySet()) {
+					if (entry.getValue() != null) {
+						prefix[depth] = entry.getKey();
+						next.all(type, entry.getValue(), prefix, results);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Matches any index in a list
+	 */
+	private static final class AnyIndex extends PropertyMatcher {
+		private final PropertyMatcher next;
+		
+		public AnyIndex(final int depth, final PropertyMatcher next) {
+			super(depth);
+			this.next = next;
+		}
+		
+		@Override
+		public <T> T first(final Class<T> type, final Object value, final Object[] prefix) {
+			if (value instanceof List) {
+				int index = 0;
+				for (final Object child: (List<?>)value) {
+					if (child != null) {
+						final T result = next.first(type, child, prefix);
+						if (result != null) {
+							if (prefix != null) {
+								prefix[depth] = index;
+							}
+							return result;
+						}
+					}
+					index++;
+				}
+			}
+			return null;
+		}
+		
+		@Override
+		public <T> void all(final Class<T> type, final Object value, final Object[] prefix,
+				final List<Entry<Object[], T>> results) {
+			if (value instanceof List) {
+				int index = 0;
+				for (final Object child: (List<?>)value) {
+					if (child != null) {
+						prefix[depth] = index;
+						next.all(type, child, prefix, results);
+					}
+					index++;
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package uk.nhs.ciao.docs.parser;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -8,6 +11,9 @@ import java.util.Set;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.collect.Sets;
@@ -36,6 +42,9 @@ import com.google.common.collect.Sets;
  * </ul>
  * PropertyName instances can be used to address properties across multiple source objects.
  * <p>
+ * Names returned by {@link #valueOf(String)} are interned in a bounded cache keyed by the encoded path - repeated
+ * lookups of the same path return the same instance without re-parsing the path.
+ * <p>
  * While PropertyName uniquely identifies a property, {@link PropertySelector} can be used to find multiple
  * properties using nested segments and wildcards.
  * 
@@ -45,20 +54,45 @@ import com.google.common.collect.Sets;
 public final class PropertyName {
 	private static final PropertyName ROOT = new PropertyName(new Object[0]);
 	
+	/**
+	 * The maximum number of parsed names retained by {@link #valueOf(String)}
+	 */
+	static final int MAX_INTERNED_NAMES = 10000;
+	
+	/**
+	 * Parsed names keyed by the path they were parsed from
+	 */
+	private static final Cache<String, PropertyName> INTERNED_NAMES = CacheBuilder.newBuilder()
+			.maximumSize(MAX_INTERNED_NAMES)
+			.build();
+	
 	private final Object[] segments;
-	private final String path;
+	private String path;
+	private int hash;
 	
 	/**
 	 * Returns a PropertyName corresponding to the specified path.
 	 * <p>
 	 * Segments within the path must have special/reserved characters escaped.
+	 * <p>
+	 * The parsed name is interned - repeated calls with the same path return a cached instance.
 	 * 
 	 * @param path The encoded path which defines the PropertyName
 	 * @return The PropertyName corresponding to <code>path</code>
 	 * @throws IllegalArgumentException If the string is not a valid PropertyName
 	 */
 	public static PropertyName valueOf(final String path) {
-		return Strings.isNullOrEmpty(path) ? ROOT : new PropertyName(PropertyPath.parse(path));
+		if (Strings.isNullOrEmpty(path)) {
+			return ROOT;
+		}
+		
+		PropertyName name = INTERNED_NAMES.getIfPresent(path);
+		if (name == null) {
+			// Invalid paths throw before reaching the cache
+			name = new PropertyName(PropertyPath.parse(path));
+			INTERNED_NAMES.put(path, name);
+		}
+		return name;
 	}
 	
 	/**
@@ -76,7 +110,6 @@ public final class PropertyName {
 	// Package private to allow construction from PropertySelector
 	PropertyName(final Object[] segments) {
 		this.segments = segments;
-		this.path = PropertyPath.toString(segments);
 	}
 	
 	/**
@@ -129,7 +162,13 @@ public final class PropertyName {
 	 * @return the encoded path which defines this property name
 	 */
 	public String getPath() {
-		return path;
+		// Encoded on first use - most names (e.g. those created while visiting) only need the segments
+		String result = path;
+		if (result == null) {
+			result = PropertyPath.toString(segments);
+			path = result; // safe to publish without volatile
+		}
+		return result;
 	}
 	
 	/**
@@ -302,7 +341,12 @@ public final class PropertyName {
 	
 	@Override
 	public int hashCode() {
-		return path.hashCode();
+		int result = hash;
+		if (result == 0) {
+			result = Arrays.hashCode(segments);
+			hash = result; // safe to publish without volatile
+		}
+		return result;
 	}
 	
 	@Override
@@ -312,7 +356,9 @@ public final class PropertyName {
 		} else if (obj == null || getClass() != obj.getClass()) {
 			return false;
 		}
-		return path.equals(((PropertyName)obj).path);
+		
+		final PropertyName other = (PropertyName)obj;
+		return hashCode() == other.hashCode() && Arrays.equals(segments, other.segments);
 	}
 	
 	@Override
@@ -332,21 +378,47 @@ public final class PropertyName {
 	 * @param visitor The visitor visting the property structure
 	 */
 	public void accept(final Object source, final PropertyVisitor visitor) {
-		visitor.onProperty(this, source);
+		accept(source, new PropertyCursorVisitor() {
+			@Override
+			public void onProperty(final PropertyCursor cursor, final Object value) {
+				visitor.onProperty(cursor.toPropertyName(), value);
+			}
+		});
+	}
+	
+	/**
+	 * Accepts the specified visitor for this property value and all
+	 * child properties on the source object.
+	 * <p>
+	 * A single {@link PropertyCursor} is moved through the property structure - PropertyName
+	 * instances are only created if requested by the visitor.
+	 * 
+	 * @param source The current value of this property
+	 * @param visitor The visitor visting the property structure
+	 */
+	public void accept(final Object source, final PropertyCursorVisitor visitor) {
+		accept(new PropertyCursor(segments), source, visitor);
+	}
+	
+	private static void accept(final PropertyCursor cursor, final Object source, final PropertyCursorVisitor visitor) {
+		visitor.onProperty(cursor, source);
 
 		// Recurse through the child structures
 		if (source instanceof List<?>) {
 			int index = 0;
 			for (final Object childValue: (List<?>)source) {
-				getChild(index).accept(childValue, visitor);
+				cursor.push(index);
+				accept(cursor, childValue, visitor);
+				cursor.pop();
 				index++;
 			}
 		} else if (source instanceof Map<?,?>) {
 			final Map<?, ?> map = (Map<?, ?>)source;
 			for (final Entry<?, ?> entry: map.entrySet()) {
 				if (entry.getKey() instanceof String) {
-					getChild((String)entry.getKey()).accept(entry.getValue(),
-							visitor);
+					cursor.push(entry.getKey());
+					accept(cursor, entry.getValue(), visitor);
+					cursor.pop();
 				}
 			}
 		}
@@ -358,17 +430,142 @@ public final class PropertyName {
 	 * @param source The source object associated with the root property name
 	 * @param includeContainers true if container names should be returned, or false if they should be omitted
 	 * @return The set of all property names across the dynamic structure
+	 * @see #iterateAll(Object, boolean)
 	 */
 	public static Set<PropertyName> findAll(final Object source, final boolean includeContainers) {
 		final Set<PropertyName> names = Sets.newLinkedHashSet();
-		getRoot().accept(source, new PropertyVisitor() {
+		getRoot().accept(source, new PropertyCursorVisitor() {
 			@Override
-			public void onProperty(final PropertyName name, final Object value) {
+			public void onProperty(final PropertyCursor cursor, final Object value) {
 				if (includeContainers || !ContainerType.isContainer(value)) {
-					names.add(name);
+					names.add(cursor.toPropertyName());
 				}
  			}
 		});
 		return names;
 	}
+	
+	/**
+	 * Lazily iterates all property names across the specified source structure
+	 * <p>
+	 * Names are returned in the same order as {@link #findAll(Object, boolean)}, however the structure is
+	 * walked as the iterator advances - names are not collected up-front. The source structure should
+	 * not be modified while iterating.
+	 * 
+	 * @param source The source object associated with the root property name
+	 * @param includeContainers true if container names should be returned, or false if they should be omitted
+	 * @return An iterable over all property names across the dynamic structure
+	 */
+	public static Iterable<PropertyName> iterateAll(final Object source, final boolean includeContainers) {
+		return new Iterable<PropertyName>() {
+			@Override
+			public Iterator<PropertyName> iterator() {
+				return new PropertyNameIterator(source, includeContainers);
+			}
+		};
+	}
+	
+	/**
+	 * Walks a property structure depth-first using an explicit stack of child iterators
+	 * <p>
+	 * While a container is on top of the stack the cursor is positioned at that container
+	 */
+	private static class PropertyNameIterator extends AbstractIterator<PropertyName> {
+		private final boolean includeContainers;
+		private final PropertyCursor cursor;
+		private final Deque<ChildIterator> stack;
+		private Object root;
+		private boolean started;
+		
+		public PropertyNameIterator(final Object source, final boolean includeContainers) {
+			this.includeContainers = includeContainers;
+			this.cursor = new PropertyCursor(ROOT.segments);
+			this.stack = new ArrayDeque<ChildIterator>();
+			this.root = source;
+		}
+		
+		@Override
+		protected PropertyName computeNext() {
+			if (!started) {
+				started = true;
+				final Object value = root;
+				root = null;
+				
+				final boolean container = ContainerType.isContainer(value);
+				if (container) {
+					stack.push(new ChildIterator(value));
+				}
+				if (includeContainers || !container) {
+					return ROOT;
+				}
+			}
+			
+			while (!stack.isEmpty()) {
+				final ChildIterator children = stack.peek();
+				if (!children.advance()) {
+					stack.pop();
+					if (!stack.isEmpty()) {
+						cursor.pop();
+					}
+					continue;
+				}
+				
+				cursor.push(children.segment);
+				final boolean container = ContainerType.isContainer(children.value);
+				final PropertyName name = includeContainers || !container ? cursor.toPropertyName() : null;
+				if (container) {
+					stack.push(new ChildIterator(children.value));
+				} else {
+					cursor.pop();
+				}
+				
+				if (name != null) {
+					return name;
+				}
+			}
+			
+			return endOfData();
+		}
+	}
+	
+	/**
+	 * Iterates the child segments and values of a container
+	 */
+	private static class ChildIterator {
+		private final Iterator<?> iterator;
+		private final boolean list;
+		private int index;
+		private Object segment;
+		private Object value;
+		
+		public ChildIterator(final Object container) {
+			this.list = container instanceof List<?>;
+			this.iterator = list ? ((List<?>)container).iterator() : ((Map<?, ?>)container).entrySet().iterator();
+		}
+		
+		/**
+		 * Moves to the next child - returning false if there are no more children
+		 */
+		public boolean advance() {
+			while (iterator.hasNext()) {
+				final Object next = iterator.next();
+				if (list) {
+					segment = index++;
+					value = next;
+					return true;
+				}
+				
+				final Entry<?, ?> entry = (Entry<?, ?>)next;
+				if (entry.getKey() instanceof String) {
+					segment = entry.getKey();
+					value = entry.getValue();
+					return true;
+				}
+			}
+			
+			segment = null;
+			value = null;
+			return false;
+		}
+	}
 }
@@ -99,6 +99,8 @@ final class PropertyPath {
 	 * <p>
 	 * If allowed, wildcards (.*, or [*]) are represented using {@link #ANY_KEY} and {@link #ANY_INDEX}.
 	 * <p>
+	 * Named segments are interned via {@link PropertyLabels} so they share instances with extracted property keys.
+	 * <p>
 	 * An empty array represents the root path
 	 * 
 	 * @param path The path to parse
@@ -142,7 +144,7 @@ final class PropertyPath {
 			// special characters
 			else if (c == '[') {
 				if (state == ParseState.KEY) {
-					segments.add(builder.toString());
+					segments.add(PropertyLabels.intern(builder.toString()));
 					builder.setLength(0);
 				} else if (state != ParseState.ROOT && state != ParseState.AFTER_INDEX) {
 					throw new IllegalArgumentException("Invalid start index character - pos: " + index);
@@ -162,7 +164,7 @@ final class PropertyPath {
 				state = ParseState.AFTER_INDEX;
 			} else if (c == '.') {
 				if (state == ParseState.KEY) {
-					segments.add(builder.toString());
+					segments.add(PropertyLabels.intern(builder.toString()));
 					builder.setLength(0);
 				} else if (state != ParseState.AFTER_INDEX) {
 					throw new IllegalArgumentException("Invalid key separator - pos: " + index);
@@ -230,7 +232,7 @@ final class PropertyPath {
 		switch (state) {
 		case KEY:
 			if (builder.length() > 0) {
-				segments.add(builder.toString());
+				segments.add(PropertyLabels.intern(builder.toString()));
 				builder.setLength(0);
 			}
 			break;
@@ -9,6 +9,8 @@ import uk.nhs.ciao.util.SimpleEntry;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.ObjectArrays;
@@ -32,6 +34,10 @@ import com.google.common.collect.ObjectArrays;
  * <li><code>authors[*]</code>
  * <li><code>authors[*].*</code>
  * </ul>
+ * <p>
+ * Selectors returned by {@link #valueOf(String)} are interned in a bounded cache keyed by the path.
+ * <p>
+ * Each selector is compiled into a chain of segment matchers when it is created - see {@link PropertyMatcher}.
  */
 public final class PropertySelector {		
 	/**
@@ -39,21 +45,53 @@ public final class PropertySelector {
 	 */
 	private static final PropertySelector ROOT = new PropertySelector(new Object[0]);
 	
+	/**
+	 * The maximum number of parsed selectors retained by {@link #valueOf(String)}
+	 */
+	static final int MAX_INTERNED_SELECTORS = 10000;
+	
+	/**
+	 * Parsed selectors keyed by the path they were parsed from
+	 */
+	private static final Cache<String, PropertySelector> INTERNED_SELECTORS = CacheBuilder.newBuilder()
+			.maximumSize(MAX_INTERNED_SELECTORS)
+			.build();
+	
 	private final Object[] segments;
 	private final boolean multi;
+	private final PropertyMatcher matcher;
 	private int hash;
 	
 	/**
 	 * Returns a selector matching the specified path
+	 * <p>
+	 * The parsed selector is interned - repeated calls with the same path return a cached instance.
 	 */
 	public static PropertySelector valueOf(final String path) {
-		final boolean allowWildcards = true;
-		return Strings.isNullOrEmpty(path) ? ROOT : new PropertySelector(PropertyPath.parse(path, allowWildcards));
+		if (Strings.isNullOrEmpty(path)) {
+			return ROOT;
+		}
+		
+		PropertySelector selector = INTERNED_SELECTORS.getIfPresent(path);
+		if (selector == null) {
+			final boolean allowWildcards = true;
+			selector = new PropertySelector(PropertyPath.parse(path, allowWildcards));
+			INTERNED_SELECTORS.put(path, selector);
+		}
+		return selector;
 	}
 	
 	PropertySelector(final Object[] segments) {
 		this.segments = segments;
 		this.multi = PropertyPath.containsWildcard(segments);
+		this.matcher = PropertyMatcher.compile(segments);
+	}
+	
+	/**
+	 * Returns the segments of this selector - the array is NOT copied
+	 */
+	Object[] getSegments() {
+		return segments;
 	}
 	
 	/**
@@ -130,8 +168,10 @@ public final class PropertySelector {
 	 * 		the wrong type are ignored
 	 */
 	public <T> Entry<String, T> select(final Class<T> type, final Map<String, Object> properties) {
-		final Entry<Object[], T> entry = PropertyPath.getEntry(type, properties, segments);
-		return entry == null ? null : SimpleEntry.valueOf(PropertyPath.toString(entry.getKey()), entry.getValue());
+		// The matched path is only recorded if it can differ from the selector path
+		final Object[] prefix = multi ? new Object[segments.length] : null;
+		final T value = matcher.first(type, properties, prefix);
+		return value == null ? null : SimpleEntry.valueOf(PropertyPath.toString(multi ? prefix : segments), value);
 	}
 	
 	/**
@@ -141,7 +181,7 @@ public final class PropertySelector {
 	 * 		the wrong type are ignored
 	 */
 	public <T> T selectValue(final Class<T> type, final Map<String, Object> properties) {
-		return PropertyPath.getValue(type, properties, segments);
+		return matcher.first(type, properties, null);
 	}
 	
 	/**
@@ -171,7 +211,7 @@ public final class PropertySelector {
 	public <T> Map<String, T> selectAll(final Class<T> type, final Map<String, Object> properties) {
 		final Map<String, T> results = Maps.newLinkedHashMap();
 		
-		for (final Entry<Object[], T> entry: PropertyPath.findAll(type, properties, segments)) {
+		for (final Entry<Object[], T> entry: findAll(type, properties)) {
 			results.put(PropertyPath.toString(entry.getKey()), entry.getValue());
 		}
 		
@@ -187,13 +227,19 @@ public final class PropertySelector {
 	public <T> List<T> selectAllValues(final Class<T> type, final Map<String, Object> properties) {
 		final List<T> results = Lists.newArrayList();
 		
-		for (final Entry<Object[], T> entry: PropertyPath.findAll(type, properties, segments)) {
+		for (final Entry<Object[], T> entry: findAll(type, properties)) {
 			results.add(entry.getValue());
 		}
 		
 		return results;
 	}
 	
+	private <T> List<Entry<Object[], T>> findAll(final Class<T> type, final Map<String, Object> properties) {
+		final List<Entry<Object[], T>> results = Lists.newArrayList();
+		matcher.all(type, properties, new Object[segments.length], results);
+		return results;
+	}
+	
 	@Override
 	public int hashCode() {
 		int result = hash;
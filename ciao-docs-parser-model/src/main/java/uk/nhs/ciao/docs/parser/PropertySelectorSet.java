@@ -0,0 +1,260 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import uk.nhs.ciao.util.SimpleEntry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Evaluates multiple {@link PropertySelector}s against a dynamic map structure in a single traversal.
+ * <p>
+ * The selectors are compiled into a prefix trie - selectors sharing leading segments share the
+ * corresponding trie nodes, so each part of the structure is visited once per distinct prefix rather
+ * than once per selector. The results of each selector are identical (including order) to evaluating
+ * the selector individually.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class PropertySelectorSet {
+	private final List<PropertySelector> selectors;
+	private final Node root;
+	private final int maxDepth;
+	
+	/**
+	 * Returns a set containing the specified selectors
+	 */
+	public static PropertySelectorSet of(final PropertySelector... selectors) {
+		return new PropertySelectorSet(Arrays.asList(selectors));
+	}
+	
+	/**
+	 * Returns a set containing the specified selectors
+	 */
+	public static PropertySelectorSet of(final Collection<PropertySelector> selectors) {
+		return new PropertySelectorSet(selectors);
+	}
+	
+	/**
+	 * Returns a set containing selectors equivalent to the specified property names
+	 */
+	public static PropertySelectorSet forNames(final Collection<PropertyName> names) {
+		final List<PropertySelector> selectors = Lists.newArrayListWithCapacity(names.size());
+		for (final PropertyName name: names) {
+			selectors.add(name.toPropertySelector());
+		}
+		return new PropertySelectorSet(selectors);
+	}
+	
+	private PropertySelectorSet(final Collection<PropertySelector> selectors) {
+		this.selectors = ImmutableList.copyOf(selectors);
+		this.root = new Node();
+		
+		int depth = 0;
+		for (int index = 0; index < this.selectors.size(); index++) {
+			final Object[] segments = this.selectors.get(index).getSegments();
+			depth = Math.max(depth, segments.length);
+			
+			Node node = root;
+			for (final Object segment: segments) {
+				node = node.getOrAddChild(segment);
+			}
+			node.addSelector(index);
+		}
+		this.maxDepth = depth;
+	}
+	
+	/**
+	 * Returns the selectors in this set
+	 */
+	public List<PropertySelector> getSelectors() {
+		return selectors;
+	}
+	
+	/**
+	 * Selects the first matching property value of each selector from the dynamic map
+	 * 
+	 * @return The first matching value of each selector - selectors without a match
+	 * 		are not contained in the returned map
+	 * @see PropertySelector#selectValue(Map)
+	 */
+	public Map<PropertySelector, Object> selectValues(final Map<String, Object> properties) {
+		return selectValues(Object.class, properties);
+	}
+	
+	/**
+	 * Selects the first matching property value of each selector from the dynamic map
+	 * 
+	 * @param type The type of objects matched - any objects matching a selector but of 
+	 * 		the wrong type are ignored
+	 * @return The first matching value of each selector - selectors without a match
+	 * 		are not contained in the returned map
+	 * @see PropertySelector#selectValue(Class, Map)
+	 */
+	public <T> Map<PropertySelector, T> selectValues(final Class<T> type, final Map<String, Object> properties) {
+		final List<List<Entry<Object[], T>>> results = evaluate(type, properties);
+		
+		final Map<PropertySelector, T> values = Maps.newLinkedHashMap();
+		for (int index = 0; index < results.size(); index++) {
+			final List<Entry<Object[], T>> matches = results.get(index);
+			if (!matches.isEmpty() && !values.containsKey(selectors.get(index))) {
+				values.put(selectors.get(index), matches.get(0).getValue());
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Selects all matching property key/value pairs of each selector from the dynamic map
+	 * <p>
+	 * The entry keys are encoded as matching paths
+	 * 
+	 * @return The matches of each selector in this set - selectors without a match are
+	 * 		mapped to an empty map
+	 * @see PropertySelector#selectAll(Map)
+	 */
+	public Map<PropertySelector, Map<String, Object>> selectAll(final Map<String, Object> properties) {
+		return selectAll(Object.class, properties);
+	}
+	
+	/**
+	 * Selects all matching property key/value pairs of each selector from the dynamic map
+	 * <p>
+	 * The entry keys are encoded as matching paths
+	 * 
+	 * @param type The type of objects matched - any objects matching a selector but of 
+	 * 		the wrong type are ignored
+	 * @return The matches of each selector in this set - selectors without a match are
+	 * 		mapped to an empty map
+	 * @see PropertySelector#selectAll(Class, Map)
+	 */
+	public <T> Map<PropertySelector, Map<String, T>> selectAll(final Class<T> type, final Map<String, Object> properties) {
+		final List<List<Entry<Object[], T>>> results = evaluate(type, properties);
+		
+		final Map<PropertySelector, Map<String, T>> selected = Maps.newLinkedHashMap();
+		for (int index = 0; index < results.size(); index++) {
+			if (selected.containsKey(selectors.get(index))) {
+				continue;
+			}
+			
+			final Map<String, T> matches = Maps.newLinkedHashMap();
+			for (final Entry<Object[], T> entry: results.get(index)) {
+				matches.put(PropertyPath.toString(entry.getKey()), entry.getValue());
+			}
+			selected.put(selectors.get(index), matches);
+		}
+		return selected;
+	}
+	
+	/**
+	 * Walks the properties once - returning the matches of each selector (by index)
+	 */
+	private <T> List<List<Entry<Object[], T>>> evaluate(final Class<T> type, final Map<String, Object> properties) {
+		final List<List<Entry<Object[], T>>> results = Lists.newArrayListWithCapacity(selectors.size());
+		for (int index = 0; index < selectors.size(); index++) {
+			final List<Entry<Object[], T>> matches = Lists.newArrayList();
+			results.add(matches);
+		}
+		
+		root.evaluate(type, properties, new Object[maxDepth], 0, results);
+		return results;
+	}
+	
+	/**
+	 * Trie node - each child matches one segment kind following the prefix of this node
+	 */
+	private static class Node {
+		private final Map<Object, Node> keys = Maps.newLinkedHashMap();
+		private final Map<Integer, Node> indexes = Maps.newLinkedHashMap();
+		private Node anyKey;
+		private Node anyIndex;
+		private int[] selectorIndexes = new int[0];
+		
+		public Node getOrAddChild(final Object segment) {
+			if (segment == PropertyPath.ANY_KEY) {
+				if (anyKey == null) {
+					anyKey = new Node();
+				}
+				return anyKey;
+			} else if (segment == PropertyPath.ANY_INDEX) {
+				if (anyIndex == null) {
+					anyIndex = new Node();
+				}
+				return anyIndex;
+			} else if (segment instanceof Integer) {
+				Node child = indexes.get(segment);
+				if (child == null) {
+					child = new Node();
+					indexes.put((Integer)segment, child);
+				}
+				return child;
+			} else {
+				Node child = keys.get(segment);
+				if (child == null) {
+					child = new Node();
+					keys.put(segment, child);
+				}
+				return child;
+			}
+		}
+		
+		public void addSelector(final int index) {
+			selectorIndexes = Arrays.copyOf(selectorIndexes, selectorIndexes.length + 1);
+			selectorIndexes[selectorIndexes.length - 1] = index;
+		}
+		
+		public <T> void evaluate(final Class<T> type, final Object value, final Object[] prefix, final int depth,
+				final List<List<Entry<Object[], T>>> results) {
+			if (value == null) {
+				return;
+			}
+			
+			if (selectorIndexes.length > 0 && type.isInstance(value)) {
+				final Entry<Object[], T> match = SimpleEntry.valueOf(Arrays.copyOf(prefix, depth), type.cast(value));
+				for (final int index: selectorIndexes) {
+					results.get(index).add(match);
+				}
+			}
+			
+			if (value instanceof Map) {
+				final Map<?, ?> map = (Map<?, ?>)value;
+				for (final Entry<Object, Node> child: keys.entrySet()) {
+					prefix[depth] = child.getKey();
+					child.getValue().evaluate(type, map.get(child.getKey()), prefix, depth + 1, results);
+				}
+				
+				if (anyKey != null) {
+					for (final Entry<?, ?> entry: map.entrySet()) {
+						prefix[depth] = entry.getKey();
+						anyKey.evaluate(type, entry.getValue(), prefix, depth + 1, results);
+					}
+				}
+			} else if (value instanceof List) {
+				final List<?> list = (List<?>)value;
+				for (final Entry<Integer, Node> child: indexes.entrySet()) {
+					final int index = child.getKey();
+					if (index < list.size()) {
+						prefix[depth] = child.getKey();
+						child.getValue().evaluate(type, list.get(index), prefix, depth + 1, results);
+					}
+				}
+				
+				if (anyIndex != null) {
+					int index = 0;
+					for (final Object child: list) {
+						prefix[depth] = index;
+						anyIndex.evaluate(type, child, prefix, depth + 1, results);
+						index++;
+					}
+				}
+			}
+		}
+	}
+}
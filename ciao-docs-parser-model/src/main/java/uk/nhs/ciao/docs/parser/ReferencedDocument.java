@@ -0,0 +1,131 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+
+/**
+ * A document whose binary content is stored externally (claim-check) and
+ * referenced by file path.
+ * <p>
+ * The content is lazy-loaded from the referenced file the first time {@link #getContent()}
+ * is called and then maintained in memory. {@link #getContentStream()} reads directly
+ * from the referenced file without loading the full content.
+ * <p>
+ * When serialising instances of the class, the content reference is included in place
+ * of the Base64 encoded content.
+ */
+public class ReferencedDocument extends Document {
+	private static final byte[] NO_CONTENT = new byte[0];
+
+	private final String contentReference;
+	private volatile byte[] content; // lazy-loaded
+
+	/**
+	 * Constructs a new document instance
+	 *
+	 * @param name The name of the document
+	 * @param contentReference The path of the file containing the document content
+	 * @param mediaType The media type of the document
+	 */
+	@JsonCreator
+	public ReferencedDocument(@JsonProperty("name") final String name,
+			@JsonProperty("contentReference") final String contentReference,
+			@JsonProperty(value="mediaType", required=false) final String mediaType) {
+		super(name, NO_CONTENT, mediaType);
+		this.contentReference = Preconditions.checkNotNull(contentReference);
+	}
+
+	/**
+	 * The path of the file containing the document content
+	 */
+	public String getContentReference() {
+		return contentReference;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The content is loaded from the referenced file on first access
+	 *
+	 * @throws IllegalStateException If the referenced content could not be loaded
+	 */
+	@Override
+	@JsonIgnore
+	public byte[] getContent() {
+		byte[] result = content;
+		if (result == null) {
+			synchronized (this) {
+				result = content;
+				if (result == null) {
+					result = loadContent();
+					content = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the content has not already been loaded, the stream reads directly
+	 * from the referenced file
+	 *
+	 * @throws IllegalStateException If the referenced file does not exist
+	 */
+	@Override
+	@JsonIgnore
+	public InputStream getContentStream() {
+		if (content != null) {
+			return super.getContentStream();
+		}
+
+		try {
+			return new FileInputStream(getContentFile());
+		} catch (FileNotFoundException e) {
+			throw new IllegalStateException("Referenced document content does not exist: " + contentReference, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The referenced file is checked without loading the content
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isEmpty() {
+		return content == null ? getContentFile().length() == 0 : content.length == 0;
+	}
+
+	private File getContentFile() {
+		return new File(contentReference);
+	}
+
+	private byte[] loadContent() {
+		try {
+			return Files.toByteArray(getContentFile());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load referenced document content: " + contentReference, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("name", getName())
+				.add("contentReference", contentReference)
+				.toString();
+	}
+}
@@ -5,7 +5,6 @@ import static uk.nhs.ciao.docs.parser.PropertyNames.*;
 import java.util.Map;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 
 /**
  * A bean-like view of a {@link ParsedDocument#getProperties()} for standard properties
@@ -64,7 +63,7 @@ public class StandardProperties {
 			Object metadataValue = properties.get(METADATA);
 			Map<String, Object> metadataMap;
 			if (metadataValue == null) {
-				metadataMap = Maps.<String, Object>newLinkedHashMap();
+				metadataMap = new CompactPropertiesMap();
 				properties.put(METADATA, metadataMap);
 			} else if (metadataValue instanceof Map<?,?>) {
 				metadataMap = (Map<String, Object>)metadataValue;
@@ -0,0 +1,155 @@
+package uk.nhs.ciao.docs.parser.dataformat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+
+import uk.nhs.ciao.docs.parser.Document;
+import uk.nhs.ciao.docs.parser.ParsedDocument;
+import uk.nhs.ciao.docs.parser.ReferencedDocument;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * Camel {@link DataFormat} which marshals {@link ParsedDocument} instances to a compact
+ * length-prefixed binary representation.
+ * <p>
+ * Unlike the JSON representation, the content of the original document is included as
+ * raw (un-encoded) bytes. The binary layout is:
+ * <pre>
+ * magic            - 4 bytes: 'C' 'P' 'D' 0x01
+ * name             - modified UTF-8 (DataOutput#writeUTF)
+ * mediaType        - modified UTF-8
+ * properties       - 4 byte length + JSON encoded properties
+ * contentKind      - 1 byte: 0 = inline, 1 = reference
+ * content          - 4 byte length + raw bytes (if inline)
+ * contentReference - modified UTF-8 (if reference)
+ * </pre>
+ * All lengths are big-endian.
+ */
+public class BinaryParsedDocumentDataFormat implements DataFormat {
+	/**
+	 * Leading bytes identifying the binary format (including the format version)
+	 */
+	static final byte[] MAGIC = {'C', 'P', 'D', 0x01};
+
+	private static final int INLINE_CONTENT = 0;
+	private static final int REFERENCED_CONTENT = 1;
+
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * Constructs a new data format backed by a default object mapper
+	 */
+	public BinaryParsedDocumentDataFormat() {
+		this(new ObjectMapper());
+	}
+
+	/**
+	 * Constructs a new data format backed by the specified object mapper
+	 *
+	 * @param objectMapper The mapper used to encode/decode the document properties
+	 */
+	public BinaryParsedDocumentDataFormat(final ObjectMapper objectMapper) {
+		this.objectMapper = Preconditions.checkNotNull(objectMapper);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The graph is converted to {@link ParsedDocument} using the exchange type converters (if required)
+	 */
+	@Override
+	public void marshal(final Exchange exchange, final Object graph, final OutputStream stream) throws Exception {
+		final ParsedDocument parsedDocument = graph instanceof ParsedDocument ? (ParsedDocument)graph :
+			exchange.getContext().getTypeConverter().mandatoryConvertTo(ParsedDocument.class, exchange, graph);
+
+		writeParsedDocument(parsedDocument, stream);
+	}
+
+	@Override
+	public Object unmarshal(final Exchange exchange, final InputStream stream) throws Exception {
+		return readParsedDocument(stream);
+	}
+
+	/**
+	 * Writes the binary representation of the specified document to the output stream
+	 * <p>
+	 * The stream is flushed but is not closed
+	 */
+	public void writeParsedDocument(final ParsedDocument parsedDocument, final OutputStream stream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(stream);
+		final Document document = parsedDocument.getOriginalDocument();
+
+		out.write(MAGIC);
+		out.writeUTF(document.getName());
+		out.writeUTF(document.getMediaType());
+		writeBytes(out, objectMapper.writeValueAsBytes(parsedDocument.getProperties()));
+
+		if (document instanceof ReferencedDocument) {
+			out.writeByte(REFERENCED_CONTENT);
+			out.writeUTF(((ReferencedDocument)document).getContentReference());
+		} else {
+			out.writeByte(INLINE_CONTENT);
+			writeBytes(out, document.getContent());
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Reads a parsed document from the binary representation in the input stream
+	 *
+	 * @throws IOException If the stream could not be read or is not in the expected format
+	 */
+	public ParsedDocument readParsedDocument(final InputStream stream) throws IOException {
+		final DataInputStream in = new DataInputStream(stream);
+
+		for (final byte expected: MAGIC) {
+			if (in.readByte() != expected) {
+				throw new IOException("Unsupported binary format - invalid header");
+			}
+		}
+
+		final String name = in.readUTF();
+		final String mediaType = in.readUTF();
+		final Map<String, Object> properties = objectMapper.readValue(readBytes(in),
+				new TypeReference<Map<String, Object>>() {});
+
+		final Document document;
+		final int contentKind = in.readUnsignedByte();
+		if (contentKind == INLINE_CONTENT) {
+			document = new Document(name, readBytes(in), mediaType);
+		} else if (contentKind == REFERENCED_CONTENT) {
+			document = new ReferencedDocument(name, in.readUTF(), mediaType);
+		} else {
+			throw new IOException("Unsupported binary format - unknown content kind: " + contentKind);
+		}
+
+		return new ParsedDocument(document, properties);
+	}
+
+	private void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private byte[] readBytes(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Unsupported binary format - invalid length: " + length);
+		}
+
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,98 @@
+package uk.nhs.ciao.docs.parser.dataformat;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+
+import uk.nhs.ciao.docs.parser.HeaderNames;
+import uk.nhs.ciao.docs.parser.ParsedDocument;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * Camel {@link DataFormat} which handles all supported {@link ParsedDocumentFormat}s.
+ * <p>
+ * Documents are marshalled using the configured format. When unmarshalling, the format is determined
+ * by the {@link HeaderNames#PARSED_DOCUMENT_FORMAT} header of the incoming message, falling back
+ * to detecting the format from the content if the header is missing or not recognised. Downstream
+ * consumers can use this codec to accept documents in any format.
+ */
+public class ParsedDocumentCodec implements DataFormat {
+	private final ParsedDocumentFormat format;
+	private final Map<ParsedDocumentFormat, DataFormat> dataFormats;
+
+	/**
+	 * Constructs a new codec which marshals documents to JSON
+	 */
+	public ParsedDocumentCodec() {
+		this(ParsedDocumentFormat.JSON);
+	}
+
+	/**
+	 * Constructs a new codec which marshals documents to the specified format
+	 */
+	public ParsedDocumentCodec(final ParsedDocumentFormat format) {
+		this(format, new ObjectMapper());
+	}
+
+	/**
+	 * Constructs a new codec which marshals documents to the specified format
+	 *
+	 * @param format The format to use while marshalling
+	 * @param objectMapper The mapper used by the JSON representations
+	 */
+	public ParsedDocumentCodec(final ParsedDocumentFormat format, final ObjectMapper objectMapper) {
+		this.format = Preconditions.checkNotNull(format);
+		this.dataFormats = new EnumMap<ParsedDocumentFormat, DataFormat>(ParsedDocumentFormat.class);
+		for (final ParsedDocumentFormat value: ParsedDocumentFormat.values()) {
+			dataFormats.put(value, value.createDataFormat(objectMapper));
+		}
+	}
+
+	/**
+	 * The format used while marshalling
+	 */
+	public ParsedDocumentFormat getFormat() {
+		return format;
+	}
+
+	@Override
+	public void marshal(final Exchange exchange, final Object graph, final OutputStream stream) throws Exception {
+		dataFormats.get(format).marshal(exchange, graph, stream);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The format is determined from the message header or detected from the content
+	 */
+	@Override
+	public Object unmarshal(final Exchange exchange, final InputStream stream) throws Exception {
+		ParsedDocumentFormat incomingFormat = null;
+		if (exchange != null) {
+			incomingFormat = ParsedDocumentFormat.fromHeaderValue(
+					exchange.getIn().getHeader(HeaderNames.PARSED_DOCUMENT_FORMAT, String.class));
+		}
+
+		InputStream in = stream;
+		if (incomingFormat == null) {
+			in = in.markSupported() ? in : new BufferedInputStream(in);
+			incomingFormat = ParsedDocumentFormat.detect(in);
+		}
+
+		return dataFormats.get(incomingFormat).unmarshal(exchange, in);
+	}
+
+	/**
+	 * Unmarshals a parsed document, detecting the format from the content
+	 */
+	public ParsedDocument decode(final InputStream stream) throws Exception {
+		return (ParsedDocument)unmarshal(null, stream);
+	}
+}
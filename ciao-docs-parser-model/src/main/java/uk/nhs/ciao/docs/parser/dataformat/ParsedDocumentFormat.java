@@ -0,0 +1,129 @@
+package uk.nhs.ciao.docs.parser.dataformat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+
+import uk.nhs.ciao.docs.parser.HeaderNames;
+import uk.nhs.ciao.docs.parser.ParsedDocument;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * Enumeration of supported wire formats for serialised {@link uk.nhs.ciao.docs.parser.ParsedDocument} instances.
+ * <p>
+ * The format of a message is identified by the {@link HeaderNames#PARSED_DOCUMENT_FORMAT} header. If the
+ * header is missing, the format can be detected from the leading bytes of the serialised content.
+ *
+ * @see ParsedDocumentCodec
+ */
+public enum ParsedDocumentFormat {
+	/**
+	 * JSON representation - the document content is Base64 encoded
+	 * <p>
+	 * Documents are serialised by the object mapper, i.e. as for <code>.marshal().json(JsonLibrary.Jackson)</code>,
+	 * except that the content is streamed through a Base64 encoder (see {@link StreamingContentModule})
+	 */
+	JSON("json") {
+		@Override
+		public DataFormat createDataFormat(final ObjectMapper objectMapper) {
+			return new JsonDataFormat(objectMapper);
+		}
+	},
+
+	/**
+	 * Length-prefixed binary representation - the document content is included as raw bytes
+	 *
+	 * @see BinaryParsedDocumentDataFormat
+	 */
+	BINARY("binary") {
+		@Override
+		public DataFormat createDataFormat(final ObjectMapper objectMapper) {
+			return new BinaryParsedDocumentDataFormat(objectMapper);
+		}
+	};
+
+	private final String headerValue;
+
+	private ParsedDocumentFormat(final String headerValue) {
+		this.headerValue = headerValue;
+	}
+
+	/**
+	 * The value of the {@link HeaderNames#PARSED_DOCUMENT_FORMAT} header identifying this format
+	 */
+	public String getHeaderValue() {
+		return headerValue;
+	}
+
+	/**
+	 * Creates a new data format to marshal/unmarshal documents of this format
+	 */
+	public abstract DataFormat createDataFormat(final ObjectMapper objectMapper);
+
+	/**
+	 * Returns the format associated with the specified header value (case-insensitive)
+	 *
+	 * @return The associated format, or null if the value is not recognised
+	 */
+	public static ParsedDocumentFormat fromHeaderValue(final String headerValue) {
+		for (final ParsedDocumentFormat format: values()) {
+			if (format.headerValue.equalsIgnoreCase(headerValue)) {
+				return format;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Detects the format of a serialised document from the leading bytes of the stream
+	 * <p>
+	 * The stream must support mark/reset - it is reset to the starting position before
+	 * the method returns.
+	 */
+	public static ParsedDocumentFormat detect(final InputStream in) throws IOException {
+		Preconditions.checkArgument(in.markSupported(), "InputStream must support mark/reset");
+
+		in.mark(BinaryParsedDocumentDataFormat.MAGIC.length);
+		try {
+			for (final byte expected: BinaryParsedDocumentDataFormat.MAGIC) {
+				if (in.read() != (expected & 0xff)) {
+					return JSON;
+				}
+			}
+			return BINARY;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Marshals documents using the Jackson bean serialisation of the model classes
+	 * <p>
+	 * The content stream of the document is encoded directly into the output - a copy of the
+	 * object mapper is used so that the caller's mapper is not modified
+	 */
+	private static class JsonDataFormat implements DataFormat {
+		private final ObjectMapper objectMapper;
+
+		public JsonDataFormat(final ObjectMapper objectMapper) {
+			this.objectMapper = Preconditions.checkNotNull(objectMapper).copy()
+					.registerModule(new StreamingContentModule());
+		}
+
+		@Override
+		public void marshal(final Exchange exchange, final Object graph, final OutputStream stream) throws Exception {
+			objectMapper.writeValue(stream, graph);
+		}
+
+		@Override
+		public Object unmarshal(final Exchange exchange, final InputStream stream) throws Exception {
+			return objectMapper.readValue(stream, ParsedDocument.class);
+		}
+	}
+}
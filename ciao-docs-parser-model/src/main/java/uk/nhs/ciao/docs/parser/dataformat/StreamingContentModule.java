@@ -0,0 +1,71 @@
+package uk.nhs.ciao.docs.parser.dataformat;
+
+import java.io.InputStream;
+import java.util.List;
+
+import uk.nhs.ciao.docs.parser.Document;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.google.common.io.Closeables;
+
+/**
+ * Jackson module which streams the content of {@link Document}s through a Base64 encoder.
+ * <p>
+ * The <code>content</code> property is read from {@link Document#getContentStream()} and encoded in
+ * chunks directly into the generator's output - the encoded content is never materialised as a single
+ * value in memory. All other properties are written by Jackson's bean serialisation, so the JSON is
+ * identical to the default output of the object mapper.
+ */
+class StreamingContentModule extends SimpleModule {
+	private static final long serialVersionUID = 1L;
+	private static final String CONTENT_PROPERTY = "content";
+
+	public StreamingContentModule() {
+		super("StreamingContentModule");
+
+		setSerializerModifier(new BeanSerializerModifier() {
+			@Override
+			public List<BeanPropertyWriter> changeProperties(final SerializationConfig config,
+					final BeanDescription beanDesc, final List<BeanPropertyWriter> beanProperties) {
+				if (Document.class.isAssignableFrom(beanDesc.getBeanClass())) {
+					for (int index = 0; index < beanProperties.size(); index++) {
+						if (CONTENT_PROPERTY.equals(beanProperties.get(index).getName())) {
+							beanProperties.set(index, new ContentPropertyWriter(beanProperties.get(index)));
+						}
+					}
+				}
+				return beanProperties;
+			}
+		});
+	}
+
+	/**
+	 * Writes the content of a document from its content stream
+	 */
+	private static class ContentPropertyWriter extends BeanPropertyWriter {
+		private static final long serialVersionUID = 1L;
+		private static final int UNKNOWN_LENGTH = -1;
+
+		public ContentPropertyWriter(final BeanPropertyWriter base) {
+			super(base);
+		}
+
+		@Override
+		public void serializeAsField(final Object bean, final JsonGenerator generator,
+				final SerializerProvider provider) throws Exception {
+			final InputStream content = ((Document)bean).getContentStream();
+			try {
+				generator.writeFieldName(getName());
+				generator.writeBinary(provider.getConfig().getBase64Variant(), content, UNKNOWN_LENGTH);
+			} finally {
+				Closeables.closeQuietly(content);
+			}
+		}
+	}
+}
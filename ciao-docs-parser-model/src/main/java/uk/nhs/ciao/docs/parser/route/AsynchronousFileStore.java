@@ -0,0 +1,212 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.util.AsyncProcessorHelper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Camel {@link AsyncProcessor} which stores the message body as a file beneath a root folder
+ * using an NIO {@link AsynchronousFileChannel}.
+ * <p>
+ * The file name (relative to the root folder) is taken from the {@link Exchange#FILE_NAME} header.
+ * Creating parent directories, opening the channel and writing the content all happen on the
+ * configured executor - the calling thread is never blocked on disk. The exchange is completed
+ * (via the async callback) once the file has been fully written and closed.
+ * <p>
+ * When existing files are not overwritten, an optional {@link CollisionHandler} can choose another name
+ * for a file which already exists - the {@link Exchange#FILE_NAME} header is updated with the stored name.
+ */
+public class AsynchronousFileStore implements AsyncProcessor {
+	private static final Set<OpenOption> OVERWRITE_OPTIONS = ImmutableSet.<OpenOption>of(
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	private static final Set<OpenOption> CREATE_NEW_OPTIONS = ImmutableSet.<OpenOption>of(
+			StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	private static final int MAX_COLLISION_RETRIES = 10;
+	
+	/**
+	 * Chooses a new name for a file which could not be created because it already exists
+	 */
+	public interface CollisionHandler {
+		/**
+		 * @return The new file name (relative to the root folder)
+		 */
+		String getNextFileName(Exchange exchange, String fileName) throws Exception;
+	}
+
+	private final Path rootFolder;
+	private final ExecutorService executorService;
+	private final Set<OpenOption> openOptions;
+	private volatile CollisionHandler collisionHandler;
+
+	/**
+	 * Creates a new file store
+	 *
+	 * @param rootFolder The folder that file names are resolved against
+	 * @param executorService The executor used to open and write files
+	 * @param overwrite true if existing files should be replaced, false if storing an existing file should fail
+	 */
+	public AsynchronousFileStore(final String rootFolder, final ExecutorService executorService, final boolean overwrite) {
+		this.rootFolder = Paths.get(Preconditions.checkNotNull(rootFolder));
+		this.executorService = Preconditions.checkNotNull(executorService);
+		this.openOptions = overwrite ? OVERWRITE_OPTIONS : CREATE_NEW_OPTIONS;
+	}
+
+	/**
+	 * Handler to choose a new file name when a file already exists (only used when existing files
+	 * are not overwritten) - storing fails after {@value #MAX_COLLISION_RETRIES} collisions
+	 */
+	public void setCollisionHandler(final CollisionHandler collisionHandler) {
+		this.collisionHandler = collisionHandler;
+	}
+
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		AsyncProcessorHelper.process(this, exchange);
+	}
+
+	@Override
+	public boolean process(final Exchange exchange, final AsyncCallback callback) {
+		final String fileName;
+		final ByteBuffer content;
+		try {
+			fileName = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+			if (Strings.isNullOrEmpty(fileName)) {
+				throw new IOException("Missing header " + Exchange.FILE_NAME);
+			}
+
+			content = ByteBuffer.wrap(exchange.getIn().getMandatoryBody(byte[].class));
+		} catch (Exception e) {
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+
+		try {
+			executorService.execute(new Runnable() {
+				@Override
+				public void run() {
+					openAndWrite(fileName, content, exchange, callback);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+
+		return false;
+	}
+
+	private void openAndWrite(final String fileName, final ByteBuffer content, final Exchange exchange,
+			final AsyncCallback callback) {
+		final AsynchronousFileChannel channel;
+		try {
+			channel = open(fileName, exchange);
+		} catch (Throwable e) {
+			exchange.setException(e);
+			callback.done(false);
+			return;
+		}
+
+		new WriteHandler(channel, content, exchange, callback).writeRemaining();
+	}
+
+	/**
+	 * Opens the file - choosing a new name via the collision handler if the file already exists
+	 */
+	private AsynchronousFileChannel open(final String fileName, final Exchange exchange) throws Exception {
+		String name = fileName;
+		for (int collisions = 0;; collisions++) {
+			final Path file = rootFolder.resolve(name);
+			Files.createDirectories(file.getParent());
+			try {
+				return AsynchronousFileChannel.open(file, openOptions, executorService);
+			} catch (FileAlreadyExistsException e) {
+				final CollisionHandler handler = collisionHandler;
+				if (handler == null || collisions >= MAX_COLLISION_RETRIES) {
+					throw e;
+				}
+
+				name = handler.getNextFileName(exchange, name);
+				exchange.getIn().setHeader(Exchange.FILE_NAME, name);
+			}
+		}
+	}
+
+	/**
+	 * Writes the content to the channel (possibly over multiple writes), then closes the
+	 * channel and completes the exchange
+	 */
+	private static class WriteHandler implements CompletionHandler<Integer, Void> {
+		private final AsynchronousFileChannel channel;
+		private final ByteBuffer content;
+		private final Exchange exchange;
+		private final AsyncCallback callback;
+
+		public WriteHandler(final AsynchronousFileChannel channel, final ByteBuffer content,
+				final Exchange exchange, final AsyncCallback callback) {
+			this.channel = channel;
+			this.content = content;
+			this.exchange = exchange;
+			this.callback = callback;
+		}
+
+		public void writeRemaining() {
+			if (!content.hasRemaining()) {
+				complete(null);
+				return;
+			}
+
+			try {
+				channel.write(content, content.position(), null, this);
+			} catch (Throwable e) {
+				complete(e);
+			}
+		}
+
+		@Override
+		public void completed(final Integer bytesWritten, final Void attachment) {
+			writeRemaining();
+		}
+
+		@Override
+		public void failed(final Throwable cause, final Void attachment) {
+			complete(cause);
+		}
+
+		private void complete(final Throwable cause) {
+			Throwable exception = cause;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				if (exception == null) {
+					exception = e;
+				}
+			}
+
+			if (exception != null) {
+				exchange.setException(exception);
+			}
+			callback.done(false);
+		}
+	}
+}
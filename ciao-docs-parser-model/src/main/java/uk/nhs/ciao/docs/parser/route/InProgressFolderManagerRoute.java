@@ -4,6 +4,11 @@ import static org.apache.camel.builder.ExpressionBuilder.append;
 import static org.apache.camel.builder.PredicateBuilder.*;
 import static uk.nhs.ciao.logging.CiaoCamelLogMessage.camelLogMsg;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.AsyncProcessor;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.joda.time.format.DateTimeFormat;
@@ -16,6 +21,9 @@ import uk.nhs.ciao.util.SystemClock;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 /**
  * Provides methods to manage the in-progress folders associated with a document upload.
@@ -52,11 +60,29 @@ import com.google.common.base.Strings;
  * </ul>
  * <p>
  * The timestamp format is <code>yyyyMMdd-HHmmssSSS</code> (in UTC)
+ * <p>
+ * Files are stored using one of the following {@link StoreMode}s:
+ * <ul>
+ * <li><code>SYNC</code> - (the default) files are stored via the <code>inProgressFolderRootUri</code> endpoint on the
+ * calling thread. Event files which collide with an existing file (same timestamp) are retried.
+ * <li><code>ASYNC</code> - files are stored beneath <code>inProgressFolderRoot</code> by an {@link AsynchronousFileStore}.
+ * A monotonic per-correlation sequence number is appended to the timestamp of event files, i.e.
+ * <code>${timestamp}-${sequence}-${messageType}-${eventType}</code>, so event file names do not collide. Sequence
+ * numbers are not persisted - if an event file already exists (e.g. after a restart) the next sequence number is used.
+ * <li><code>JOURNAL</code> - files are appended to an {@link InProgressJournal} (using group commit) instead of
+ * being written as individual files. Event names are sequenced as in <code>ASYNC</code> mode. The folder layout
+ * can be materialised on demand using {@link InProgressJournalExporter}.
+ * </ul>
  */
 public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 	private static final CiaoCamelLogger LOGGER = CiaoCamelLogger.getLogger(InProgressFolderManagerRoute.class);
 	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormat.forPattern("yyyyMMdd-HHmmssSSS").withZoneUTC();
 	
+	/**
+	 * Width of the (zero-padded) event sequence number used in ASYNC and JOURNAL modes
+	 */
+	private static final int EVENT_SEQUENCE_WIDTH = 6;
+	
 	/**
 	 * Enumeration of header names supported by the manager
 	 */
@@ -135,10 +161,48 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 		}
 	}
 	
+	/**
+	 * Determines how in-progress files are written to disk
+	 */
+	public enum StoreMode {
+		/**
+		 * Files are stored via the in-progress folder root endpoint on the calling thread
+		 */
+		SYNC,
+		
+		/**
+		 * Files are stored via an {@link AsynchronousFileStore} - the calling thread is not blocked
+		 */
+		ASYNC,
+		
+		/**
+		 * Files are appended to an {@link InProgressJournal}
+		 */
+		JOURNAL;
+	}
+	
 	private String inProgressFolderManagerUri;
 	private String inProgressFolderRootUri;
+	private String inProgressFolderRoot;
+	private StoreMode storeMode = StoreMode.SYNC;
+	private InProgressJournal journal;
 	private Clock clock = SystemClock.getInstance();
 	
+	/**
+	 * Event sequence numbers by correlation ID (used in ASYNC and JOURNAL modes)
+	 * <p>
+	 * Entries expire once a document has been idle for an hour - any subsequent events
+	 * will have a later timestamp, so file names remain unique and ordered.
+	 */
+	private final LoadingCache<String, AtomicLong> eventSequences = CacheBuilder.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build(new CacheLoader<String, AtomicLong>() {
+				@Override
+				public AtomicLong load(final String correlationId) {
+					return new AtomicLong();
+				}
+			});
+	
 	public void setInProgressFolderManagerUri(final String inProgressFolderManagerUri) {
 		this.inProgressFolderManagerUri = inProgressFolderManagerUri;
 	}
@@ -147,6 +211,26 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 		this.inProgressFolderRootUri = inProgressFolderRootUri;
 	}
 	
+	/**
+	 * The file path of the in-progress root folder - required in {@link StoreMode#ASYNC} mode
+	 */
+	public void setInProgressFolderRoot(final String inProgressFolderRoot) {
+		this.inProgressFolderRoot = inProgressFolderRoot;
+	}
+	
+	public void setStoreMode(final StoreMode storeMode) {
+		this.storeMode = Preconditions.checkNotNull(storeMode);
+	}
+	
+	/**
+	 * The journal to store files in - required in {@link StoreMode#JOURNAL} mode
+	 * <p>
+	 * The journal is started and stopped with the camel context
+	 */
+	public void setJournal(final InProgressJournal journal) {
+		this.journal = journal;
+	}
+	
 	public void setClock(final Clock clock) {
 		this.clock = Preconditions.checkNotNull(clock);
 	}
@@ -166,9 +250,38 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 	@Override
 	public void configure() throws Exception {
 		configureRouter();
-		configureStoreControlFileRoute();
-		configureStoreEventFileRoute();
-		configureStoreEventFileHandlerRoute();
+		
+		if (storeMode == StoreMode.ASYNC) {
+			Preconditions.checkState(!Strings.isNullOrEmpty(inProgressFolderRoot),
+					"inProgressFolderRoot is required in ASYNC store mode");
+			
+			final ExecutorService executorService = getContext().getExecutorServiceManager()
+					.newDefaultThreadPool(this, "in-progress-folder-store");
+			final EventFileNameCalculator eventFileNameCalculator = new EventFileNameCalculator();
+			final AsynchronousFileStore eventFileStore = new AsynchronousFileStore(inProgressFolderRoot, executorService, false);
+			eventFileStore.setCollisionHandler(new AsynchronousFileStore.CollisionHandler() {
+				@Override
+				public String getNextFileName(final Exchange exchange, final String fileName) throws Exception {
+					return eventFileNameCalculator.getEventFileName(exchange.getIn());
+				}
+			});
+			
+			configureStoreControlFileRoute(new AsynchronousFileStore(inProgressFolderRoot, executorService, true));
+			configureAsyncStoreEventFileRoute(eventFileNameCalculator, eventFileStore);
+		} else if (storeMode == StoreMode.JOURNAL) {
+			Preconditions.checkState(journal != null, "journal is required in JOURNAL store mode");
+			getContext().addService(journal);
+			
+			final ExecutorService executorService = getContext().getExecutorServiceManager()
+					.newDefaultThreadPool(this, "in-progress-journal-store");
+			final InProgressJournalStore journalStore = new InProgressJournalStore(journal, executorService);
+			configureStoreControlFileRoute(journalStore);
+			configureAsyncStoreEventFileRoute(new EventFileNameCalculator(), journalStore);
+		} else {
+			configureStoreControlFileRoute();
+			configureStoreEventFileRoute();
+			configureStoreEventFileHandlerRoute();
+		}
 	}
 	
 	private void configureRouter() throws Exception {
@@ -203,6 +316,32 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 		.end();
 	}
 	
+	private void configureStoreControlFileRoute(final AsyncProcessor fileStore) throws Exception {
+		from(getStoreControlFileUri())
+				
+			.bean(new ControlFileNameCalculator())
+			.process(fileStore)
+
+			.process(LOGGER.info(camelLogMsg("Stored control file in in-progress folder")
+					.documentId(header(Exchange.CORRELATION_ID))
+					.fileName(header(Exchange.FILE_NAME))))
+		.end();
+	}
+	
+	private void configureAsyncStoreEventFileRoute(final EventFileNameCalculator eventFileNameCalculator,
+			final AsyncProcessor fileStore) throws Exception {
+		// Event file names are sequenced - collisions are handled by the store (rather than by redelivery)
+		from(getStoreEventFileUri())
+			.bean(eventFileNameCalculator)
+			.process(fileStore)
+			
+			.process(LOGGER.info(camelLogMsg("Stored event file in in-progress folder")
+					.documentId(header(Exchange.CORRELATION_ID))
+					.eventName(append(append(header(Header.MESSAGE_TYPE), constant("-")), header(Header.EVENT_TYPE)))
+					.fileName(header(Exchange.FILE_NAME))))
+		.end();
+	}
+	
 	private void configureStoreEventFileRoute() throws Exception {
 		from(getStoreEventFileUri())
 			.errorHandler(defaultErrorHandler()
@@ -247,7 +386,17 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 		public void calculateFileName(final Message message) throws Exception {
 			final String messageType = Strings.nullToEmpty(message.getHeader(Exchange.FILE_NAME, String.class));
 			message.setHeader(Header.MESSAGE_TYPE, messageType);
-			
+			message.setHeader(Exchange.FILE_NAME, getEventFileName(message));
+		}
+		
+		/**
+		 * Calculates the event file name from the message headers - in ASYNC and JOURNAL modes each
+		 * call takes the next sequence number
+		 * <p>
+		 * Not public - so it is not considered by camel bean binding
+		 */
+		private String getEventFileName(final Message message) throws Exception {
+			final String messageType = Strings.nullToEmpty(message.getHeader(Header.MESSAGE_TYPE, String.class));
 			final String id = message.getHeader(Exchange.CORRELATION_ID, String.class);
 			if (Strings.isNullOrEmpty(id)) {
 				throw new Exception("Missing header " + Exchange.CORRELATION_ID);
@@ -258,9 +407,13 @@ public class InProgressFolderManagerRoute extends BaseRouteBuilder {
 				throw new Exception("Missing header " + Header.EVENT_TYPE);
 			}
 			
-			final String timestamp = TIMESTAMP_FORMAT.print(clock.getMillis());
-			final String fileName = id + "/events/" + timestamp + "-" + messageType + "-" + eventType;
-			message.setHeader(Exchange.FILE_NAME, fileName);
+			String timestamp = TIMESTAMP_FORMAT.print(clock.getMillis());
+			if (storeMode != StoreMode.SYNC) {
+				final long sequence = eventSequences.getUnchecked(id).incrementAndGet();
+				timestamp += "-" + Strings.padStart(Long.toString(sequence), EVENT_SEQUENCE_WIDTH, '0');
+			}
+			
+			return id + "/events/" + timestamp + "-" + messageType + "-" + eventType;
 		}
 	}
 }
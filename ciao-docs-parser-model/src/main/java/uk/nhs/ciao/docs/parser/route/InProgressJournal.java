@@ -0,0 +1,970 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.camel.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Append-only journal of in-progress folder entries (control and event files).
+ * <p>
+ * Rather than creating a small file per entry, entries are appended to a (per-node) journal. Appends are
+ * queued and written by a single writer thread using group commit: all entries queued while the previous
+ * batch was being written are written (and optionally synced) together. The future returned by
+ * {@link #append(String, String, byte[])} completes once the batch containing the entry has been written.
+ * <p>
+ * The <code>syncInterval</code> determines when the journal is synced to disk:
+ * <ul>
+ * <li><code>0</code> - after every batch (default) - entries are durable once the future completes
+ * <li><code>&gt; 0</code> - at most once per interval (in milliseconds)
+ * <li><code>&lt; 0</code> - never - left to the operating system
+ * </ul>
+ * The journal is stored in a directory as a sequence of segment files (<code>00000001.journal</code>,
+ * <code>00000002.journal</code>, ...). Entries are appended to the last (active) segment until it reaches
+ * <code>maxSegmentSize</code>, when it is sealed and a new segment is started:
+ * <ul>
+ * <li>Sealing a segment writes an index of its records by correlation ID - the entries of a single document
+ * can be replayed without reading the other records of the segment (see {@link #replay(File, String, EntryHandler)})
+ * <li>Once <code>compactionThreshold</code> segments have been sealed they are compacted (in the background) into a
+ * single segment, keeping only the latest entry for each path - i.e. superseded versions of control files are
+ * discarded. The entries of documents marked as finished (see {@link #finish(String)}) before the end of the
+ * sealed segments are discarded entirely, so the compacted segment only holds the documents which are still in
+ * progress. The compacted segment replaces the newest of the sealed segments, so the journal order is retained
+ * at every step of the compaction
+ * <li>Only the active segment is read when the journal is started
+ * </ul>
+ * Each record has the layout: <code>length (int), crc32 (int), correlationId (UTF), path (UTF), content</code>.
+ * A torn or corrupt record at the end of a segment (e.g. after a crash) is ignored when replaying, and is
+ * truncated when the journal is next started. If a batch cannot be written, the segment is truncated back to
+ * the end of the previous batch before any further entries are appended.
+ *
+ * @see InProgressJournalExporter
+ */
+public class InProgressJournal implements Service {
+	private static final Logger LOGGER = LoggerFactory.getLogger(InProgressJournal.class);
+	private static final int DEFAULT_MAX_BATCH_SIZE = 512;
+	private static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+	private static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+	private static final int MAX_RECORD_LENGTH = 256 * 1024 * 1024;
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String INDEX_SUFFIX = ".index";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile("(\\d+)\\" + SEGMENT_SUFFIX);
+
+	/**
+	 * Path of the record marking a document as finished - entry paths are never empty
+	 */
+	private static final String FINISHED_PATH = "";
+
+	/**
+	 * Single entry stored in the journal
+	 */
+	public static class Entry {
+		private final String correlationId;
+		private final String path;
+		private final byte[] content;
+
+		public Entry(final String correlationId, final String path, final byte[] content) {
+			this.correlationId = Preconditions.checkNotNull(correlationId);
+			this.path = Preconditions.checkNotNull(path);
+			this.content = Preconditions.checkNotNull(content);
+		}
+
+		public String getCorrelationId() {
+			return correlationId;
+		}
+
+		/**
+		 * The path of the entry (relative to the in-progress root folder)
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+	}
+
+	/**
+	 * Callback interface for entries replayed from a journal
+	 */
+	public interface EntryHandler {
+		void handle(Entry entry) throws IOException;
+	}
+
+	private final File directory;
+	private final long syncInterval;
+	private final int maxBatchSize;
+	private final BlockingQueue<PendingEntry> queue;
+	private final ReadWriteLock stateLock;
+	private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+	private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	private boolean running;
+	private Thread writerThread;
+	private volatile Thread compactionThread;
+
+	// Only accessed by the writer thread while running
+	private FileChannel channel;
+	private long segment;
+	private long segmentLength;
+	private ListMultimap<String, Long> segmentIndex;
+	private long lastSync;
+
+	/**
+	 * Creates a new journal which syncs after every batch
+	 */
+	public InProgressJournal(final File directory) {
+		this(directory, 0, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a new journal
+	 *
+	 * @param directory The journal directory - entries are appended to any existing segments
+	 * @param syncInterval Minimum interval between syncs in milliseconds (0 = every batch, negative = never)
+	 * @param maxBatchSize Maximum number of entries written per batch
+	 */
+	public InProgressJournal(final File directory, final long syncInterval, final int maxBatchSize) {
+		Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+
+		this.directory = Preconditions.checkNotNull(directory);
+		this.syncInterval = syncInterval;
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new LinkedBlockingQueue<PendingEntry>();
+		this.stateLock = new ReentrantReadWriteLock();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * The size in bytes at which the active segment is sealed and a new segment is started (default 64MB)
+	 */
+	public void setMaxSegmentSize(final long maxSegmentSize) {
+		Preconditions.checkArgument(maxSegmentSize > 0, "maxSegmentSize must be positive");
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * The number of sealed segments which triggers a compaction (default 4) - 0 disables compaction
+	 */
+	public void setCompactionThreshold(final int compactionThreshold) {
+		Preconditions.checkArgument(compactionThreshold >= 0, "compactionThreshold must not be negative");
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	@Override
+	public synchronized void start() throws Exception {
+		if (writerThread != null) {
+			return;
+		}
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create journal directory: " + directory);
+		}
+		deleteTemporaryFiles();
+
+		// Sealed segments are complete - only the active segment needs to be checked
+		final List<Long> segments = listSegments(directory);
+		segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+		segmentIndex = ArrayListMultimap.create();
+		final long validLength = replaySegment(segmentFile(directory, segment), new RecordHandler() {
+			@Override
+			public void handle(final Entry entry, final long offset) {
+				segmentIndex.put(entry.getCorrelationId(), offset);
+			}
+		});
+
+		channel = FileChannel.open(segmentFile(directory, segment).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		if (channel.size() > validLength) {
+			// Discard any torn record left by a crash - otherwise later entries could not be replayed
+			LOGGER.warn("Truncating incomplete journal record at offset {}: {}", validLength, segmentFile(directory, segment));
+			channel.truncate(validLength);
+		}
+		channel.position(validLength);
+		segmentLength = validLength;
+
+		stateLock.writeLock().lock();
+		try {
+			running = true;
+		} finally {
+			stateLock.writeLock().unlock();
+		}
+
+		writerThread = new Thread(new Writer(), "in-progress-journal-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		startCompaction();
+	}
+
+	/**
+	 * Stops the journal - entries appended before the journal is stopped are written before it is closed,
+	 * later appends fail
+	 */
+	@Override
+	public synchronized void stop() throws Exception {
+		final Thread thread = writerThread;
+		if (thread == null) {
+			return;
+		}
+
+		// No entries can be queued after the stop marker
+		stateLock.writeLock().lock();
+		try {
+			running = false;
+			queue.add(PendingEntry.STOP);
+		} finally {
+			stateLock.writeLock().unlock();
+		}
+
+		writerThread = null;
+		thread.join();
+
+		if (channel != null) {
+			channel.force(true);
+			channel.close();
+			channel = null;
+		}
+
+		final Thread compaction = compactionThread;
+		if (compaction != null) {
+			compaction.join();
+			compactionThread = null;
+		}
+	}
+
+	/**
+	 * Appends an entry to the journal
+	 *
+	 * @return A future which completes once the entry has been written (and synced if configured)
+	 */
+	public ListenableFuture<Void> append(final String correlationId, final String path, final byte[] content) {
+		Preconditions.checkArgument(!FINISHED_PATH.equals(path), "path must not be empty");
+		return enqueue(new Entry(correlationId, path, content));
+	}
+
+	/**
+	 * Marks a document as finished (e.g. completed or failed) - the entries of the document appended
+	 * before it was finished are discarded when the segments containing them are next compacted
+	 *
+	 * @return A future which completes once the marker has been written (and synced if configured)
+	 */
+	public ListenableFuture<Void> finish(final String correlationId) {
+		return enqueue(new Entry(correlationId, FINISHED_PATH, new byte[0]));
+	}
+
+	private ListenableFuture<Void> enqueue(final Entry entry) {
+		final PendingEntry pending = new PendingEntry(entry);
+
+		stateLock.readLock().lock();
+		try {
+			if (running) {
+				queue.add(pending);
+			} else {
+				pending.future.setException(new IllegalStateException("Journal is not started: " + directory));
+			}
+		} finally {
+			stateLock.readLock().unlock();
+		}
+
+		return pending.future;
+	}
+
+	/**
+	 * Replays all complete entries in the journal directory (in the order they were written)
+	 *
+	 * @param handler The handler to receive entries
+	 */
+	public static void replay(final File directory, final EntryHandler handler) throws IOException {
+		Preconditions.checkNotNull(handler);
+
+		for (final long segment: listSegments(directory)) {
+			replaySegment(segmentFile(directory, segment), new RecordHandler() {
+				@Override
+				public void handle(final Entry entry, final long offset) throws IOException {
+					if (!isFinishedMarker(entry)) {
+						handler.handle(entry);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Replays the complete entries of a single correlation ID (in the order they were written)
+	 * <p>
+	 * Sealed segments are read via their index - only the records of the correlation ID are read
+	 *
+	 * @param handler The handler to receive entries
+	 */
+	public static void replay(final File directory, final String correlationId, final EntryHandler handler) throws IOException {
+		Preconditions.checkNotNull(correlationId);
+		Preconditions.checkNotNull(handler);
+
+		final RecordHandler filter = new RecordHandler() {
+			@Override
+			public void handle(final Entry entry, final long offset) throws IOException {
+				if (correlationId.equals(entry.getCorrelationId()) && !isFinishedMarker(entry)) {
+					handler.handle(entry);
+				}
+			}
+		};
+
+		for (final long segment: listSegments(directory)) {
+			final File file = segmentFile(directory, segment);
+			final List<Entry> entries = readIndexedEntries(directory, segment, correlationId);
+			if (entries == null) {
+				// Active segment (or an index which is missing/out of date)
+				replaySegment(file, filter);
+			} else {
+				for (final Entry entry: entries) {
+					if (!isFinishedMarker(entry)) {
+						handler.handle(entry);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isFinishedMarker(final Entry entry) {
+		return FINISHED_PATH.equals(entry.getPath());
+	}
+
+	/**
+	 * The file of the specified segment
+	 */
+	static File segmentFile(final File directory, final long segment) {
+		return new File(directory, String.format("%08d%s", segment, SEGMENT_SUFFIX));
+	}
+
+	private static File indexFile(final File directory, final long segment) {
+		return new File(directory, String.format("%08d%s", segment, INDEX_SUFFIX));
+	}
+
+	private static File temporaryFile(final File file) {
+		return new File(file.getParentFile(), file.getName() + TEMPORARY_SUFFIX);
+	}
+
+	/**
+	 * Lists the segments in the directory in ascending order
+	 */
+	private static List<Long> listSegments(final File directory) {
+		final List<Long> segments = new ArrayList<Long>();
+		final String[] names = directory.list();
+		if (names != null) {
+			for (final String name: names) {
+				final Matcher matcher = SEGMENT_PATTERN.matcher(name);
+				if (matcher.matches()) {
+					segments.add(Long.valueOf(matcher.group(1)));
+				}
+			}
+		}
+
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private void deleteTemporaryFiles() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file: files) {
+				if (file.getName().endsWith(TEMPORARY_SUFFIX) && !file.delete()) {
+					LOGGER.warn("Unable to delete temporary journal file: {}", file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replays all complete records in the segment file - a segment removed by a concurrent compaction is
+	 * treated as empty (its entries are contained in the compacted segment)
+	 *
+	 * @return The length of the segment up to the end of the last complete record
+	 */
+	private static long replaySegment(final File file, final RecordHandler handler) throws IOException {
+		final InputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			return 0;
+		}
+
+		long length = 0;
+		try {
+			final DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+			final long[] recordLength = new long[1];
+			Entry entry;
+			while ((entry = readEntry(dataIn, recordLength)) != null) {
+				handler.handle(entry, length);
+				length += recordLength[0];
+			}
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+
+		return length;
+	}
+
+	/**
+	 * Reads the entries of the correlation ID from a sealed segment via its index
+	 *
+	 * @return The entries, or null if the segment has no (valid) index
+	 */
+	private static List<Entry> readIndexedEntries(final File directory, final long segment, final String correlationId)
+			throws IOException {
+		final ListMultimap<String, Long> index = readIndex(indexFile(directory, segment));
+		if (index == null) {
+			return null;
+		}
+
+		final List<Long> offsets = index.get(correlationId);
+		final List<Entry> entries = new ArrayList<Entry>(offsets.size());
+		if (offsets.isEmpty()) {
+			return entries;
+		}
+
+		final FileChannel segmentChannel;
+		try {
+			segmentChannel = FileChannel.open(segmentFile(directory, segment).toPath(), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			// Removed by compaction - the entries are contained in the compacted segment
+			return entries;
+		}
+
+		try {
+			for (final long offset: offsets) {
+				final Entry entry = readEntry(segmentChannel, offset);
+				if (entry == null || !correlationId.equals(entry.getCorrelationId())) {
+					LOGGER.warn("Journal index does not match segment - replaying segment: {}", segmentFile(directory, segment));
+					return null;
+				}
+				entries.add(entry);
+			}
+		} finally {
+			Closeables.close(segmentChannel, true);
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Writes the index of a segment - via a temporary file so that an index is only visible once complete
+	 */
+	private static void writeIndex(final File file, final ListMultimap<String, Long> index) throws IOException {
+		final File temporaryFile = temporaryFile(file);
+		final FileOutputStream out = new FileOutputStream(temporaryFile);
+		try {
+			final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+			dataOut.writeInt(index.keySet().size());
+			for (final String correlationId: index.keySet()) {
+				final List<Long> offsets = index.get(correlationId);
+				dataOut.writeUTF(correlationId);
+				dataOut.writeInt(offsets.size());
+				for (final long offset: offsets) {
+					dataOut.writeLong(offset);
+				}
+			}
+			dataOut.flush();
+			out.getFD().sync();
+		} finally {
+			Closeables.close(out, true);
+		}
+
+		move(temporaryFile, file);
+	}
+
+	/**
+	 * Reads the index of a segment
+	 *
+	 * @return The index, or null if the index does not exist or cannot be read
+	 */
+	private static ListMultimap<String, Long> readIndex(final File file) {
+		final InputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try {
+			final DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+			final ListMultimap<String, Long> index = ArrayListMultimap.create();
+			final int correlationIds = dataIn.readInt();
+			for (int count = 0; count < correlationIds; count++) {
+				final String correlationId = dataIn.readUTF();
+				final int offsets = dataIn.readInt();
+				for (int offset = 0; offset < offsets; offset++) {
+					index.put(correlationId, dataIn.readLong());
+				}
+			}
+			return index;
+		} catch (IOException e) {
+			LOGGER.warn("Unable to read journal index: " + file, e);
+			return null;
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	private static void move(final File source, final File target) throws IOException {
+		try {
+			java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static byte[] encode(final Entry entry) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.content.length + 64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0); // length placeholder
+		out.writeInt(0); // crc placeholder
+		out.writeUTF(entry.correlationId);
+		out.writeUTF(entry.path);
+		out.write(entry.content);
+		out.flush();
+
+		final byte[] record = bytes.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(record, 8, record.length - 8);
+
+		final ByteBuffer header = ByteBuffer.wrap(record, 0, 8);
+		header.putInt(record.length - 8);
+		header.putInt((int)crc.getValue());
+		return record;
+	}
+
+	/**
+	 * Reads the next entry - returns null if the end of the segment or an incomplete/corrupt record is reached
+	 */
+	private static Entry readEntry(final DataInputStream in, final long[] recordLength) throws IOException {
+		final byte[] body;
+		final int checksum;
+		try {
+			final int length = in.readInt();
+			checksum = in.readInt();
+			if (length < 4 || length > MAX_RECORD_LENGTH) {
+				LOGGER.warn("Ignoring corrupt journal record - invalid length: {}", length);
+				return null;
+			}
+
+			body = new byte[length];
+			in.readFully(body);
+		} catch (EOFException e) {
+			return null;
+		}
+
+		recordLength[0] = 8L + body.length;
+		return decode(body, checksum);
+	}
+
+	/**
+	 * Reads the entry at the specified offset - returns null if the record is incomplete or corrupt
+	 */
+	private static Entry readEntry(final FileChannel channel, final long offset) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(8);
+		if (!readFully(channel, header, offset)) {
+			return null;
+		}
+
+		final int length = header.getInt(0);
+		if (length < 4 || length > MAX_RECORD_LENGTH) {
+			return null;
+		}
+
+		final ByteBuffer body = ByteBuffer.allocate(length);
+		if (!readFully(channel, body, offset + 8)) {
+			return null;
+		}
+		return decode(body.array(), header.getInt(4));
+	}
+
+	private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Entry decode(final byte[] body, final int checksum) throws IOException {
+		final CRC32 crc = new CRC32();
+		crc.update(body);
+		if ((int)crc.getValue() != checksum) {
+			LOGGER.warn("Ignoring corrupt journal record - checksum mismatch");
+			return null;
+		}
+
+		final DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+		final String correlationId = bodyIn.readUTF();
+		final String path = bodyIn.readUTF();
+		final byte[] content = new byte[bodyIn.available()];
+		bodyIn.readFully(content);
+		return new Entry(correlationId, path, content);
+	}
+
+	/**
+	 * Starts compacting the sealed segments if the threshold has been reached (and a compaction is
+	 * not already running)
+	 */
+	private void startCompaction() {
+		final Thread current = compactionThread;
+		if (compactionThreshold == 0 || (current != null && current.isAlive())) {
+			return;
+		}
+
+		final List<Long> sealed = new ArrayList<Long>();
+		for (final long candidate: listSegments(directory)) {
+			if (candidate < segment) {
+				sealed.add(candidate);
+			}
+		}
+
+		if (sealed.size() >= compactionThreshold) {
+			final Thread thread = new Thread(new Compaction(sealed), "in-progress-journal-compactor");
+			thread.setDaemon(true);
+			compactionThread = thread;
+			thread.start();
+		}
+	}
+
+	/**
+	 * Handler for records replayed from a segment
+	 */
+	private interface RecordHandler {
+		void handle(Entry entry, long offset) throws IOException;
+	}
+
+	/**
+	 * Entry waiting to be written by the writer thread
+	 */
+	private static class PendingEntry {
+		private static final PendingEntry STOP = new PendingEntry(null);
+
+		private final Entry entry;
+		private final SettableFuture<Void> future;
+
+		public PendingEntry(final Entry entry) {
+			this.entry = entry;
+			this.future = SettableFuture.create();
+		}
+	}
+
+	/**
+	 * Writes queued entries to the journal in batches (group commit)
+	 */
+	private class Writer implements Runnable {
+		private final List<PendingEntry> batch = new ArrayList<PendingEntry>();
+
+		@Override
+		public void run() {
+			boolean running = true;
+			while (running) {
+				try {
+					batch.add(queue.take());
+					queue.drainTo(batch, maxBatchSize - 1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					running = false;
+				}
+
+				running = writeBatch() && running;
+				batch.clear();
+			}
+
+			// Fail any entries which were not written (only possible if the writer was interrupted)
+			final List<PendingEntry> remaining = new ArrayList<PendingEntry>();
+			queue.drainTo(remaining);
+			for (final PendingEntry pending: remaining) {
+				if (pending != PendingEntry.STOP) {
+					pending.future.setException(new IllegalStateException("Journal is stopped: " + directory));
+				}
+			}
+		}
+
+		/**
+		 * Writes the current batch
+		 *
+		 * @return false if the stop marker was found in the batch
+		 */
+		private boolean writeBatch() {
+			boolean running = true;
+			final List<ByteBuffer> records = new ArrayList<ByteBuffer>(batch.size());
+			final List<PendingEntry> written = new ArrayList<PendingEntry>(batch.size());
+			for (final PendingEntry pending: batch) {
+				if (pending == PendingEntry.STOP) {
+					running = false;
+					continue;
+				}
+
+				try {
+					records.add(ByteBuffer.wrap(encode(pending.entry)));
+					written.add(pending);
+				} catch (IOException e) {
+					pending.future.setException(e);
+				}
+			}
+
+			if (written.isEmpty()) {
+				return running;
+			}
+
+			try {
+				if (channel == null) {
+					// A previous rotation failed
+					openSegment(segment + 1);
+				}
+
+				final ByteBuffer[] buffers = records.toArray(new ByteBuffer[records.size()]);
+				while (buffers[buffers.length - 1].hasRemaining()) {
+					channel.write(buffers);
+				}
+				sync();
+			} catch (Exception e) {
+				LOGGER.warn("Unable to write batch to journal: " + directory, e);
+				for (final PendingEntry pending: written) {
+					pending.future.setException(e);
+				}
+				discardFailedBatch();
+				return running;
+			}
+
+			long offset = segmentLength;
+			for (int index = 0; index < written.size(); index++) {
+				segmentIndex.put(written.get(index).entry.getCorrelationId(), offset);
+				offset += records.get(index).limit();
+			}
+			segmentLength = offset;
+
+			for (final PendingEntry pending: written) {
+				pending.future.set(null);
+			}
+
+			if (segmentLength >= maxSegmentSize) {
+				try {
+					sealSegment();
+					openSegment(segment + 1);
+					startCompaction();
+				} catch (Exception e) {
+					LOGGER.warn("Unable to start new journal segment: " + directory, e);
+				}
+			}
+
+			return running;
+		}
+
+		/**
+		 * Truncates the active segment back to the end of the last complete batch - the failed entries may have
+		 * been partially (or completely) written. If the segment cannot be truncated it is sealed, and any later
+		 * entries are written to a new segment
+		 */
+		private void discardFailedBatch() {
+			if (channel == null) {
+				return;
+			}
+
+			try {
+				channel.truncate(segmentLength);
+				channel.position(segmentLength);
+			} catch (IOException e) {
+				LOGGER.warn("Unable to truncate failed batch - sealing journal segment: " + segmentFile(directory, segment), e);
+				try {
+					sealSegment();
+				} catch (IOException sealException) {
+					LOGGER.warn("Unable to seal journal segment: " + segmentFile(directory, segment), sealException);
+				}
+			}
+		}
+
+		private void sealSegment() throws IOException {
+			final FileChannel sealed = channel;
+			channel = null;
+			try {
+				sealed.force(true);
+			} finally {
+				Closeables.close(sealed, true);
+			}
+
+			try {
+				writeIndex(indexFile(directory, segment), segmentIndex);
+			} catch (IOException e) {
+				// The segment is replayed in full instead
+				LOGGER.warn("Unable to write journal index: " + indexFile(directory, segment), e);
+			}
+		}
+
+		private void openSegment(final long next) throws IOException {
+			channel = FileChannel.open(segmentFile(directory, next).toPath(), StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE);
+			segment = next;
+			segmentLength = 0;
+			segmentIndex = ArrayListMultimap.create();
+		}
+
+		private void sync() throws IOException {
+			if (syncInterval < 0) {
+				return;
+			}
+
+			final long now = System.currentTimeMillis();
+			if (syncInterval == 0 || now - lastSync >= syncInterval) {
+				channel.force(false);
+				lastSync = now;
+			}
+		}
+	}
+
+	/**
+	 * Compacts sealed segments into a single segment containing the latest entry for each path
+	 * <p>
+	 * Entries of a document which precede the latest finished marker of the document are discarded along
+	 * with the marker - any entries appended after the document was finished are retained.
+	 * <p>
+	 * The compacted segment (and its index) are written to temporary files which then replace the newest of
+	 * the sealed segments. The older segments are then deleted. If the process stops part way the older
+	 * segments are still replayed before the compacted segment, so the latest entries still win.
+	 */
+	private class Compaction implements Runnable {
+		private final List<Long> segments;
+		private final Map<String, Long> latest;
+		private final Map<String, Long> finished;
+
+		public Compaction(final List<Long> segments) {
+			this.segments = segments;
+			this.latest = Maps.newHashMap();
+			this.finished = Maps.newHashMap();
+		}
+
+		@Override
+		public void run() {
+			try {
+				compact();
+			} catch (Exception e) {
+				LOGGER.warn("Unable to compact journal: " + directory, e);
+			}
+		}
+
+		private void compact() throws IOException {
+			// Find the position of the latest record of each path (and of each finished document)
+			final long[] position = {0};
+			for (final long segment: segments) {
+				replaySegment(segmentFile(directory, segment), new RecordHandler() {
+					@Override
+					public void handle(final Entry entry, final long offset) {
+						if (isFinishedMarker(entry)) {
+							finished.put(entry.getCorrelationId(), position[0]++);
+						} else {
+							latest.put(entry.getPath(), position[0]++);
+						}
+					}
+				});
+			}
+
+			final long target = segments.get(segments.size() - 1);
+			final File compactedFile = temporaryFile(segmentFile(directory, target));
+			final ListMultimap<String, Long> index = ArrayListMultimap.create();
+			final FileOutputStream out = new FileOutputStream(compactedFile);
+			try {
+				final BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
+				final long[] length = {0};
+				position[0] = 0;
+				for (final long segment: segments) {
+					replaySegment(segmentFile(directory, segment), new RecordHandler() {
+						@Override
+						public void handle(final Entry entry, final long offset) throws IOException {
+							final long current = position[0]++;
+							if (isRetained(entry, current)) {
+								final byte[] record = encode(entry);
+								bufferedOut.write(record);
+								index.put(entry.getCorrelationId(), length[0]);
+								length[0] += record.length;
+							}
+						}
+					});
+				}
+				bufferedOut.flush();
+				out.getFD().sync();
+			} finally {
+				Closeables.close(out, true);
+			}
+
+			// The old index of the target would not match the compacted segment
+			final File targetIndex = indexFile(directory, target);
+			if (targetIndex.exists() && !targetIndex.delete()) {
+				throw new IOException("Unable to delete journal index: " + targetIndex);
+			}
+			move(compactedFile, segmentFile(directory, target));
+			writeIndex(targetIndex, index);
+
+			for (final long segment: segments) {
+				if (segment != target) {
+					delete(segmentFile(directory, segment));
+					delete(indexFile(directory, segment));
+				}
+			}
+
+			LOGGER.info("Compacted {} journal segments into {}", segments.size(), segmentFile(directory, target));
+		}
+
+		/**
+		 * Tests if the record at the specified position is kept in the compacted segment
+		 */
+		private boolean isRetained(final Entry entry, final long current) {
+			if (isFinishedMarker(entry)) {
+				return false;
+			}
+
+			final Long finishedAt = finished.get(entry.getCorrelationId());
+			return latest.get(entry.getPath()) == current && (finishedAt == null || current > finishedAt);
+		}
+
+		private void delete(final File file) {
+			if (file.exists() && !file.delete()) {
+				LOGGER.warn("Unable to delete compacted journal file: {}", file);
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import java.io.File;
+import java.io.IOException;
+
+import uk.nhs.ciao.docs.parser.route.InProgressJournal.Entry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+
+/**
+ * Materialises the entries of an {@link InProgressJournal} as the standard in-progress folder layout
+ * (<code>${correlationId}/control/...</code> and <code>${correlationId}/events/...</code>).
+ * <p>
+ * Entries are written in journal order, so the latest version of a control file wins. Exporting is
+ * idempotent - the exporter can be run repeatedly (e.g. on demand before reading the state of a document).
+ * Exporting a single correlation ID only reads the records of that ID from sealed journal segments.
+ */
+public class InProgressJournalExporter {
+	private final File journalDirectory;
+	private final File rootFolder;
+
+	/**
+	 * Creates a new exporter
+	 *
+	 * @param journalDirectory The journal directory to export
+	 * @param rootFolder The in-progress root folder to export entries into
+	 */
+	public InProgressJournalExporter(final File journalDirectory, final File rootFolder) {
+		this.journalDirectory = Preconditions.checkNotNull(journalDirectory);
+		this.rootFolder = Preconditions.checkNotNull(rootFolder);
+	}
+
+	/**
+	 * Exports all entries in the journal
+	 *
+	 * @return The number of exported entries
+	 */
+	public int export() throws IOException {
+		return export(null);
+	}
+
+	/**
+	 * Exports the entries associated with the specified correlation ID
+	 *
+	 * @param correlationId The correlation ID to export, or null to export all entries
+	 * @return The number of exported entries
+	 */
+	public int export(final String correlationId) throws IOException {
+		final int[] exported = {0};
+		final InProgressJournal.EntryHandler handler = new InProgressJournal.EntryHandler() {
+			@Override
+			public void handle(final Entry entry) throws IOException {
+				write(entry);
+				exported[0]++;
+			}
+		};
+
+		if (correlationId == null) {
+			InProgressJournal.replay(journalDirectory, handler);
+		} else {
+			InProgressJournal.replay(journalDirectory, correlationId, handler);
+		}
+
+		return exported[0];
+	}
+
+	private void write(final Entry entry) throws IOException {
+		final File file = new File(rootFolder, entry.getPath());
+		Files.createParentDirs(file);
+		Files.write(entry.getContent(), file);
+	}
+}
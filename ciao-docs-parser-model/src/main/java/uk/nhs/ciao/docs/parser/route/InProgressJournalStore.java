@@ -0,0 +1,82 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.util.AsyncProcessorHelper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Camel {@link AsyncProcessor} which appends the message body to an {@link InProgressJournal}.
+ * <p>
+ * The entry path is taken from the {@link Exchange#FILE_NAME} header and the exchange is completed
+ * (via the async callback) once the journal has committed the entry.
+ */
+public class InProgressJournalStore implements AsyncProcessor {
+	private final InProgressJournal journal;
+	private final Executor executor;
+
+	/**
+	 * Creates a new journal store
+	 *
+	 * @param journal The journal to append entries to
+	 * @param executor The executor used to continue routing exchanges once entries have been committed
+	 * 		(keeping the journal writer thread free for the next batch)
+	 */
+	public InProgressJournalStore(final InProgressJournal journal, final Executor executor) {
+		this.journal = Preconditions.checkNotNull(journal);
+		this.executor = Preconditions.checkNotNull(executor);
+	}
+
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		AsyncProcessorHelper.process(this, exchange);
+	}
+
+	@Override
+	public boolean process(final Exchange exchange, final AsyncCallback callback) {
+		final ListenableFuture<Void> future;
+		try {
+			final String path = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+			if (Strings.isNullOrEmpty(path)) {
+				throw new IOException("Missing header " + Exchange.FILE_NAME);
+			}
+
+			final String correlationId = Strings.nullToEmpty(exchange.getIn().getHeader(Exchange.CORRELATION_ID, String.class));
+			future = journal.append(correlationId, path, exchange.getIn().getMandatoryBody(byte[].class));
+		} catch (Exception e) {
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+
+		if (future.isDone()) {
+			completeExchange(future, exchange);
+			callback.done(true);
+			return true;
+		}
+
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				completeExchange(future, exchange);
+				callback.done(false);
+			}
+		}, executor);
+		return false;
+	}
+
+	private void completeExchange(final ListenableFuture<Void> future, final Exchange exchange) {
+		try {
+			future.get();
+		} catch (Exception e) {
+			exchange.setException(e.getCause() == null ? e : e.getCause());
+		}
+	}
+}
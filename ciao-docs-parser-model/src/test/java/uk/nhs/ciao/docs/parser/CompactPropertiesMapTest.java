@@ -0,0 +1,202 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Unit tests for {@link CompactPropertiesMap}
+ */
+public class CompactPropertiesMapTest {
+	@Test
+	public void testInsertionOrderIsMaintained() {
+		final Map<String, Object> expected = Maps.newLinkedHashMap();
+		final Map<String, Object> actual = new CompactPropertiesMap();
+		
+		putAll(expected, actual, 50);
+		
+		Assert.assertEquals(Lists.newArrayList(expected.keySet()), Lists.newArrayList(actual.keySet()));
+		Assert.assertEquals(Lists.newArrayList(expected.values()), Lists.newArrayList(actual.values()));
+		Assert.assertEquals(expected, actual);
+		Assert.assertEquals(actual, expected);
+		Assert.assertEquals(expected.hashCode(), actual.hashCode());
+		Assert.assertEquals(expected.toString(), actual.toString());
+	}
+	
+	@Test
+	public void testReplacingValueKeepsPosition() {
+		final Map<String, Object> map = new CompactPropertiesMap();
+		map.put("first", 1);
+		map.put("second", 2);
+		
+		Assert.assertEquals(1, map.put("first", "one"));
+		Assert.assertEquals(Lists.newArrayList("first", "second"), Lists.newArrayList(map.keySet()));
+		Assert.assertEquals("one", map.get("first"));
+		Assert.assertEquals(2, map.size());
+	}
+	
+	@Test
+	public void testRemove() {
+		final Map<String, Object> expected = Maps.newLinkedHashMap();
+		final Map<String, Object> actual = new CompactPropertiesMap();
+		putAll(expected, actual, 20);
+		
+		// Removals either side of the linear scan threshold
+		for (int index = 0; index < 20; index += 3) {
+			Assert.assertEquals(expected.remove("key" + index), actual.remove("key" + index));
+			Assert.assertEquals(expected, actual);
+		}
+		
+		Assert.assertNull(actual.remove("missing"));
+		for (final String key: expected.keySet()) {
+			Assert.assertEquals(expected.get(key), actual.get(key));
+		}
+		Assert.assertFalse(actual.containsKey("key0"));
+	}
+	
+	@Test
+	public void testIteratorRemoveAndSetValue() {
+		final Map<String, Object> map = new CompactPropertiesMap();
+		final Map<String, Object> expected = Maps.newLinkedHashMap();
+		putAll(expected, map, 12);
+		
+		final Iterator<Entry<String, Object>> iterator = map.entrySet().iterator();
+		int index = 0;
+		while (iterator.hasNext()) {
+			final Entry<String, Object> entry = iterator.next();
+			if (index % 2 == 0) {
+				iterator.remove();
+				expected.remove(entry.getKey());
+			} else {
+				entry.setValue("updated");
+				expected.put(entry.getKey(), "updated");
+			}
+			index++;
+		}
+		
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(6, map.size());
+	}
+	
+	@Test
+	public void testEntriesRemainValidAfterStructuralChanges() {
+		final Map<String, Object> expected = Maps.newLinkedHashMap();
+		final Map<String, Object> actual = new CompactPropertiesMap();
+		putAll(expected, actual, 12);
+		
+		final Entry<String, Object> expectedEntry = getEntry(expected, "key5");
+		final Entry<String, Object> actualEntry = getEntry(actual, "key5");
+		
+		// Entry numbers shift when earlier entries are removed
+		expected.remove("key0");
+		actual.remove("key0");
+		expected.put("key12", 12);
+		actual.put("key12", 12);
+		Assert.assertEquals(expectedEntry, actualEntry);
+		Assert.assertEquals(expectedEntry.setValue("updated"), actualEntry.setValue("updated"));
+		Assert.assertEquals(expected, actual);
+		
+		// Removed entries retain their last value and are no longer written through
+		expected.remove("key5");
+		actual.remove("key5");
+		Assert.assertEquals("key5", actualEntry.getKey());
+		Assert.assertEquals(expectedEntry.getValue(), actualEntry.getValue());
+		Assert.assertEquals(expectedEntry.setValue("detached"), actualEntry.setValue("detached"));
+		Assert.assertEquals("detached", actualEntry.getValue());
+		Assert.assertEquals(expected, actual);
+	}
+	
+	@Test
+	public void testNullKeysAndValues() {
+		final Map<String, Object> map = new CompactPropertiesMap();
+		map.put(null, "null key");
+		map.put("null value", null);
+		
+		Assert.assertEquals("null key", map.get(null));
+		Assert.assertTrue(map.containsKey("null value"));
+		Assert.assertNull(map.get("null value"));
+		Assert.assertFalse(map.containsKey("missing"));
+	}
+	
+	@Test
+	public void testClear() {
+		final Map<String, Object> map = new CompactPropertiesMap();
+		putAll(Maps.<String, Object>newLinkedHashMap(), map, 20);
+		map.clear();
+		
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertNull(map.get("key1"));
+		
+		map.put("key1", "value");
+		Assert.assertEquals("value", map.get("key1"));
+	}
+	
+	@Test
+	public void testJsonSerialisationMatchesLinkedHashMap() throws Exception {
+		final Map<String, Object> expected = Maps.newLinkedHashMap();
+		final Map<String, Object> actual = new CompactPropertiesMap();
+		putAll(expected, actual, 10);
+		
+		final Map<String, Object> nested = new CompactPropertiesMap();
+		nested.put("list", Lists.newArrayList("a", "b"));
+		expected.put("nested", nested);
+		actual.put("nested", nested);
+		
+		final ObjectMapper objectMapper = new ObjectMapper();
+		Assert.assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(actual));
+	}
+	
+	@Test
+	public void testJavaSerialisation() throws Exception {
+		final Map<String, Object> map = new CompactPropertiesMap();
+		putAll(Maps.<String, Object>newLinkedHashMap(), map, 20);
+		
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(map);
+		out.close();
+		
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final Object copy = in.readObject();
+		Assert.assertEquals(map, copy);
+		Assert.assertEquals(Lists.newArrayList(map.keySet()), Lists.newArrayList(((Map<?, ?>)copy).keySet()));
+		
+		// The (transient) index is rebuilt
+		@SuppressWarnings("unchecked")
+		final Map<String, Object> copyMap = (Map<String, Object>)copy;
+		Assert.assertEquals(15, copyMap.get("key15"));
+		Assert.assertNull(copyMap.get("missing"));
+		copyMap.put("key20", 20);
+		copyMap.remove("key3");
+		Assert.assertEquals(20, copyMap.get("key20"));
+		Assert.assertEquals(19, copyMap.get("key19"));
+		Assert.assertEquals(20, copyMap.size());
+	}
+	
+	private Entry<String, Object> getEntry(final Map<String, Object> map, final String key) {
+		for (final Entry<String, Object> entry: map.entrySet()) {
+			if (entry.getKey().equals(key)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+	
+	private void putAll(final Map<String, Object> expected, final Map<String, Object> actual, final int count) {
+		for (int index = 0; index < count; index++) {
+			expected.put("key" + index, index);
+			actual.put("key" + index, index);
+		}
+	}
+}
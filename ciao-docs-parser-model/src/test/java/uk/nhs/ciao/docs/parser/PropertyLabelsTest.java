@@ -0,0 +1,32 @@
+package uk.nhs.ciao.docs.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PropertyLabels}
+ */
+public class PropertyLabelsTest {
+	@Test
+	public void testEqualLabelsAreInternedToTheSameInstance() {
+		final String first = PropertyLabels.intern(new String("NHS Number"));
+		final String second = PropertyLabels.intern(new String("NHS Number"));
+		
+		Assert.assertEquals("NHS Number", first);
+		Assert.assertSame(first, second);
+		Assert.assertNotSame(first, PropertyLabels.intern(new String("Ward")));
+	}
+	
+	@Test
+	public void testNullIsNotInterned() {
+		Assert.assertNull(PropertyLabels.intern(null));
+	}
+	
+	@Test
+	public void testParsedSegmentsShareInternedLabels() {
+		final String label = PropertyLabels.intern(new String("D.O.B"));
+		final PropertyName name = PropertyName.valueOf("patient.D\\.O\\.B");
+		
+		Assert.assertSame(label, name.getName());
+	}
+}
@@ -173,4 +173,98 @@ public class PropertyNameTest {
 		Assert.assertEquals(expected, actual);
 		Assert.assertEquals(name, actual.toPropertyName());
 	}
+	
+	@Test
+	public void testFindAll() {
+		final Map<String, Object> map = createNestedProperties();
+		
+		Assert.assertEquals(names("", "name", "addresses", "addresses[0]", "addresses[0].city", "addresses[1]",
+				"addresses[1].city", "addresses[1].lines", "addresses[1].lines[0]"),
+				Lists.newArrayList(PropertyName.findAll(map, true)));
+		Assert.assertEquals(names("name", "addresses[0].city", "addresses[1].city", "addresses[1].lines[0]"),
+				Lists.newArrayList(PropertyName.findAll(map, false)));
+	}
+	
+	@Test
+	public void testIterateAllMatchesFindAll() {
+		final Map<String, Object> map = createNestedProperties();
+		
+		Assert.assertEquals(Lists.newArrayList(PropertyName.findAll(map, true)),
+				Lists.newArrayList(PropertyName.iterateAll(map, true)));
+		Assert.assertEquals(Lists.newArrayList(PropertyName.findAll(map, false)),
+				Lists.newArrayList(PropertyName.iterateAll(map, false)));
+		
+		Assert.assertEquals(names(""), Lists.newArrayList(PropertyName.iterateAll("leaf", false)));
+		Assert.assertEquals(names(), Lists.newArrayList(PropertyName.iterateAll(Maps.newHashMap(), false)));
+	}
+	
+	@Test
+	public void testAcceptCursorVisitor() {
+		final Map<String, Object> map = createNestedProperties();
+		final List<String> paths = Lists.newArrayList();
+		final List<Object> lastSegments = Lists.newArrayList();
+		
+		PropertyName.valueOf("addresses").accept(map.get("addresses"), new PropertyCursorVisitor() {
+			@Override
+			public void onProperty(final PropertyCursor cursor, final Object value) {
+				paths.add(cursor.toString());
+				lastSegments.add(cursor.isIndexed() ? cursor.getIndex() : cursor.getName());
+			}
+		});
+		
+		Assert.assertEquals(Arrays.asList("addresses", "addresses[0]", "addresses[0].city", "addresses[1]",
+				"addresses[1].city", "addresses[1].lines", "addresses[1].lines[0]"), paths);
+		Assert.assertEquals(Arrays.<Object>asList("addresses", 0, "city", 1, "city", "lines", 0), lastSegments);
+	}
+	
+	@Test
+	public void testEqualityIsSegmentBased() {
+		final PropertyName expected = PropertyName.valueOf("names[2].special\\.key");
+		final PropertyName actual = PropertyName.getRoot().getChild("names").getChild(2).getChild("special.key");
+		Assert.assertNotSame(expected, actual);
+		Assert.assertEquals(expected, actual);
+		Assert.assertEquals(expected.hashCode(), actual.hashCode());
+		Assert.assertEquals("names[2].special\\.key", actual.getPath());
+		
+		Assert.assertFalse(PropertyName.valueOf("names[2]").equals(PropertyName.valueOf("names.2")));
+	}
+	
+	@Test
+	public void testValueOfIsInterned() {
+		final PropertyName name = PropertyName.valueOf("names[2].extended.title");
+		Assert.assertSame(name, PropertyName.valueOf("names[2].extended.title"));
+		Assert.assertSame(PropertyName.getRoot(), PropertyName.valueOf(""));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPathIsNotInterned() {
+		try {
+			PropertyName.valueOf("names[*]");
+		} catch (IllegalArgumentException e) {
+			// expected - a repeated lookup must fail again
+		}
+		PropertyName.valueOf("names[*]");
+	}
+	
+	private Map<String, Object> createNestedProperties() {
+		final Map<String, Object> first = Maps.newLinkedHashMap();
+		first.put("city", "London");
+		
+		final Map<String, Object> second = Maps.newLinkedHashMap();
+		second.put("city", "Oxford");
+		second.put("lines", Lists.newArrayList("27 Somewhere Else"));
+		
+		final Map<String, Object> map = Maps.newLinkedHashMap();
+		map.put("name", "Mr Example");
+		map.put("addresses", Lists.newArrayList(first, second));
+		return map;
+	}
+	
+	private List<PropertyName> names(final String... paths) {
+		final List<PropertyName> names = Lists.newArrayList();
+		for (final String path: paths) {
+			names.add(PropertyName.valueOf(path));
+		}
+		return names;
+	}
 }
@@ -0,0 +1,93 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+
+/**
+ * Unit tests for {@link PropertySelectorSet}
+ */
+public class PropertySelectorSetTest {
+	private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String,Object>>() {};
+	private Map<String, Object> properties;
+	private List<PropertySelector> selectors;
+	
+	@Before
+	public void setup() throws Exception {
+		final ObjectMapper objectMapper = new ObjectMapper();
+		final InputStream inputStream = getClass().getResourceAsStream("property-selector-fixture.json");
+		try {
+			properties = objectMapper.readValue(inputStream, MAP_TYPE);
+		} finally {
+			Closeables.closeQuietly(inputStream);
+		}
+		
+		selectors = Lists.newArrayList();
+		for (final String path: Arrays.asList("", "name", "age", "addresses", "addresses[0]", "addresses[*].city",
+				"addresses[0].*", "addresses[1].city", "addresses[2].*", "addresses[1].unmapped", "*",
+				"key\\.with\\[\\]\\.special\\.chars")) {
+			selectors.add(PropertySelector.valueOf(path));
+		}
+	}
+	
+	@Test
+	public void testSelectAllMatchesIndividualSelectors() {
+		final PropertySelectorSet selectorSet = PropertySelectorSet.of(selectors);
+		final Map<PropertySelector, Map<String, Object>> results = selectorSet.selectAll(properties);
+		
+		Assert.assertEquals(selectors, Lists.newArrayList(results.keySet()));
+		for (final PropertySelector selector: selectors) {
+			Assert.assertEquals(selector.getPath(), Lists.newArrayList(selector.selectAll(properties).entrySet()),
+					Lists.newArrayList(results.get(selector).entrySet()));
+		}
+	}
+	
+	@Test
+	public void testSelectAllWithType() {
+		final PropertySelectorSet selectorSet = PropertySelectorSet.of(selectors);
+		final Map<PropertySelector, Map<String, String>> results = selectorSet.selectAll(String.class, properties);
+		
+		for (final PropertySelector selector: selectors) {
+			Assert.assertEquals(selector.getPath(), selector.selectAll(String.class, properties), results.get(selector));
+		}
+	}
+	
+	@Test
+	public void testSelectValuesMatchesIndividualSelectors() {
+		final PropertySelectorSet selectorSet = PropertySelectorSet.of(selectors);
+		final Map<PropertySelector, Object> values = selectorSet.selectValues(properties);
+		
+		for (final PropertySelector selector: selectors) {
+			Assert.assertEquals(selector.getPath(), selector.selectValue(properties), values.get(selector));
+		}
+		Assert.assertFalse(values.containsKey(PropertySelector.valueOf("addresses[1].unmapped")));
+	}
+	
+	@Test
+	public void testDuplicateSelectors() {
+		final PropertySelector selector = PropertySelector.valueOf("addresses[*].city");
+		final PropertySelectorSet selectorSet = PropertySelectorSet.of(selector, selector);
+		
+		Assert.assertEquals(selector.selectAll(properties), selectorSet.selectAll(properties).get(selector));
+	}
+	
+	@Test
+	public void testForNames() {
+		final PropertySelectorSet selectorSet = PropertySelectorSet.forNames(Arrays.asList(
+				PropertyName.valueOf("name"), PropertyName.valueOf("addresses[1].postcode")));
+		final Map<PropertySelector, Object> values = selectorSet.selectValues(properties);
+		
+		Assert.assertEquals("Mr Example", values.get(PropertySelector.valueOf("name")));
+		Assert.assertEquals("CD34 5EF", values.get(PropertySelector.valueOf("addresses[1].postcode")));
+	}
+}
@@ -3,6 +3,7 @@ package uk.nhs.ciao.docs.parser;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -140,6 +141,19 @@ public class PropertySelectorTest {
 		Assert.assertFalse(selector.isRoot());
 	}
 	
+	@Test
+	public void testWildcardIndexSelectsMatchedPath() {
+		final Map<String, Object> second = Maps.newLinkedHashMap();
+		second.put("dose", "10mg");
+		
+		final Map<String, Object> medications = Maps.newLinkedHashMap();
+		medications.put("medications", Lists.newArrayList(Maps.newLinkedHashMap(), null, second));
+		
+		final PropertySelector selector = PropertySelector.valueOf("medications[*].dose");
+		Assert.assertEquals(SimpleEntry.valueOf("medications[2].dose", "10mg"), selector.select(medications));
+		Assert.assertEquals(Collections.singletonMap("medications[2].dose", "10mg"), selector.selectAll(medications));
+	}
+	
 	@Test
 	public void testOutOfBoundsIndex() {
 		final PropertySelector selector = PropertySelector.valueOf("addresses[2].*");
@@ -175,6 +189,13 @@ public class PropertySelectorTest {
 		Assert.assertEquals(PropertySelector.valueOf("names"), selector.getParent());
 	}
 	
+	@Test
+	public void testValueOfIsInterned() {
+		final PropertySelector selector = PropertySelector.valueOf("addresses[*].city");
+		Assert.assertSame(selector, PropertySelector.valueOf("addresses[*].city"));
+		Assert.assertNotSame(selector, PropertySelector.valueOf("addresses[*].postcode"));
+	}
+	
 	@Test(expected=IllegalArgumentException.class)
 	public void testInvalidChildCreation() {
 		final PropertySelector selector = PropertySelector.valueOf("names[0]");
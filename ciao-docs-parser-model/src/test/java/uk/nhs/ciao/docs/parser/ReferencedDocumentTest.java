@@ -0,0 +1,80 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link ReferencedDocument}
+ */
+public class ReferencedDocumentTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ObjectMapper objectMapper;
+	private File contentFile;
+
+	@Before
+	public void setup() throws Exception {
+		objectMapper = new ObjectMapper();
+		contentFile = folder.newFile("somedoc.pdf");
+		Files.write(new byte[]{1, 2, 3, 4}, contentFile);
+	}
+
+	@Test
+	public void testContentIsLoadedFromReference() throws Exception {
+		final Document document = new ReferencedDocument("somedoc.pdf", contentFile.getAbsolutePath(), "application/pdf");
+
+		assertFalse(document.isEmpty());
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, document.getContent());
+		assertEquals("AQIDBA==", document.getBase64Content());
+	}
+
+	@Test
+	public void testContentStreamReadsFromReference() throws Exception {
+		final Document document = new ReferencedDocument("somedoc.pdf", contentFile.getAbsolutePath(), "application/pdf");
+
+		final InputStream in = document.getContentStream();
+		try {
+			assertArrayEquals(new byte[]{1, 2, 3, 4}, ByteStreams.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testMissingReferenceFailsOnAccess() {
+		final Document document = new ReferencedDocument("missing.pdf", new File(folder.getRoot(), "missing.pdf").getAbsolutePath(), null);
+		document.getContent();
+	}
+
+	@Test
+	public void testRoundtrip() throws Exception {
+		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		properties.put("prop1", "value1");
+
+		final ParsedDocument expected = new ParsedDocument(new ReferencedDocument("somedoc.pdf",
+				contentFile.getAbsolutePath(), "application/pdf"), properties);
+		final String json = objectMapper.writeValueAsString(expected);
+
+		assertFalse("content should not be serialised", json.contains("\"content\""));
+
+		final ParsedDocument actual = objectMapper.readValue(json, ParsedDocument.class);
+		assertTrue(actual.getOriginalDocument() instanceof ReferencedDocument);
+		assertEquals(contentFile.getAbsolutePath(), ((ReferencedDocument)actual.getOriginalDocument()).getContentReference());
+		assertEquals("application/pdf", actual.getOriginalDocument().getMediaType());
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, actual.getOriginalDocument().getContent());
+	}
+}
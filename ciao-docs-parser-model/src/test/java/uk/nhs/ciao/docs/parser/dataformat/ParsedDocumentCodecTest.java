@@ -0,0 +1,193 @@
+package uk.nhs.ciao.docs.parser.dataformat;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+import org.unitils.reflectionassert.ReflectionComparatorMode;
+
+import uk.nhs.ciao.docs.parser.Document;
+import uk.nhs.ciao.docs.parser.ParsedDocument;
+import uk.nhs.ciao.docs.parser.ReferencedDocument;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Unit tests for {@link ParsedDocumentCodec} and {@link BinaryParsedDocumentDataFormat}
+ */
+public class ParsedDocumentCodecTest {
+	private ParsedDocument parsedDocument;
+
+	@Before
+	public void setup() {
+		final Map<String, Object> properties = Maps.newLinkedHashMap();
+		properties.put("prop1", "value1");
+		properties.put("prop2", Lists.newArrayList("a", "b"));
+
+		final Document originalDocument = new Document("somedoc.pdf", new byte[]{1, 2, 3, 4, (byte)0xff});
+		originalDocument.setMediaType("application/pdf");
+
+		parsedDocument = new ParsedDocument(originalDocument, properties);
+	}
+
+	@Test
+	public void testJsonMatchesJacksonBeanSerialisation() throws Exception {
+		final ObjectMapper objectMapper = new ObjectMapper();
+		final JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsBytes(parsedDocument));
+		final JsonNode actual = objectMapper.readTree(encode(ParsedDocumentFormat.JSON, parsedDocument));
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testJsonContentIsStreamed() throws Exception {
+		final int contentLength = 3 * 1024 * 1024;
+		final byte[] content = new byte[contentLength];
+		Arrays.fill(content, (byte)'a');
+
+		final ObjectMapper objectMapper = new ObjectMapper();
+		final byte[] expected = objectMapper.writeValueAsBytes(new ParsedDocument(
+				new Document("large.pdf", content), parsedDocument.getProperties()));
+
+		// The content is only available as a stream - the encoded content is written in small chunks
+		final RecordingOutputStream out = new RecordingOutputStream();
+		new ParsedDocumentCodec(ParsedDocumentFormat.JSON).marshal(null, new ParsedDocument(
+				new StreamedDocument("large.pdf", contentLength), parsedDocument.getProperties()), out);
+
+		assertEquals(expected.length, out.length);
+		assertEquals(Arrays.hashCode(expected), out.hashCode);
+		assertTrue("largest write: " + out.largestWrite, out.largestWrite < 64 * 1024);
+	}
+
+	@Test
+	public void testBinaryRoundtrip() throws Exception {
+		final byte[] encoded = encode(ParsedDocumentFormat.BINARY, parsedDocument);
+		final ParsedDocument actual = new ParsedDocumentCodec(ParsedDocumentFormat.BINARY).decode(new ByteArrayInputStream(encoded));
+
+		ReflectionAssert.assertReflectionEquals(parsedDocument, actual, ReflectionComparatorMode.LENIENT_ORDER);
+	}
+
+	@Test
+	public void testBinaryIsSmallerThanJson() throws Exception {
+		final byte[] content = new byte[30000];
+		final ParsedDocument largeDocument = new ParsedDocument(new Document("large.pdf", content),
+				parsedDocument.getProperties());
+
+		final int jsonSize = encode(ParsedDocumentFormat.JSON, largeDocument).length;
+		final int binarySize = encode(ParsedDocumentFormat.BINARY, largeDocument).length;
+		assertTrue("binary: " + binarySize + ", json: " + jsonSize, binarySize < jsonSize);
+	}
+
+	@Test
+	public void testBinaryRoundtripWithReferencedContent() throws Exception {
+		final ParsedDocument expected = new ParsedDocument(new ReferencedDocument("somedoc.pdf",
+				"/tmp/in-progress/123/source/somedoc.pdf", "application/pdf"), parsedDocument.getProperties());
+
+		final byte[] encoded = encode(ParsedDocumentFormat.BINARY, expected);
+		final ParsedDocument actual = new ParsedDocumentCodec().decode(new ByteArrayInputStream(encoded));
+
+		assertTrue(actual.getOriginalDocument() instanceof ReferencedDocument);
+		assertEquals("/tmp/in-progress/123/source/somedoc.pdf",
+				((ReferencedDocument)actual.getOriginalDocument()).getContentReference());
+		assertEquals(expected.getProperties(), actual.getProperties());
+	}
+
+	@Test
+	public void testFormatIsDetectedFromContent() throws Exception {
+		final ParsedDocumentCodec codec = new ParsedDocumentCodec();
+
+		for (final ParsedDocumentFormat format: ParsedDocumentFormat.values()) {
+			final byte[] encoded = encode(format, parsedDocument);
+			final ParsedDocument actual = codec.decode(new ByteArrayInputStream(encoded));
+
+			ReflectionAssert.assertReflectionEquals(format.name(), parsedDocument, actual, ReflectionComparatorMode.LENIENT_ORDER);
+		}
+	}
+
+	@Test
+	public void testFormatFromHeaderValue() {
+		assertEquals(ParsedDocumentFormat.JSON, ParsedDocumentFormat.fromHeaderValue("json"));
+		assertEquals(ParsedDocumentFormat.BINARY, ParsedDocumentFormat.fromHeaderValue("BINARY"));
+		assertNull(ParsedDocumentFormat.fromHeaderValue("xml"));
+		assertNull(ParsedDocumentFormat.fromHeaderValue(null));
+	}
+
+	@Test(expected=IOException.class)
+	public void testInvalidBinaryContentIsRejected() throws Exception {
+		new BinaryParsedDocumentDataFormat().readParsedDocument(new ByteArrayInputStream(new byte[]{'{', '}'}));
+	}
+
+	private byte[] encode(final ParsedDocumentFormat format, final ParsedDocument document) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ParsedDocumentCodec(format).marshal(null, document, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Document of repeated 'a' bytes which can only be read as a stream
+	 */
+	private static class StreamedDocument extends Document {
+		private final int contentLength;
+
+		public StreamedDocument(final String name, final int contentLength) {
+			super(name, new byte[0]);
+			this.contentLength = contentLength;
+		}
+
+		@Override
+		public byte[] getContent() {
+			throw new UnsupportedOperationException("content must be streamed");
+		}
+
+		@Override
+		public InputStream getContentStream() {
+			return new InputStream() {
+				private int remaining = contentLength;
+
+				@Override
+				public int read() {
+					if (remaining == 0) {
+						return -1;
+					}
+					remaining--;
+					return 'a';
+				}
+			};
+		}
+	}
+
+	/**
+	 * Records the length and hash code of the written bytes (without retaining them) and the largest single write
+	 */
+	private static class RecordingOutputStream extends OutputStream {
+		private int length;
+		private int hashCode = 1;
+		private int largestWrite;
+
+		@Override
+		public void write(final int value) {
+			write(new byte[] {(byte)value}, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int count) {
+			for (int index = offset; index < offset + count; index++) {
+				hashCode = 31 * hashCode + bytes[index];
+			}
+			length += count;
+			largestWrite = Math.max(largestWrite, count);
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package uk.nhs.ciao.docs.parser.route;
 
+import static org.junit.Assert.*;
+
+import java.io.File;
+
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
 import org.apache.camel.ExchangePattern;
@@ -12,7 +16,9 @@ import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.impl.DefaultProducerTemplate;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,14 +29,21 @@ import uk.nhs.ciao.docs.parser.route.InProgressFolderManagerRoute.EventType;
 import uk.nhs.ciao.docs.parser.route.InProgressFolderManagerRoute.FileType;
 import uk.nhs.ciao.docs.parser.route.InProgressFolderManagerRoute.Header;
 import uk.nhs.ciao.docs.parser.route.InProgressFolderManagerRoute.MessageType;
+import uk.nhs.ciao.docs.parser.route.InProgressFolderManagerRoute.StoreMode;
 import uk.nhs.ciao.util.Clock;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
 /**
  * Tests for {@link InProgressFolderManagerRoute}
  */
 public class InProgressFolderManagerRouteTest {
 	private static final Logger LOGGER = LoggerFactory.getLogger(InProgressFolderManagerRoute.class);
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	private CamelContext context;
 	private ProducerTemplate producerTemplate;
 	private InProgressFolderManagerRoute route;
@@ -111,6 +124,69 @@ public class InProgressFolderManagerRouteTest {
 		MockEndpoint.assertIsSatisfied(context);
 	}
 	
+	@Test
+	public void testAsyncStoreControlFile() throws Exception {
+		final File root = startAsyncStoreMode();
+		
+		storeControlFile("123", "example.txt", "text-content");
+		storeControlFile("123", "example.txt", "replaced-content");
+		
+		assertEquals("replaced-content", Files.toString(new File(root, "123/control/example.txt"), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testAsyncStoreEventFilesWithSameTimestamp() throws Exception {
+		final File root = startAsyncStoreMode();
+		
+		// The clock is fixed - sequence numbers ensure the names do not collide
+		storeEventFile("1234", MessageType.BUSINESS_ACK, EventType.MESSAGE_SENDING, "first");
+		storeEventFile("1234", MessageType.BUSINESS_ACK, EventType.MESSAGE_SENT, "second");
+		storeEventFile("5678", MessageType.DOCUMENT, EventType.MESSAGE_RECEIVED, "other");
+		
+		assertEquals("first", Files.toString(new File(root, "1234/events/" + timestamp + "-000001-bus-ack-sending"), Charsets.UTF_8));
+		assertEquals("second", Files.toString(new File(root, "1234/events/" + timestamp + "-000002-bus-ack-sent"), Charsets.UTF_8));
+		assertEquals("other", Files.toString(new File(root, "5678/events/" + timestamp + "-000001-document-received"), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testAsyncStoreEventFileTakesNextSequenceWhenFileExists() throws Exception {
+		final File root = startAsyncStoreMode();
+		
+		// Sequence numbers restart with the route - e.g. an event stored before a restart
+		final File existing = new File(root, "1234/events/" + timestamp + "-000001-bus-ack-sent");
+		Files.createParentDirs(existing);
+		Files.write("existing", existing, Charsets.UTF_8);
+		
+		storeEventFile("1234", MessageType.BUSINESS_ACK, EventType.MESSAGE_SENT, "stored");
+		
+		assertEquals("existing", Files.toString(existing, Charsets.UTF_8));
+		assertEquals("stored", Files.toString(new File(root, "1234/events/" + timestamp + "-000002-bus-ack-sent"), Charsets.UTF_8));
+	}
+	
+	/**
+	 * Restarts the context with the route configured in async store mode
+	 */
+	private File startAsyncStoreMode() throws Exception {
+		CamelUtils.stopQuietly(producerTemplate, context);
+		
+		final File root = folder.newFolder("in-progress");
+		context = new DefaultCamelContext();
+		producerTemplate = new DefaultProducerTemplate(context);
+		
+		route = new InProgressFolderManagerRoute();
+		route.setInternalRoutePrefix("manager");
+		route.setInProgressFolderManagerUri("direct:folder-manager");
+		route.setInProgressFolderRoot(root.getAbsolutePath());
+		route.setStoreMode(StoreMode.ASYNC);
+		route.setClock(clock);
+		
+		context.addRoutes(route);
+		context.start();
+		producerTemplate.start();
+		
+		return root;
+	}
+	
 	private void storeEventFile(final String correlationId, final String messageType, final String eventType,
 			final Object body) throws Exception {
 		final Exchange exchange = new DefaultExchange(context);
@@ -0,0 +1,329 @@
+package uk.nhs.ciao.docs.parser.route;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.nhs.ciao.docs.parser.route.InProgressJournal.Entry;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Unit tests for {@link InProgressJournal} and {@link InProgressJournalExporter}
+ */
+public class InProgressJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File journalDirectory;
+	private InProgressJournal journal;
+	
+	@Before
+	public void setup() throws Exception {
+		journalDirectory = new File(folder.getRoot(), "journal/node1");
+		journal = new InProgressJournal(journalDirectory);
+		journal.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		journal.stop();
+	}
+	
+	@Test
+	public void testAppendedEntriesAreReplayedInOrder() throws Exception {
+		final List<ListenableFuture<Void>> futures = Lists.newArrayList();
+		for (int index = 0; index < 100; index++) {
+			futures.add(append("123", "123/events/" + index, "content-" + index));
+		}
+		waitFor(futures);
+		
+		final List<Entry> entries = replay();
+		assertEquals(100, entries.size());
+		for (int index = 0; index < 100; index++) {
+			assertEquals("123", entries.get(index).getCorrelationId());
+			assertEquals("123/events/" + index, entries.get(index).getPath());
+			assertEquals("content-" + index, new String(entries.get(index).getContent(), Charsets.UTF_8));
+		}
+	}
+	
+	@Test
+	public void testTornRecordIsIgnored() throws Exception {
+		waitFor(Lists.newArrayList(append("123", "123/control/first", "first"), append("123", "123/control/second", "second")));
+		journal.stop();
+		
+		// Simulate a crash part way through writing the last record
+		final RandomAccessFile file = new RandomAccessFile(InProgressJournal.segmentFile(journalDirectory, 1), "rw");
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+		
+		List<Entry> entries = replay();
+		assertEquals(1, entries.size());
+		assertEquals("123/control/first", entries.get(0).getPath());
+		
+		// The torn record is discarded on restart so that new entries can be replayed
+		journal = new InProgressJournal(journalDirectory);
+		journal.start();
+		waitFor(Lists.newArrayList(append("123", "123/control/third", "third")));
+		
+		entries = replay();
+		assertEquals(2, entries.size());
+		assertEquals("123/control/third", entries.get(1).getPath());
+	}
+	
+	@Test
+	public void testEntriesAreAppendedAfterRestart() throws Exception {
+		waitFor(Lists.newArrayList(append("123", "123/control/first", "first")));
+		journal.stop();
+		
+		journal = new InProgressJournal(journalDirectory);
+		journal.start();
+		waitFor(Lists.newArrayList(append("123", "123/control/second", "second")));
+		
+		assertEquals(2, replay().size());
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testAppendFailsWhenStopped() throws Throwable {
+		journal.stop();
+		try {
+			append("123", "123/control/first", "first").get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+	
+	@Test
+	public void testAppendsRacingWithStopAreCompleted() throws Exception {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final List<ListenableFuture<Void>> futures = Collections.synchronizedList(Lists.<ListenableFuture<Void>>newArrayList());
+		final List<Thread> threads = Lists.newArrayList();
+		for (int thread = 0; thread < 4; thread++) {
+			final String correlationId = Integer.toString(thread);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+						for (int index = 0; index < 1000; index++) {
+							futures.add(append(correlationId, correlationId + "/events/" + index, "event"));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}));
+		}
+		
+		for (final Thread thread: threads) {
+			thread.start();
+		}
+		startLatch.countDown();
+		journal.stop();
+		for (final Thread thread: threads) {
+			thread.join();
+		}
+		
+		// Every append is either written or rejected - none are left waiting
+		int written = 0;
+		for (final ListenableFuture<Void> future: futures) {
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				written++;
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+		assertEquals(written, replay().size());
+	}
+	
+	@Test
+	public void testSegmentsAreRotated() throws Exception {
+		restartJournal(512, 0);
+		
+		final List<ListenableFuture<Void>> futures = Lists.newArrayList();
+		for (int index = 0; index < 100; index++) {
+			futures.add(append("123", "123/events/" + index, "content-" + index));
+		}
+		waitFor(futures);
+		
+		final List<Entry> entries = replay();
+		assertEquals(100, entries.size());
+		for (int index = 0; index < 100; index++) {
+			assertEquals("123/events/" + index, entries.get(index).getPath());
+		}
+		
+		// Only the active segment is checked on restart
+		restartJournal(512, 0);
+		assertTrue(InProgressJournal.segmentFile(journalDirectory, 2).isFile());
+		waitFor(Lists.newArrayList(append("123", "123/events/100", "content-100")));
+		assertEquals(101, replay().size());
+	}
+	
+	@Test
+	public void testSealedSegmentsAreCompacted() throws Exception {
+		restartJournal(256, 3);
+		
+		final List<ListenableFuture<Void>> futures = Lists.newArrayList();
+		for (int index = 0; index < 50; index++) {
+			futures.add(append("123", "123/control/completed-folder", "/folder-" + index));
+			futures.add(append("123", "123/events/" + index, "event"));
+		}
+		waitFor(futures);
+		
+		// Compact any segments sealed while the last compaction was running
+		restartJournal(256, 1);
+		journal.stop();
+		assertTrue("Expected sealed segments to be compacted", countSegments() <= 2);
+		
+		// Superseded control files are discarded (except in the active segment) - events are retained
+		final List<Entry> entries = replay();
+		assertTrue(entries.size() < 100);
+		final Map<String, String> latest = Maps.newHashMap();
+		for (final Entry entry: entries) {
+			latest.put(entry.getPath(), new String(entry.getContent(), Charsets.UTF_8));
+		}
+		assertEquals(51, latest.size());
+		assertEquals("/folder-49", latest.get("123/control/completed-folder"));
+	}
+	
+	@Test
+	public void testFinishedDocumentsAreDiscardedByCompaction() throws Exception {
+		restartJournal(256, 1);
+		waitFor(Lists.newArrayList(append("active", "active/control/completed-folder", "/folder")));
+		
+		for (int index = 0; index < 200; index++) {
+			final String id = "doc-" + index;
+			waitFor(Lists.newArrayList(append(id, id + "/control/completed-folder", "/folder-" + index)));
+			waitFor(Lists.newArrayList(append(id, id + "/events/document-parsed", "event")));
+			waitFor(Lists.newArrayList(journal.finish(id)));
+		}
+		
+		// Compact any segments sealed while the last compaction was running
+		restartJournal(256, 1);
+		journal.stop();
+		assertTrue("Expected sealed segments to be compacted", countSegments() <= 2);
+		
+		// Only the entries of the unfinished document (and documents finished in the active segment) remain
+		long size = 0;
+		for (final File file: journalDirectory.listFiles()) {
+			size += file.length();
+		}
+		assertTrue("Expected journal to be bounded: " + size, size < 1024);
+		
+		final Map<String, String> latest = Maps.newHashMap();
+		for (final Entry entry: replay()) {
+			latest.put(entry.getPath(), new String(entry.getContent(), Charsets.UTF_8));
+		}
+		assertEquals("/folder", latest.get("active/control/completed-folder"));
+		assertTrue(latest.size() < 20);
+		assertFalse(latest.containsKey("doc-0/control/completed-folder"));
+	}
+	
+	@Test
+	public void testExporterUsesSegmentIndex() throws Exception {
+		restartJournal(256, 0);
+		
+		final List<ListenableFuture<Void>> futures = Lists.newArrayList();
+		for (int index = 0; index < 20; index++) {
+			futures.add(append("123", "123/control/completed-folder", "/folder-" + index));
+			futures.add(append("456", "456/events/" + index, "event"));
+		}
+		waitFor(futures);
+		
+		final File root = folder.newFolder("in-progress");
+		final InProgressJournalExporter exporter = new InProgressJournalExporter(journalDirectory, root);
+		assertEquals(20, exporter.export("123"));
+		assertEquals("/folder-19", Files.toString(new File(root, "123/control/completed-folder"), Charsets.UTF_8));
+		assertFalse(new File(root, "456").exists());
+		
+		// Segments without an index are replayed in full
+		for (final File file: journalDirectory.listFiles()) {
+			if (file.getName().endsWith(".index")) {
+				assertTrue(file.delete());
+			}
+		}
+		assertEquals(20, exporter.export("456"));
+		assertEquals(20, new File(root, "456/events").list().length);
+	}
+	
+	@Test
+	public void testExporterMaterialisesFolderLayout() throws Exception {
+		waitFor(Lists.newArrayList(
+				append("123", "123/control/completed-folder", "/old"),
+				append("123", "123/events/20151117-134009936-000001-document-received", "event"),
+				append("123", "123/control/completed-folder", "/new"),
+				append("456", "456/control/completed-folder", "/other")));
+		
+		final File root = folder.newFolder("in-progress");
+		final InProgressJournalExporter exporter = new InProgressJournalExporter(journalDirectory, root);
+		assertEquals(3, exporter.export("123"));
+		
+		assertEquals("/new", Files.toString(new File(root, "123/control/completed-folder"), Charsets.UTF_8));
+		assertEquals("event", Files.toString(new File(root, "123/events/20151117-134009936-000001-document-received"), Charsets.UTF_8));
+		assertFalse(new File(root, "456").exists());
+		
+		assertEquals(4, exporter.export());
+		assertEquals("/other", Files.toString(new File(root, "456/control/completed-folder"), Charsets.UTF_8));
+	}
+	
+	private void restartJournal(final long maxSegmentSize, final int compactionThreshold) throws Exception {
+		journal.stop();
+		journal = new InProgressJournal(journalDirectory);
+		journal.setMaxSegmentSize(maxSegmentSize);
+		journal.setCompactionThreshold(compactionThreshold);
+		journal.start();
+	}
+	
+	private int countSegments() {
+		int segments = 0;
+		for (final String name: journalDirectory.list()) {
+			if (name.endsWith(".journal")) {
+				segments++;
+			}
+		}
+		return segments;
+	}
+	
+	private ListenableFuture<Void> append(final String correlationId, final String path, final String content) {
+		return journal.append(correlationId, path, content.getBytes(Charsets.UTF_8));
+	}
+	
+	private void waitFor(final List<ListenableFuture<Void>> futures) throws Exception {
+		for (final ListenableFuture<Void> future: futures) {
+			future.get();
+		}
+	}
+	
+	private List<Entry> replay() throws IOException {
+		final List<Entry> entries = Lists.newArrayList();
+		InProgressJournal.replay(journalDirectory, new InProgressJournal.EntryHandler() {
+			@Override
+			public void handle(final Entry entry) {
+				entries.add(entry);
+			}
+		});
+		return entries;
+	}
+}
@@ -0,0 +1,71 @@
+package uk.nhs.ciao.docs.parser;
+
+import static uk.nhs.ciao.docs.parser.HeaderNames.IN_PROGRESS_FOLDER;
+import static uk.nhs.ciao.logging.CiaoLogMessage.logMsg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+import uk.nhs.ciao.logging.CiaoLogger;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * A camel processor to replace the content of a parsed document with a reference (claim-check).
+ * <p>
+ * The binary content of the original document is written once to the <code>source/</code>
+ * area of the in-progress folder, and the outgoing {@link ParsedDocument} is updated to
+ * contain a {@link ReferencedDocument} addressing the stored file. Downstream CIPs can
+ * still call {@link Document#getContent()} to lazily load the content.
+ */
+public class ContentReferenceProcessor implements Processor {
+	private static final CiaoLogger LOGGER = CiaoLogger.getLogger(ContentReferenceProcessor.class);
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IOException If the document content could not be stored
+	 */
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final Message message = exchange.getIn();
+		final ParsedDocument parsedDocument = message.getMandatoryBody(ParsedDocument.class);
+		final Document originalDocument = parsedDocument.getOriginalDocument();
+		if (originalDocument instanceof ReferencedDocument) {
+			return;
+		}
+
+		final String inProgressFolder = message.getHeader(IN_PROGRESS_FOLDER, String.class);
+		if (Strings.isNullOrEmpty(inProgressFolder)) {
+			throw new IOException("Missing header " + IN_PROGRESS_FOLDER);
+		}
+
+		final File sourceFile = new File(new File(inProgressFolder, "source"), originalDocument.getName());
+		storeContent(originalDocument, sourceFile);
+
+		LOGGER.debug(logMsg("Stored document content in in-progress folder")
+				.originalFileName(originalDocument.getName()));
+
+		final Document referencedDocument = new ReferencedDocument(originalDocument.getName(),
+				sourceFile.getAbsolutePath(), originalDocument.getMediaType());
+		message.setBody(new ParsedDocument(referencedDocument, parsedDocument.getProperties()));
+	}
+
+	private void storeContent(final Document document, final File file) throws IOException {
+		Files.createParentDirs(file);
+
+		final InputStream in = document.getContentStream();
+		try {
+			Files.asByteSink(file).writeFrom(in);
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+}
@@ -11,9 +11,11 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Expression;
 import org.apache.camel.Header;
 import org.apache.camel.builder.ExpressionBuilder;
-import org.apache.camel.model.dataformat.JsonLibrary;
+import org.apache.camel.component.file.FileEndpoint;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.TryDefinition;
 import org.apache.camel.spi.IdempotentRepository;
-import org.apache.camel.util.toolbox.AggregationStrategies;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -21,10 +23,17 @@ import uk.nhs.ciao.CIPRoutes;
 import uk.nhs.ciao.camel.CamelApplication;
 import uk.nhs.ciao.configuration.CIAOConfig;
 import uk.nhs.ciao.docs.parser.UnsupportedDocumentTypeException;
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentCodec;
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentFormat;
+import uk.nhs.ciao.docs.parser.file.IncrementalFileComponent;
+import uk.nhs.ciao.docs.parser.file.IncrementalFileConsumer;
+import uk.nhs.ciao.docs.parser.file.IncrementalFileEndpoint;
 import uk.nhs.ciao.exceptions.CIAOConfigurationException;
 import uk.nhs.ciao.logging.CiaoCamelLogger;
 import uk.nhs.ciao.logging.CiaoCamelLogger.ExceptionInclusion;
 
+import com.hazelcast.core.HazelcastInstance;
+
 /**
  * Configures multiple camel document parser routes determined by properties specified
  * in the applications registered {@link CIAOConfig}.
@@ -61,13 +70,97 @@ import uk.nhs.ciao.logging.CiaoCamelLogger.ExceptionInclusion;
  * 
  * <dt>inProgressRepositoryId<dt>
  * <dd>The spring ID of the {@link IdempotentRepository} to use for the input folders inProgressRepository</dd>
+ * 
+ * <dt>contentMode<dt>
+ * <dd>Optional - how the original document content is published: <code>inline</code> (the default) includes the
+ * Base64 encoded content in the output message, <code>reference</code> stores the content in the in-progress
+ * <code>source/</code> folder and publishes a reference to the stored file (see {@link ContentMode})</dd>
+ * 
+ * <dt>outputFormat<dt>
+ * <dd>Optional - the wire format of published messages: <code>json</code> (the default) or <code>binary</code>.
+ * The format is identified by the {@link HeaderNames#PARSED_DOCUMENT_FORMAT} header (see {@link ParsedDocumentFormat})</dd>
+ * 
+ * <dt>concurrentConsumers<dt>
+ * <dd>Optional - the number of threads used to process files polled from the input folder (default 1). If greater than 1,
+ * polled files are handed off to a thread pool and the input folder continues to be polled while documents are parsed.</dd>
+ * 
+ * <dt>maxPoolSize<dt>
+ * <dd>Optional - the maximum number of threads in the route's thread pool (defaults to concurrentConsumers)</dd>
+ * 
+ * <dt>maxInFlight<dt>
+ * <dd>Optional - the maximum number of documents processed by the route at any one time (defaults to maxPoolSize,
+ * plus largeFileConsumers if the large file pool is enabled).
+ * Polling of the input folder is adapted to the available capacity (see {@link InFlightPollingPolicy}). Only applies
+ * when polled files are handed off to a thread pool - a synchronous route processes every file of a poll before
+ * polling again, so its polls are not limited</dd>
+ * 
+ * <dt>prioritiseSmallFiles<dt>
+ * <dd>Optional - if <code>true</code> polled files are processed smallest first, with waiting files gradually gaining
+ * priority to avoid starvation (see {@link DocumentPriorityComparator}). Cannot be combined with
+ * <code>incrementalListing</code>. Default is <code>false</code></dd>
+ * 
+ * <dt>priorityAgingRate<dt>
+ * <dd>Optional - the number of bytes a waiting file's effective size is reduced by per second when prioritising
+ * small files (default 102400)</dd>
+ * 
+ * <dt>largeFileThreshold<dt>
+ * <dd>Optional - files larger than this size (in bytes) are parsed by a separate dedicated thread pool so that
+ * they do not hold up smaller documents. Disabled by default</dd>
+ * 
+ * <dt>largeFileConsumers<dt>
+ * <dd>Optional - the number of threads in the dedicated large file pool (default 1)</dd>
+ * 
+ * <dt>atomicControlWrites<dt>
+ * <dd>Optional - if <code>true</code> the in-progress control and event files are written to a temporary file
+ * and renamed into place (see {@link InProgressControlFilesProcessor}). Default is <code>false</code></dd>
+ * 
+ * <dt>distributionMode<dt>
+ * <dd>Optional - how input files are shared between the nodes of a cluster: <code>poll</code> (the default) - every
+ * node polls the input folder, or <code>queue</code> - one elected node lists the input folder and distributes file
+ * references via a Hazelcast distributed queue, which idle nodes take work from (see {@link DistributionMode})</dd>
+ * 
+ * <dt>hazelcastInstanceId<dt>
+ * <dd>Optional - the spring ID of the {@link HazelcastInstance} used when distributing files via a queue
+ * (default <code>hazelcastInstance</code>)</dd>
+ * 
+ * <dt>distributionQueue<dt>
+ * <dd>Optional - the name of the distributed queue (default <code>document-parser-${routeName}</code>)</dd>
+ * 
+ * <dt>distributionQueueCapacity<dt>
+ * <dd>Optional - the maximum number of file references waiting in the distributed queue (default 100)</dd>
+ * 
+ * <dt>inputMode<dt>
+ * <dd>Optional - how new files in the input folder are detected: <code>poll</code> (the default) - the folder is polled
+ * on a fixed delay, or <code>watch</code> - the folder is polled as soon as a {@link java.nio.file.WatchService} reports new
+ * files, with a periodic reconciliation scan (see {@link InputMode})</dd>
+ * 
+ * <dt>reconciliationInterval<dt>
+ * <dd>Optional - the delay in milliseconds between reconciliation scans of the input folder in the <code>watch</code>
+ * input mode (default 60000)</dd>
+ * 
+ * <dt>incrementalListing<dt>
+ * <dd>Optional - if <code>true</code> the input folder is listed incrementally: each poll streams the folder and only
+ * considers a bounded batch of files after a persistent cursor (see {@link IncrementalFileConsumer}). Files are
+ * processed oldest first, so it cannot be combined with <code>prioritiseSmallFiles</code>. Default is
+ * <code>false</code></dd>
+ * 
+ * <dt>listingCursorFile<dt>
+ * <dd>Optional - the file the incremental listing cursor is persisted to (default <code>${inProgressFolder}/.listing-cursor-${routeName}</code>).
+ * The file should not be inside the input folder - cursor writes would trigger polls in the <code>watch</code> input mode</dd>
+ * 
+ * <dt>listingRescanInterval<dt>
+ * <dd>Optional - the interval in milliseconds between full rescans of the input folder when listing incrementally
+ * (default 300000)</dd>
  * </dl>
  * <p>
  * The {@link IdempotentRepository} is used to support multiple competing file consumers - see http://camel.apache.org/idempotent-consumer.html
  * and http://camel.apache.org/file2.html : readLock=idempotent for further details. The route is configured to move the
  * file into a completion directory (filed with a timestamp), it is therefore safe to use readLockRemoveOnCommit=true.
  * This ensures that processed files are removed from idempotentRepository, and identically named files can be processed
- * in the future.
+ * in the future. The inProgressRepository also prevents files which are still being processed by the route's thread pool
+ * from being picked up again by subsequent polls.
+ * <p>
+ * Parsed documents are marshalled using {@link ParsedDocumentCodec} in the configured <code>outputFormat</code>.
  */
 public class DocumentParserRoutes extends CIPRoutes {
 	private static final CiaoCamelLogger LOGGER = CiaoCamelLogger.getLogger(DocumentParserRoutes.class);
@@ -78,6 +171,99 @@ public class DocumentParserRoutes extends CIPRoutes {
 	 */
 	public static final String ROOT_PROPERTY = "documentParserRoutes";
 	
+	/**
+	 * Determines how the content of the original document is included in published messages
+	 */
+	public enum ContentMode {
+		/**
+		 * The content is Base64 encoded and included directly in the published message
+		 */
+		INLINE,
+		
+		/**
+		 * The content is stored in the in-progress folder and the published message
+		 * contains a reference to the stored file (claim-check)
+		 * 
+		 * @see ReferencedDocument
+		 */
+		REFERENCE;
+		
+		/**
+		 * Returns the mode corresponding to the (case-insensitive) value
+		 * 
+		 * @throws CIAOConfigurationException If the value does not correspond to a known mode
+		 */
+		public static ContentMode fromString(final String value) throws CIAOConfigurationException {
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new CIAOConfigurationException("Unsupported contentMode: " + value, e);
+			}
+		}
+	}
+	
+	/**
+	 * Determines how input files are shared between the nodes of a cluster
+	 */
+	public enum DistributionMode {
+		/**
+		 * Every node polls the input folder and competes for files via the idempotent repositories
+		 */
+		POLL,
+		
+		/**
+		 * One elected node lists the input folder and distributes file references via a
+		 * distributed queue - nodes take files from the queue as they have capacity
+		 * 
+		 * @see QueueDistributionPolicy
+		 */
+		QUEUE;
+		
+		/**
+		 * Returns the mode corresponding to the (case-insensitive) value
+		 * 
+		 * @throws CIAOConfigurationException If the value does not correspond to a known mode
+		 */
+		public static DistributionMode fromString(final String value) throws CIAOConfigurationException {
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new CIAOConfigurationException("Unsupported distributionMode: " + value, e);
+			}
+		}
+	}
+	
+	/**
+	 * Determines how new files in the input folder are detected
+	 */
+	public enum InputMode {
+		/**
+		 * The input folder is polled on a fixed delay
+		 */
+		POLL,
+		
+		/**
+		 * The input folder is polled as soon as new files are reported by the file system - the
+		 * fixed delay polls continue as a (less frequent) reconciliation scan
+		 * 
+		 * @see InputFolderWatchPolicy
+		 */
+		WATCH;
+		
+		/**
+		 * Returns the mode corresponding to the (case-insensitive) value
+		 * 
+		 * @throws CIAOConfigurationException If the value does not correspond to a known mode
+		 */
+		public static InputMode fromString(final String value) throws CIAOConfigurationException {
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new CIAOConfigurationException("Unsupported inputMode: " + value, e);
+			}
+		}
+	}
+	
 	/**
 	 * Creates multiple document parser routes
 	 * 
@@ -120,6 +306,25 @@ public class DocumentParserRoutes extends CIPRoutes {
 		private final String errorFolder;
 		private final String idempotentRepositoryId;
 		private final String inProgressRepositoryId;
+		private final ContentMode contentMode;
+		private final ParsedDocumentFormat outputFormat;
+		private final int concurrentConsumers;
+		private final int maxPoolSize;
+		private final int maxInFlight;
+		private final boolean prioritiseSmallFiles;
+		private final long priorityAgingRate;
+		private final long largeFileThreshold;
+		private final int largeFileConsumers;
+		private final boolean atomicControlWrites;
+		private final DistributionMode distributionMode;
+		private final String hazelcastInstanceId;
+		private final String distributionQueue;
+		private final int distributionQueueCapacity;
+		private final InputMode inputMode;
+		private final long reconciliationInterval;
+		private final boolean incrementalListing;
+		private final String listingCursorFile;
+		private final long listingRescanInterval;
 		
 		/**
 		 * Creates a new route builder for the specified name / property prefix
@@ -137,39 +342,187 @@ public class DocumentParserRoutes extends CIPRoutes {
 			this.errorFolder = findProperty(config, "errorFolder");
 			this.idempotentRepositoryId = findProperty(config, "idempotentRepositoryId");
 			this.inProgressRepositoryId = findProperty(config, "inProgressRepositoryId");
+			this.contentMode = ContentMode.fromString(findProperty(config, "contentMode", ContentMode.INLINE.name()));
+			
+			final String format = findProperty(config, "outputFormat", ParsedDocumentFormat.JSON.getHeaderValue());
+			this.outputFormat = ParsedDocumentFormat.fromHeaderValue(format);
+			if (outputFormat == null) {
+				throw new CIAOConfigurationException("Unsupported outputFormat: " + format + " for route " + name);
+			}
+			
+			this.concurrentConsumers = findIntProperty(config, "concurrentConsumers", 1);
+			this.maxPoolSize = findIntProperty(config, "maxPoolSize", concurrentConsumers);
+			if (concurrentConsumers < 1 || maxPoolSize < concurrentConsumers) {
+				throw new CIAOConfigurationException("Invalid thread pool size - concurrentConsumers: " + concurrentConsumers +
+						", maxPoolSize: " + maxPoolSize + " for route " + name);
+			}
+			
+			this.prioritiseSmallFiles = Boolean.parseBoolean(findProperty(config, "prioritiseSmallFiles", "false").trim());
+			this.priorityAgingRate = findLongProperty(config, "priorityAgingRate", DocumentPriorityComparator.DEFAULT_AGING_RATE);
+			if (priorityAgingRate < 0) {
+				throw new CIAOConfigurationException("Invalid priorityAgingRate: " + priorityAgingRate + " for route " + name);
+			}
+			
+			this.largeFileThreshold = findLongProperty(config, "largeFileThreshold", 0);
+			this.largeFileConsumers = findIntProperty(config, "largeFileConsumers", 1);
+			if (largeFileThreshold < 0 || largeFileConsumers < 1) {
+				throw new CIAOConfigurationException("Invalid large file pool - largeFileThreshold: " + largeFileThreshold +
+						", largeFileConsumers: " + largeFileConsumers + " for route " + name);
+			}
+			
+			this.atomicControlWrites = Boolean.parseBoolean(findProperty(config, "atomicControlWrites", "false").trim());
+			
+			this.distributionMode = DistributionMode.fromString(findProperty(config, "distributionMode", DistributionMode.POLL.name()));
+			this.hazelcastInstanceId = findProperty(config, "hazelcastInstanceId", "hazelcastInstance");
+			this.distributionQueue = findProperty(config, "distributionQueue", "document-parser-" + name);
+			this.distributionQueueCapacity = findIntProperty(config, "distributionQueueCapacity", 100);
+			if (distributionQueueCapacity < 1) {
+				throw new CIAOConfigurationException("Invalid distributionQueueCapacity: " + distributionQueueCapacity + " for route " + name);
+			}
+			
+			this.inputMode = InputMode.fromString(findProperty(config, "inputMode", InputMode.POLL.name()));
+			this.reconciliationInterval = findLongProperty(config, "reconciliationInterval", 60000);
+			if (reconciliationInterval < 1) {
+				throw new CIAOConfigurationException("Invalid reconciliationInterval: " + reconciliationInterval + " for route " + name);
+			}
+			
+			this.incrementalListing = Boolean.parseBoolean(findProperty(config, "incrementalListing", "false").trim());
+			this.listingCursorFile = findProperty(config, "listingCursorFile", inProgressFolder + File.separator + ".listing-cursor-" + name);
+			this.listingRescanInterval = findLongProperty(config, "listingRescanInterval", 300000);
+			if (listingRescanInterval < 1) {
+				throw new CIAOConfigurationException("Invalid listingRescanInterval: " + listingRescanInterval + " for route " + name);
+			}
+			if (incrementalListing && prioritiseSmallFiles) {
+				// The sorter would only reorder the batch already chosen by the cursor
+				throw new CIAOConfigurationException("prioritiseSmallFiles cannot be combined with incrementalListing for route " + name);
+			}
+			
+			final int capacity = isLargeFilePoolEnabled() ? maxPoolSize + largeFileConsumers : maxPoolSize;
+			this.maxInFlight = findIntProperty(config, "maxInFlight", capacity);
+			if (maxInFlight < 1) {
+				throw new CIAOConfigurationException("Invalid maxInFlight: " + maxInFlight + " for route " + name);
+			}
 		}
 		
 		/**
 		 * Try the specific 'named' property then fall back to the general 'all-routes' property
 		 */
 		private String findProperty(final CIAOConfig config, final String propertyName) throws CIAOConfigurationException {
+			final String value = findProperty(config, propertyName, null);
+			if (value == null) {
+				throw new CIAOConfigurationException("Could not find property " + propertyName +
+						" for route " + name);
+			}
+			
+			return value;
+		}
+		
+		/**
+		 * Try the specific 'named' property then fall back to the general 'all-routes' property,
+		 * returning the default value if neither are specified
+		 */
+		private String findProperty(final CIAOConfig config, final String propertyName, final String defaultValue) throws CIAOConfigurationException {
 			final String specificName = ROOT_PROPERTY + "." + name + "." + propertyName;
 			final String genericName = ROOT_PROPERTY + "." + propertyName;
 			if (config.getConfigKeys().contains(specificName)) {
 				return config.getConfigValue(specificName);
 			} else if (config.getConfigKeys().contains(genericName)) {
-				
 				return config.getConfigValue(genericName);
 			} else {
-				throw new CIAOConfigurationException("Could not find property " + propertyName +
-						" for route " + name);
+				return defaultValue;
 			}
 		}
+		
+		/**
+		 * Try the specific 'named' integer property then fall back to the general 'all-routes' property,
+		 * returning the default value if neither are specified
+		 */
+		private int findIntProperty(final CIAOConfig config, final String propertyName, final int defaultValue) throws CIAOConfigurationException {
+			final long value = findLongProperty(config, propertyName, defaultValue);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new CIAOConfigurationException("Property " + propertyName + " is out of range for route " + name);
+			}
+			
+			return (int)value;
+		}
+		
+		/**
+		 * Try the specific 'named' long property then fall back to the general 'all-routes' property,
+		 * returning the default value if neither are specified
+		 */
+		private long findLongProperty(final CIAOConfig config, final String propertyName, final long defaultValue) throws CIAOConfigurationException {
+			final String value = findProperty(config, propertyName, null);
+			if (value == null) {
+				return defaultValue;
+			}
+			
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				throw new CIAOConfigurationException("Property " + propertyName + " must be an integer for route " + name, e);
+			}
+		}
+		
+		private boolean isLargeFilePoolEnabled() {
+			return largeFileThreshold > 0;
+		}
+		
+		/**
+		 * Tests if polled files are handed off to a pool of worker threads (rather than processed
+		 * by the polling thread)
+		 */
+		private boolean isThreadPoolEnabled() {
+			return isLargeFilePoolEnabled() || (concurrentConsumers > 1 && distributionMode == DistributionMode.POLL);
+		}
 
 		/**
 		 * Configures / creates a new Camel route corresponding to the set of CIAO-config
 		 * properties associated with the route name.
+		 * 
+		 * @throws CIAOConfigurationException If a referenced bean could not be found
 		 */
 		@SuppressWarnings("deprecation")
-		public void configure() {
-			from("file://" + inputFolder + "?idempotent=true&" +
-					"idempotentRepository=#" + idempotentRepositoryId + "&" +
-					"inProgressRepository=#" + inProgressRepositoryId + "&" +
-					"readLock=idempotent&" +
-					"move=${header." + IN_PROGRESS_FOLDER + "}/input/${file:name}&" +
-					"moveFailed=${header." + ERROR_FOLDER + "}/input/${file:name}")
-			.id("parse-document-" + name)
-
+		public void configure() throws CIAOConfigurationException {
+			final RouteDefinition route;
+			if (distributionMode == DistributionMode.QUEUE) {
+				route = configureQueueDistribution();
+			} else {
+				route = from(createInputEndpoint("idempotent=true&" +
+						"idempotentRepository=#" + idempotentRepositoryId + "&" +
+						"inProgressRepository=#" + inProgressRepositoryId + "&" +
+						"readLock=idempotent&" +
+						"move=${header." + IN_PROGRESS_FOLDER + "}/input/${file:name}&" +
+						"moveFailed=${header." + ERROR_FOLDER + "}/input/${file:name}"))
+				.id("parse-document-" + name);
+				if (isThreadPoolEnabled()) {
+					route.routePolicy(new InFlightPollingPolicy(maxInFlight));
+				}
+				configureInputMode(route);
+			}
+			route.streamCaching();
+			
+			// Optionally hand off polled files to a pool of worker threads
+			final ProcessorDefinition<?> consumer;
+			if (isLargeFilePoolEnabled()) {
+				// Large files are parsed by a dedicated pool - the remainder of the route continues on the pool thread
+				consumer = route.choice()
+					.when(header(Exchange.FILE_LENGTH).isGreaterThan(largeFileThreshold))
+						.threads(largeFileConsumers, largeFileConsumers)
+							.threadName("parse-large-document-" + name)
+						.endChoice()
+					.otherwise()
+						.threads(concurrentConsumers, maxPoolSize)
+							.threadName("parse-document-" + name)
+						.endChoice()
+					.end();
+			} else if (isThreadPoolEnabled()) {
+				consumer = route.threads(concurrentConsumers, maxPoolSize)
+						.threadName("parse-document-" + name);
+			} else {
+				consumer = route;
+			}
+			
+			final TryDefinition tryBlock = consumer
 			// Generate the standard parsed document headers
 			.setHeader(TIMESTAMP, method(System.class, "currentTimeMillis()"))
 			.setHeader(Exchange.CORRELATION_ID, method(DocumentParserRoutes.class, "generateId()"))
@@ -183,7 +536,6 @@ public class DocumentParserRoutes extends CIPRoutes {
 			.setHeader(COMPLETED_FOLDER, method(DocumentParserRoutes.class, "getAbsolutePath(${header." + COMPLETED_FOLDER + "})"))
 			.setHeader(ERROR_FOLDER, method(DocumentParserRoutes.class, "getAbsolutePath(${header." + ERROR_FOLDER + "})"))
 			
-			.streamCaching()
 			.doTry()
 				.process(LOGGER.info(camelLogMsg("Parsing incoming document")
 						.documentId(header(Exchange.CORRELATION_ID))
@@ -197,29 +549,20 @@ public class DocumentParserRoutes extends CIPRoutes {
 						.documentId(header(Exchange.CORRELATION_ID))
 						.eventName(constant("parsed-document"))
 						.originalFileName(header(SOURCE_FILE_NAME))
-						.inputDirectory(constant(inputFolder))))
-				
-				.marshal().json(JsonLibrary.Jackson)
+						.inputDirectory(constant(inputFolder))));
+			
+			if (contentMode == ContentMode.REFERENCE) {
+				// Store the content once in the in-progress folder and publish a reference (claim-check)
+				tryBlock.process(new ContentReferenceProcessor());
+			}
+			
+			tryBlock
+				// Stream the encoded document into the cached body - avoids building the whole message in memory
+				.marshal(new ParsedDocumentCodec(outputFormat))
+				.setHeader(PARSED_DOCUMENT_FORMAT, constant(outputFormat.getHeaderValue()))
 				
-				// Store details of configured file paths in the in-progress control directory
-				.multicast(AggregationStrategies.useOriginal())
-					.pipeline()
-						.setBody().header(COMPLETED_FOLDER)
-						.setHeader(Exchange.FILE_NAME).simple("${header." + IN_PROGRESS_FOLDER + "}/control/completed-folder")
-						.to("file://?fileExist=Override")
-					.end()
-					
-					.pipeline()
-						.setBody().header(ERROR_FOLDER)
-						.setHeader(Exchange.FILE_NAME).simple("${header." + IN_PROGRESS_FOLDER + "}/control/error-folder")
-						.to("file://?fileExist=Override")
-					.end()
-					
-					.pipeline()
-						.setHeader(Exchange.FILE_NAME, method(DocumentParserRoutes.class, "getDocumentParsedEventFileName"))
-						.to("file://?fileExist=Override")
-					.end()
-				.end()
+				// Store details of configured file paths and the parsed event in the in-progress directory (in one pass)
+				.process(new InProgressControlFilesProcessor(atomicControlWrites))
 				
 				.setHeader(Exchange.FILE_NAME, simple("${file:name.noext}.json"))
 				.to("jms:queue:" + outputQueue)
@@ -240,6 +583,88 @@ public class DocumentParserRoutes extends CIPRoutes {
 				.handled(false);
 		}
 		
+		/**
+		 * Creates the file endpoint of the input folder with the specified options
+		 */
+		private FileEndpoint createInputEndpoint(final String options) {
+			// When watching the folder the scheduled polls are only a reconciliation scan
+			final String delay = inputMode == InputMode.WATCH ? "&delay=" + reconciliationInterval : "";
+			final String scheme;
+			if (incrementalListing) {
+				scheme = IncrementalFileComponent.SCHEME;
+				if (getContext().hasComponent(scheme) == null) {
+					getContext().addComponent(scheme, new IncrementalFileComponent());
+				}
+			} else {
+				scheme = "file";
+			}
+			
+			final FileEndpoint endpoint = getContext().getEndpoint(scheme + "://" + inputFolder + "?" + options + delay, FileEndpoint.class);
+			if (endpoint instanceof IncrementalFileEndpoint) {
+				final IncrementalFileEndpoint incrementalEndpoint = (IncrementalFileEndpoint)endpoint;
+				incrementalEndpoint.setCursorFile(new File(listingCursorFile));
+				incrementalEndpoint.setRescanInterval(listingRescanInterval);
+			}
+			if (prioritiseSmallFiles) {
+				// Sort all pending files before the batch is limited to the available capacity
+				endpoint.setSorter(new DocumentPriorityComparator<File>(priorityAgingRate));
+				endpoint.setEagerMaxMessagesPerPoll(false);
+			}
+			return endpoint;
+		}
+		
+		/**
+		 * Adds the route policy which triggers polls of the route consuming the input folder
+		 * when new files are detected (if enabled)
+		 */
+		private void configureInputMode(final RouteDefinition route) {
+			if (inputMode == InputMode.WATCH) {
+				route.routePolicy(new InputFolderWatchPolicy(inputFolder));
+			}
+		}
+		
+		/**
+		 * Configures the route distributing file references via the distributed queue (only active on the
+		 * elected node) and returns the start of the route taking files from the queue (active on all nodes).
+		 * <p>
+		 * Files are not moved by the distributing route - references are only distributed once per
+		 * entry in the idempotent repository. The taking route claims each file via the in-progress
+		 * repository before processing it (see {@link QueuedFileClaimProcessor}).
+		 */
+		@SuppressWarnings("unchecked")
+		private RouteDefinition configureQueueDistribution() throws CIAOConfigurationException {
+			final HazelcastInstance hazelcastInstance = lookup(hazelcastInstanceId, HazelcastInstance.class);
+			final IdempotentRepository<String> inProgressRepository = lookup(inProgressRepositoryId, IdempotentRepository.class);
+			final String queueUri = "hazelcast:seda:" + distributionQueue + "?hazelcastInstance=#" + hazelcastInstanceId;
+			
+			final RouteDefinition distributor = from(createInputEndpoint("noop=true&" +
+					"readLock=none&" +
+					"idempotent=true&" +
+					"idempotentKey=${file:absolute.path}&" +
+					"idempotentRepository=#" + idempotentRepositoryId))
+			.id("distribute-documents-" + name)
+			.routePolicy(new QueueDistributionPolicy(hazelcastInstance, distributionQueue, distributionQueueCapacity));
+			configureInputMode(distributor);
+			
+			distributor
+			.setBody(simple("${file:absolute.path}"))
+			.to(queueUri);
+			
+			final RouteDefinition route = from(queueUri + "&concurrentConsumers=" + concurrentConsumers)
+			.id("parse-document-" + name);
+			route.process(new QueuedFileClaimProcessor(inProgressRepository));
+			return route;
+		}
+		
+		private <T> T lookup(final String id, final Class<T> type) throws CIAOConfigurationException {
+			final T bean = getContext().getRegistry().lookupByNameAndType(id, type);
+			if (bean == null) {
+				throw new CIAOConfigurationException("Could not find " + type.getSimpleName() + " bean " + id +
+						" for route " + name);
+			}
+			return bean;
+		}
+		
 		private Expression concat(final Expression... expressions) {
 			return ExpressionBuilder.concatExpression(Arrays.asList(expressions));
 		}
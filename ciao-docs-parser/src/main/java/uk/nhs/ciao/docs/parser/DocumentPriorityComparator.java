@@ -0,0 +1,69 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.Comparator;
+
+import org.apache.camel.component.file.GenericFile;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Orders files polled from an input folder using a shortest-job-first policy with ageing.
+ * <p>
+ * Each file is given an effective size of <code>fileLength - agingRate * secondsWaited</code> and
+ * files with the smallest effective size are processed first. Small documents therefore overtake
+ * large documents, while a large document which has been waiting long enough will eventually
+ * overtake newly arrived small documents (starvation protection).
+ * <p>
+ * Since the current time is the same for every file in a poll, the effective size is calculated
+ * relative to the last modified time of each file - this keeps the ordering consistent during a sort.
+ */
+public class DocumentPriorityComparator<T> implements Comparator<GenericFile<T>> {
+	/**
+	 * The default rate at which waiting files gain priority (100 KiB per second)
+	 */
+	public static final long DEFAULT_AGING_RATE = 100 * 1024;
+
+	private final double agingRatePerMilli;
+
+	/**
+	 * Creates a new comparator using the default ageing rate
+	 */
+	public DocumentPriorityComparator() {
+		this(DEFAULT_AGING_RATE);
+	}
+
+	/**
+	 * Creates a new comparator using the specified ageing rate
+	 *
+	 * @param agingRate The number of bytes a file's effective size is reduced by for each second it has been waiting
+	 */
+	public DocumentPriorityComparator(final long agingRate) {
+		Preconditions.checkArgument(agingRate >= 0, "agingRate must not be negative");
+		this.agingRatePerMilli = agingRate / 1000.0;
+	}
+
+	@Override
+	public int compare(final GenericFile<T> file1, final GenericFile<T> file2) {
+		int result = Double.compare(getPriorityKey(file1), getPriorityKey(file2));
+		if (result == 0) {
+			result = compareNames(file1.getFileName(), file2.getFileName());
+		}
+		return result;
+	}
+
+	/**
+	 * The effective size of the file (plus a constant offset determined by the current time)
+	 */
+	private double getPriorityKey(final GenericFile<T> file) {
+		return file.getFileLength() + file.getLastModified() * agingRatePerMilli;
+	}
+
+	private static int compareNames(final String name1, final String name2) {
+		if (name1 == null) {
+			return name2 == null ? 0 : -1;
+		} else if (name2 == null) {
+			return 1;
+		}
+		return name1.compareTo(name2);
+	}
+}
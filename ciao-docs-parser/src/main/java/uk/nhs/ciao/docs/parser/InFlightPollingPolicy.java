@@ -0,0 +1,186 @@
+package uk.nhs.ciao.docs.parser;
+
+import static uk.nhs.ciao.logging.CiaoLogMessage.logMsg;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Route;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.impl.DefaultPollingConsumerPollStrategy;
+import org.apache.camel.impl.ScheduledBatchPollingConsumer;
+import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.spi.PollingConsumerPollStrategy;
+import org.apache.camel.support.RoutePolicySupport;
+
+import uk.nhs.ciao.logging.CiaoLogger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Route policy which adapts polling of a route's file consumer to the capacity of the document parser.
+ * <p>
+ * The number of in-flight documents (polled but not yet completed) is limited to <code>maxInFlight</code>:
+ * <ul>
+ * <li>Polls are skipped while the route is at capacity - files remain in the input folder (rather than
+ * being held as stream-cached bodies) until a parser becomes available</li>
+ * <li>Each poll is limited to the number of free slots (via <code>maxMessagesPerPoll</code>)</li>
+ * <li>If a poll fills all of the free slots (i.e. there is a backlog in the input folder) and capacity
+ * remains, the consumer immediately polls again rather than waiting for the next scheduled poll</li>
+ * </ul>
+ * The in-flight count, parse latency and skipped polls are exposed as JMX attributes.
+ */
+@ManagedResource(description = "Limits the number of in-flight documents of a document parser route")
+public class InFlightPollingPolicy extends RoutePolicySupport implements PollStrategyChain.Link {
+	private static final CiaoLogger LOGGER = CiaoLogger.getLogger(InFlightPollingPolicy.class);
+
+	/**
+	 * Weight of the most recent sample in the moving average parse time (out of 8)
+	 */
+	private static final int LATENCY_SAMPLE_WEIGHT = 2;
+
+	private final int maxInFlight;
+	private final AtomicInteger inFlight;
+	private final AtomicLong averageParseTime;
+	private final AtomicLong skippedPolls;
+	private volatile PollingConsumerPollStrategy delegate;
+
+	/**
+	 * Creates a new policy limiting the route to the specified number of in-flight documents
+	 */
+	public InFlightPollingPolicy(final int maxInFlight) {
+		Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new AtomicInteger();
+		this.averageParseTime = new AtomicLong(-1);
+		this.skippedPolls = new AtomicLong();
+		this.delegate = new DefaultPollingConsumerPollStrategy();
+	}
+
+	@ManagedAttribute(description = "Maximum number of in-flight documents")
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	@ManagedAttribute(description = "Number of documents currently being processed")
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	@ManagedAttribute(description = "Moving average of the document processing time in milliseconds")
+	public long getAverageParseTime() {
+		return Math.max(0, averageParseTime.get());
+	}
+
+	@ManagedAttribute(description = "Number of polls skipped while the route was at capacity")
+	public long getSkippedPolls() {
+		return skippedPolls.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Registers this policy as the poll strategy of the route's consumer - the consumer's
+	 * original strategy is retained as a delegate.
+	 * <p>
+	 * The consumer is only created once the route has been initialised, so the strategy is
+	 * registered when the route starts (and the poll strategy is read by each poll). A restarted
+	 * route may keep its consumer - the policy is not registered again if it is already part
+	 * of the consumer's chain of strategies.
+	 */
+	@Override
+	public void onStart(final Route route) {
+		super.onStart(route);
+
+		if (route.getConsumer() instanceof ScheduledPollConsumer) {
+			final ScheduledPollConsumer consumer = (ScheduledPollConsumer)route.getConsumer();
+			final PollingConsumerPollStrategy current = consumer.getPollStrategy();
+			if (!PollStrategyChain.contains(current, this)) {
+				delegate = current != null ? current : new DefaultPollingConsumerPollStrategy();
+				consumer.setPollStrategy(this);
+			}
+		} else {
+			LOGGER.warn(logMsg("Unable to adapt polling - the consumer of route " + route.getId() +
+					" is not a polling consumer"));
+		}
+	}
+
+	@Override
+	public PollingConsumerPollStrategy getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void onExchangeBegin(final Route route, final Exchange exchange) {
+		inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void onExchangeDone(final Route route, final Exchange exchange) {
+		inFlight.decrementAndGet();
+
+		final Date created = exchange.getProperty(Exchange.CREATED_TIMESTAMP, Date.class);
+		if (created != null) {
+			updateAverageParseTime(System.currentTimeMillis() - created.getTime());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The poll is skipped if the route is at capacity, otherwise the batch size is limited
+	 * to the available capacity
+	 */
+	@Override
+	public boolean begin(final Consumer consumer, final Endpoint endpoint) {
+		final int available = maxInFlight - inFlight.get();
+		if (available <= 0) {
+			skippedPolls.incrementAndGet();
+			return false;
+		}
+
+		if (consumer instanceof ScheduledBatchPollingConsumer) {
+			((ScheduledBatchPollingConsumer)consumer).setMaxMessagesPerPoll(available);
+		}
+
+		return delegate.begin(consumer, endpoint);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Polling is accelerated (the consumer re-polls immediately) while the input folder has a
+	 * backlog and the route has capacity remaining
+	 */
+	@Override
+	public void commit(final Consumer consumer, final Endpoint endpoint, final int polledMessages) {
+		delegate.commit(consumer, endpoint, polledMessages);
+
+		if (consumer instanceof ScheduledBatchPollingConsumer) {
+			final ScheduledBatchPollingConsumer batchConsumer = (ScheduledBatchPollingConsumer)consumer;
+			final boolean backlog = polledMessages > 0 && polledMessages >= batchConsumer.getMaxMessagesPerPoll();
+			batchConsumer.setGreedy(backlog && inFlight.get() < maxInFlight);
+		}
+	}
+
+	@Override
+	public boolean rollback(final Consumer consumer, final Endpoint endpoint, final int retryCounter,
+			final Exception cause) throws Exception {
+		return delegate.rollback(consumer, endpoint, retryCounter, cause);
+	}
+
+	private void updateAverageParseTime(final long sample) {
+		long current;
+		long next;
+		do {
+			current = averageParseTime.get();
+			next = current < 0 ? sample : (current * (8 - LATENCY_SAMPLE_WEIGHT) + sample * LATENCY_SAMPLE_WEIGHT) / 8;
+		} while (!averageParseTime.compareAndSet(current, next));
+	}
+}
@@ -0,0 +1,180 @@
+package uk.nhs.ciao.docs.parser;
+
+import static uk.nhs.ciao.docs.parser.HeaderNames.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentCodec;
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentFormat;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A camel processor to write the in-progress control files and document-parsed event of a parsed document.
+ * <p>
+ * The following entries are written beneath the in-progress folder of the document in a single pass:
+ * <ul>
+ * <li><code>control/completed-folder</code> - the value of the {@link HeaderNames#COMPLETED_FOLDER} header</li>
+ * <li><code>control/error-folder</code> - the value of the {@link HeaderNames#ERROR_FOLDER} header</li>
+ * <li><code>events/${timestamp}-document-parsed</code> - the (marshalled) message body as JSON</li>
+ * </ul>
+ * The event file is always JSON: if the {@link HeaderNames#PARSED_DOCUMENT_FORMAT} header identifies another
+ * format (e.g. <code>binary</code>) the body is decoded and re-encoded as JSON for the event file - the message
+ * body itself is left unchanged.
+ * The <code>control</code> and <code>events</code> directories are created once and each entry is resolved
+ * against the created directory. If <code>atomicWrites</code> is enabled, each entry is written to a temporary
+ * file in the target directory and then renamed into place - readers never observe a partially written file.
+ */
+public class InProgressControlFilesProcessor implements Processor {
+	private final boolean atomicWrites;
+	private final ParsedDocumentCodec eventCodec;
+
+	/**
+	 * Creates a new processor which writes entries directly to the target files
+	 */
+	public InProgressControlFilesProcessor() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new processor
+	 *
+	 * @param atomicWrites true if entries should be written to a temporary file and renamed into place
+	 */
+	public InProgressControlFilesProcessor(final boolean atomicWrites) {
+		this.atomicWrites = atomicWrites;
+		this.eventCodec = new ParsedDocumentCodec(ParsedDocumentFormat.JSON);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IOException If the entries could not be written
+	 */
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final Message message = exchange.getIn();
+		final String inProgressFolder = message.getHeader(IN_PROGRESS_FOLDER, String.class);
+		if (inProgressFolder == null || inProgressFolder.isEmpty()) {
+			throw new IOException("Missing header " + IN_PROGRESS_FOLDER);
+		}
+
+		final Long timestamp = message.getHeader(TIMESTAMP, Long.class);
+		if (timestamp == null) {
+			throw new IOException("Missing header " + TIMESTAMP);
+		}
+
+		final Path controlFolder = Files.createDirectories(Paths.get(inProgressFolder, "control"));
+		writeEntry(controlFolder.resolve("completed-folder"), message.getHeader(COMPLETED_FOLDER, String.class));
+		writeEntry(controlFolder.resolve("error-folder"), message.getHeader(ERROR_FOLDER, String.class));
+
+		final Path eventFile = Paths.get(DocumentParserRoutes.getDocumentParsedEventFileName(inProgressFolder, timestamp));
+		Files.createDirectories(eventFile.getParent());
+		
+		final ParsedDocumentFormat format = ParsedDocumentFormat.fromHeaderValue(
+				message.getHeader(PARSED_DOCUMENT_FORMAT, String.class));
+		if (format == null || format == ParsedDocumentFormat.JSON) {
+			writeEntry(eventFile, message);
+		} else {
+			writeJsonEntry(eventFile, exchange);
+		}
+	}
+
+	private void writeEntry(final Path file, final String value) throws IOException {
+		final OutputStream out = openEntry(file);
+		try {
+			if (value != null) {
+				out.write(value.getBytes(Charsets.UTF_8));
+			}
+		} finally {
+			out.close();
+		}
+		commitEntry(file);
+	}
+
+	/**
+	 * Writes the message body to the file - stream cached bodies are reset so that they
+	 * can be read again by later steps of the route
+	 */
+	private void writeEntry(final Path file, final Message message) throws Exception {
+		final OutputStream out = openEntry(file);
+		try {
+			final Object body = message.getBody();
+			if (body instanceof StreamCache) {
+				final StreamCache cache = (StreamCache)body;
+				cache.reset();
+				cache.writeTo(out);
+				cache.reset();
+			} else {
+				out.write(message.getMandatoryBody(byte[].class));
+			}
+		} finally {
+			out.close();
+		}
+		commitEntry(file);
+	}
+
+	/**
+	 * Decodes the message body (using the format identified by the message headers) and
+	 * writes the document to the file as JSON
+	 */
+	private void writeJsonEntry(final Path file, final Exchange exchange) throws Exception {
+		final Message message = exchange.getIn();
+		final Object body = message.getBody();
+		final Object document;
+		if (body instanceof StreamCache) {
+			final StreamCache cache = (StreamCache)body;
+			cache.reset();
+			document = eventCodec.unmarshal(exchange, message.getMandatoryBody(InputStream.class));
+			cache.reset();
+		} else {
+			final InputStream in = message.getMandatoryBody(InputStream.class);
+			try {
+				document = eventCodec.unmarshal(exchange, in);
+			} finally {
+				in.close();
+			}
+		}
+
+		final OutputStream out = openEntry(file);
+		try {
+			eventCodec.marshal(exchange, document, out);
+		} finally {
+			out.close();
+		}
+		commitEntry(file);
+	}
+
+	private OutputStream openEntry(final Path file) throws IOException {
+		return Files.newOutputStream(atomicWrites ? getTempFile(file) : file);
+	}
+
+	private void commitEntry(final Path file) throws IOException {
+		if (!atomicWrites) {
+			return;
+		}
+
+		final Path tempFile = getTempFile(file);
+		try {
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private Path getTempFile(final Path file) {
+		return file.resolveSibling("." + file.getFileName() + ".tmp");
+	}
+}
@@ -0,0 +1,262 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Route;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.impl.DefaultPollingConsumerPollStrategy;
+import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.spi.PollingConsumerPollStrategy;
+import org.apache.camel.support.RoutePolicySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Route policy which polls a route's file consumer as soon as files are created in the input folder.
+ * <p>
+ * The input folder is watched using a {@link WatchService} (e.g. inotify on Linux). When files are created
+ * or modified an immediate poll of the consumer is triggered - events which arrive while a poll is pending
+ * are coalesced into that poll. The consumer's scheduled polls continue as a reconciliation scan, picking up
+ * any files missed by the watch service (e.g. after an overflow or on file systems without native events).
+ * <p>
+ * Triggered polls run on a separate thread, but the policy wraps the consumer's poll strategy so that polls
+ * of the consumer never overlap - a triggered poll waits for any running scheduled poll to complete (and
+ * vice versa). Each poll goes through the consumer's normal poll strategy and file checks - the idempotent
+ * and in-progress repositories are used exactly as for a scheduled poll.
+ */
+@ManagedResource(description = "Polls a document parser route when files are created in the input folder")
+public class InputFolderWatchPolicy extends RoutePolicySupport implements PollStrategyChain.Link {
+	private static final Logger LOGGER = LoggerFactory.getLogger(InputFolderWatchPolicy.class);
+
+	private final Path folder;
+	private final AtomicBoolean pollPending;
+	private final AtomicLong triggeredPolls;
+	private final ReentrantLock pollLock;
+	private volatile PollingConsumerPollStrategy delegate;
+	private volatile ScheduledPollConsumer consumer;
+	private volatile ExecutorService executorService;
+	private WatchService watchService;
+
+	/**
+	 * Creates a new policy watching the specified input folder
+	 */
+	public InputFolderWatchPolicy(final String folder) {
+		this.folder = Paths.get(Preconditions.checkNotNull(folder));
+		this.pollPending = new AtomicBoolean();
+		this.triggeredPolls = new AtomicLong();
+		this.pollLock = new ReentrantLock();
+		this.delegate = new DefaultPollingConsumerPollStrategy();
+	}
+
+	@ManagedAttribute(description = "The watched input folder")
+	public String getFolder() {
+		return folder.toAbsolutePath().toString();
+	}
+
+	@ManagedAttribute(description = "Number of polls triggered by watch events")
+	public long getTriggeredPolls() {
+		return triggeredPolls.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Registers this policy as the poll strategy of the route's consumer (the consumer's original
+	 * strategy is retained as a delegate) and starts watching the input folder.
+	 * <p>
+	 * The consumer is only created once the route has been initialised, so it is configured
+	 * when the route starts. Camel may create a new consumer when the route is restarted - the
+	 * policy is re-bound to the route's current consumer on each start.
+	 */
+	@Override
+	public synchronized void onStart(final Route route) {
+		super.onStart(route);
+
+		if (!(route.getConsumer() instanceof ScheduledPollConsumer)) {
+			LOGGER.warn("Unable to watch input folder - the consumer of route {} is not a polling consumer", route.getId());
+			return;
+		}
+
+		final ScheduledPollConsumer routeConsumer = (ScheduledPollConsumer)route.getConsumer();
+		final PollingConsumerPollStrategy current = routeConsumer.getPollStrategy();
+		if (!PollStrategyChain.contains(current, this)) {
+			delegate = current != null ? current : new DefaultPollingConsumerPollStrategy();
+			routeConsumer.setPollStrategy(this);
+		}
+		consumer = routeConsumer;
+
+		if (executorService == null) {
+			executorService = routeConsumer.getEndpoint().getCamelContext().getExecutorServiceManager()
+					.newSingleThreadExecutor(this, "poll-" + route.getId());
+		}
+
+		if (watchService != null) {
+			return;
+		}
+
+		try {
+			Files.createDirectories(folder);
+			watchService = FileSystems.getDefault().newWatchService();
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			// The scheduled polls continue without the watch service
+			LOGGER.warn("Unable to watch input folder " + folder + " - falling back to scheduled polling", e);
+			closeWatchService();
+			return;
+		}
+
+		final Thread thread = new Thread(new Watcher(watchService), "watch-" + route.getId());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void onStop(final Route route) {
+		closeWatchService();
+	}
+
+	@Override
+	public synchronized void onRemove(final Route route) {
+		closeWatchService();
+		if (executorService != null) {
+			consumer.getEndpoint().getCamelContext().getExecutorServiceManager().shutdown(executorService);
+			executorService = null;
+		}
+	}
+
+	@Override
+	public PollingConsumerPollStrategy getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Waits for any other poll of the consumer to complete - the lock is held until the
+	 * poll is committed or rolled back
+	 */
+	@Override
+	public boolean begin(final Consumer consumer, final Endpoint endpoint) {
+		pollLock.lock();
+
+		// If the delegate fails the poll is rolled back (releasing the lock)
+		final boolean begin = delegate.begin(consumer, endpoint);
+		if (!begin) {
+			pollLock.unlock();
+		}
+		return begin;
+	}
+
+	@Override
+	public void commit(final Consumer consumer, final Endpoint endpoint, final int polledMessages) {
+		try {
+			delegate.commit(consumer, endpoint, polledMessages);
+		} finally {
+			releasePollLock();
+		}
+	}
+
+	@Override
+	public boolean rollback(final Consumer consumer, final Endpoint endpoint, final int retryCounter,
+			final Exception cause) throws Exception {
+		try {
+			return delegate.rollback(consumer, endpoint, retryCounter, cause);
+		} finally {
+			releasePollLock();
+		}
+	}
+
+	/**
+	 * Releases the poll lock if held - a poll which fails to commit is also rolled back
+	 */
+	private void releasePollLock() {
+		if (pollLock.isHeldByCurrentThread()) {
+			pollLock.unlock();
+		}
+	}
+
+	/**
+	 * Triggers a poll of the consumer - unless a triggered poll is already pending
+	 */
+	private void triggerPoll() {
+		final ExecutorService executorService = this.executorService;
+		if (executorService == null || !pollPending.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			executorService.execute(new Runnable() {
+				@Override
+				public void run() {
+					pollPending.set(false);
+					triggeredPolls.incrementAndGet();
+					consumer.run();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pollPending.set(false);
+			LOGGER.debug("Unable to trigger poll - executor is shut down", e);
+		}
+	}
+
+	private void closeWatchService() {
+		if (watchService != null) {
+			// Closing the service also stops the watcher thread
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				LOGGER.debug("Unable to close watch service for input folder {}", folder, e);
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Triggers a poll whenever the watch service signals events (or an overflow) for the folder
+	 */
+	private class Watcher implements Runnable {
+		private final WatchService watchService;
+
+		public Watcher(final WatchService watchService) {
+			this.watchService = watchService;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final WatchKey key = watchService.take();
+					key.pollEvents();
+					triggerPoll();
+
+					if (!key.reset()) {
+						LOGGER.warn("Input folder {} is no longer accessible - falling back to scheduled polling", folder);
+						return;
+					}
+				}
+			} catch (ClosedWatchServiceException e) {
+				// Normal shutdown
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package uk.nhs.ciao.docs.parser;
+
+import org.apache.camel.spi.PollingConsumerPollStrategy;
+
+/**
+ * Chain of poll strategies wrapping the consumer of a route.
+ * <p>
+ * Several route policies (e.g. {@link InFlightPollingPolicy} and {@link InputFolderWatchPolicy}) may wrap
+ * the poll strategy of the same consumer. When the route is restarted the consumer may retain the whole chain
+ * (or Camel may create a new consumer with its default strategy) - a policy must only be installed if it is not
+ * already part of the chain, otherwise two policies would end up delegating to each other.
+ */
+final class PollStrategyChain {
+	private PollStrategyChain() {
+		// Suppress default constructor
+	}
+
+	/**
+	 * A poll strategy which delegates to the strategy it has wrapped
+	 */
+	interface Link extends PollingConsumerPollStrategy {
+		/**
+		 * The wrapped strategy
+		 */
+		PollingConsumerPollStrategy getDelegate();
+	}
+
+	/**
+	 * Tests if the chain starting at <code>strategy</code> contains <code>link</code>
+	 */
+	static boolean contains(final PollingConsumerPollStrategy strategy, final PollingConsumerPollStrategy link) {
+		PollingConsumerPollStrategy current = strategy;
+		while (current != null) {
+			if (current == link) {
+				return true;
+			}
+
+			current = current instanceof Link ? ((Link)current).getDelegate() : null;
+		}
+
+		return false;
+	}
+}
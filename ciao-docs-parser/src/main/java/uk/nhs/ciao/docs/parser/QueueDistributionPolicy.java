@@ -0,0 +1,256 @@
+package uk.nhs.ciao.docs.parser;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Route;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.impl.DefaultPollingConsumerPollStrategy;
+import org.apache.camel.impl.ScheduledBatchPollingConsumer;
+import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.spi.PollingConsumerPollStrategy;
+import org.apache.camel.support.RoutePolicySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IQueue;
+
+/**
+ * Route policy for the route which lists an input folder and distributes file references to
+ * the nodes of a cluster via a Hazelcast distributed queue.
+ * <p>
+ * Only one node in the cluster lists the folder at a time:
+ * <ul>
+ * <li>The nodes elect a leader by acquiring a Hazelcast lock - polls of the folder are skipped
+ * by all other nodes</li>
+ * <li>If the leader leaves the cluster its lock is released by Hazelcast and another node takes
+ * over listing the folder</li>
+ * <li>Each poll is limited to the free space in the queue (<code>queueCapacity</code>) - files remain in
+ * the input folder until a node is available to take them</li>
+ * </ul>
+ * The leadership status, queue size and skipped polls are exposed as JMX attributes.
+ */
+@ManagedResource(description = "Elects the node which distributes documents of a document parser route")
+public class QueueDistributionPolicy extends RoutePolicySupport implements PollStrategyChain.Link {
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueueDistributionPolicy.class);
+
+	/**
+	 * Delay before retrying the election after an error (e.g. while Hazelcast is shutting down)
+	 */
+	private static final long RETRY_DELAY_MILLIS = 5000;
+
+	private final HazelcastInstance hazelcastInstance;
+	private final String queueName;
+	private final String lockName;
+	private final int queueCapacity;
+	private final AtomicLong skippedPolls;
+	private volatile PollingConsumerPollStrategy delegate;
+	private volatile boolean leader;
+	private Thread electionThread;
+	private CountDownLatch stopLatch;
+
+	/**
+	 * Creates a new policy
+	 *
+	 * @param hazelcastInstance The Hazelcast instance used for leader election and the distributed queue
+	 * @param queueName The name of the distributed queue - also used to derive the name of the election lock
+	 * @param queueCapacity The maximum number of file references waiting in the queue
+	 */
+	public QueueDistributionPolicy(final HazelcastInstance hazelcastInstance, final String queueName, final int queueCapacity) {
+		Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+
+		this.hazelcastInstance = Preconditions.checkNotNull(hazelcastInstance);
+		this.queueName = Preconditions.checkNotNull(queueName);
+		this.lockName = queueName + "-leader";
+		this.queueCapacity = queueCapacity;
+		this.skippedPolls = new AtomicLong();
+		this.delegate = new DefaultPollingConsumerPollStrategy();
+	}
+
+	@ManagedAttribute(description = "Whether this node is currently distributing documents")
+	public boolean isLeader() {
+		return leader;
+	}
+
+	@ManagedAttribute(description = "Maximum number of documents waiting in the distributed queue")
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@ManagedAttribute(description = "Number of documents waiting in the distributed queue")
+	public int getQueueSize() {
+		return getQueue().size();
+	}
+
+	@ManagedAttribute(description = "Number of polls skipped by the leader while the distributed queue was full")
+	public long getSkippedPolls() {
+		return skippedPolls.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Registers this policy as the poll strategy of the route's consumer (the consumer's
+	 * original strategy is retained as a delegate) and starts the leader election.
+	 * <p>
+	 * The consumer is only created once the route has been initialised, so the strategy is
+	 * registered when the route starts (and the poll strategy is read by each poll)
+	 */
+	@Override
+	public synchronized void onStart(final Route route) {
+		super.onStart(route);
+
+		installPollStrategy(route);
+		if (electionThread != null) {
+			return;
+		}
+
+		stopLatch = new CountDownLatch(1);
+		electionThread = new Thread(new Election(stopLatch), "leader-election-" + queueName);
+		electionThread.setDaemon(true);
+		electionThread.start();
+	}
+
+	@Override
+	public void onStop(final Route route) {
+		stopElection();
+	}
+
+	@Override
+	public void onRemove(final Route route) {
+		stopElection();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The poll is skipped unless this node is the leader and the queue has space, otherwise
+	 * the batch size is limited to the free space in the queue
+	 */
+	@Override
+	public boolean begin(final Consumer consumer, final Endpoint endpoint) {
+		if (!leader) {
+			return false;
+		}
+
+		final int available = queueCapacity - getQueue().size();
+		if (available <= 0) {
+			skippedPolls.incrementAndGet();
+			return false;
+		}
+
+		if (consumer instanceof ScheduledBatchPollingConsumer) {
+			((ScheduledBatchPollingConsumer)consumer).setMaxMessagesPerPoll(available);
+		}
+
+		return delegate.begin(consumer, endpoint);
+	}
+
+	@Override
+	public void commit(final Consumer consumer, final Endpoint endpoint, final int polledMessages) {
+		delegate.commit(consumer, endpoint, polledMessages);
+	}
+
+	@Override
+	public PollingConsumerPollStrategy getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public boolean rollback(final Consumer consumer, final Endpoint endpoint, final int retryCounter,
+			final Exception cause) throws Exception {
+		return delegate.rollback(consumer, endpoint, retryCounter, cause);
+	}
+
+	private void installPollStrategy(final Route route) {
+		if (route.getConsumer() instanceof ScheduledPollConsumer) {
+			final ScheduledPollConsumer consumer = (ScheduledPollConsumer)route.getConsumer();
+			final PollingConsumerPollStrategy current = consumer.getPollStrategy();
+			if (!PollStrategyChain.contains(current, this)) {
+				// not already registered by a previous start of the route
+				delegate = current != null ? current : new DefaultPollingConsumerPollStrategy();
+				consumer.setPollStrategy(this);
+			}
+		} else {
+			LOGGER.warn("Unable to control distribution - the consumer of route {} is not a polling consumer", route.getId());
+		}
+	}
+
+	private IQueue<Object> getQueue() {
+		return hazelcastInstance.getQueue(queueName);
+	}
+
+	private void stopElection() {
+		final Thread thread;
+		synchronized (this) {
+			thread = electionThread;
+			if (thread == null) {
+				return;
+			}
+
+			electionThread = null;
+			stopLatch.countDown();
+		}
+
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(30));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Repeatedly tries to acquire the election lock - once acquired the lock is held (by the election
+	 * thread) until the policy is stopped
+	 */
+	private class Election implements Runnable {
+		private final CountDownLatch stopped;
+
+		public Election(final CountDownLatch stopped) {
+			this.stopped = stopped;
+		}
+
+		@Override
+		public void run() {
+			while (stopped.getCount() > 0) {
+				try {
+					final ILock lock = hazelcastInstance.getLock(lockName);
+					if (lock.tryLock(1, TimeUnit.SECONDS)) {
+						try {
+							lead();
+						} finally {
+							leader = false;
+							lock.unlock();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (RuntimeException e) {
+					leader = false;
+					LOGGER.warn("Unable to elect document distribution leader for queue " + queueName, e);
+					try {
+						stopped.await(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException interrupted) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+
+		private void lead() throws InterruptedException {
+			LOGGER.info("Elected as document distribution leader for queue {}", queueName);
+			leader = true;
+			stopped.await();
+			LOGGER.info("Stepped down as document distribution leader for queue {}", queueName);
+		}
+	}
+}
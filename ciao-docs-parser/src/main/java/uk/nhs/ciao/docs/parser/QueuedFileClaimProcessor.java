@@ -0,0 +1,118 @@
+package uk.nhs.ciao.docs.parser;
+
+import static uk.nhs.ciao.docs.parser.HeaderNames.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.spi.Synchronization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+/**
+ * A camel processor which claims a file distributed via a queue (see {@link QueueDistributionPolicy}) and
+ * prepares the exchange as if the file had been polled by a file consumer.
+ * <p>
+ * The message body is the absolute path of the file. The file is claimed via the in-progress repository -
+ * if it is already claimed (e.g. the reference was distributed twice) or no longer exists, the exchange is
+ * stopped. Otherwise the body is replaced by the file and the standard <code>CamelFile*</code> headers are set.
+ * <p>
+ * Once the exchange completes the file is moved in the same way as the file consumer of the polling mode:
+ * to <code>${IN_PROGRESS_FOLDER}/input</code> on success, or <code>${ERROR_FOLDER}/input</code> on failure. The claim
+ * is then released.
+ */
+public class QueuedFileClaimProcessor implements Processor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueuedFileClaimProcessor.class);
+
+	private final IdempotentRepository<String> inProgressRepository;
+
+	public QueuedFileClaimProcessor(final IdempotentRepository<String> inProgressRepository) {
+		this.inProgressRepository = Preconditions.checkNotNull(inProgressRepository);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IOException If the message does not contain a file path
+	 */
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final Message message = exchange.getIn();
+		final String path = message.getBody(String.class);
+		if (Strings.isNullOrEmpty(path)) {
+			throw new IOException("Missing file path in message body");
+		}
+
+		if (!inProgressRepository.add(path)) {
+			LOGGER.debug("Skipping queued file - already claimed: {}", path);
+			exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+			return;
+		}
+
+		final File file = new File(path);
+		if (!file.isFile()) {
+			LOGGER.debug("Skipping queued file - no longer exists: {}", path);
+			inProgressRepository.remove(path);
+			exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+			return;
+		}
+
+		message.setBody(file);
+		message.setHeader(Exchange.FILE_NAME, file.getName());
+		message.setHeader(Exchange.FILE_NAME_ONLY, file.getName());
+		message.setHeader(Exchange.FILE_NAME_CONSUMED, file.getName());
+		message.setHeader(Exchange.FILE_PATH, file.getPath());
+		message.setHeader(Exchange.FILE_PARENT, file.getParent());
+		message.setHeader(Exchange.FILE_LENGTH, file.length());
+		message.setHeader(Exchange.FILE_LAST_MODIFIED, file.lastModified());
+
+		exchange.addOnCompletion(new MoveOnCompletion(path));
+	}
+
+	/**
+	 * Moves the claimed file out of the input folder and then releases the claim
+	 */
+	private class MoveOnCompletion implements Synchronization {
+		private final String path;
+
+		public MoveOnCompletion(final String path) {
+			this.path = path;
+		}
+
+		@Override
+		public void onComplete(final Exchange exchange) {
+			move(exchange, IN_PROGRESS_FOLDER);
+		}
+
+		@Override
+		public void onFailure(final Exchange exchange) {
+			move(exchange, ERROR_FOLDER);
+		}
+
+		private void move(final Exchange exchange, final String folderHeader) {
+			try {
+				final String folder = exchange.getIn().getHeader(folderHeader, String.class);
+				if (Strings.isNullOrEmpty(folder)) {
+					throw new IOException("Missing header " + folderHeader);
+				}
+
+				final File source = new File(path);
+				final File target = new File(folder, "input" + File.separator + source.getName());
+				Files.createParentDirs(target);
+				Files.move(source, target);
+			} catch (IOException e) {
+				LOGGER.warn("Unable to move queued file: " + path, e);
+			} finally {
+				inProgressRepository.remove(path);
+			}
+		}
+	}
+}
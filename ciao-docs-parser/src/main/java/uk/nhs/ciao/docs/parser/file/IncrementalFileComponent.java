@@ -0,0 +1,33 @@
+package uk.nhs.ciao.docs.parser.file;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.camel.component.file.FileComponent;
+import org.apache.camel.component.file.FileEndpoint;
+import org.apache.camel.component.file.GenericFileEndpoint;
+
+/**
+ * Camel file component which creates {@link IncrementalFileEndpoint}s.
+ * <p>
+ * Endpoint URIs take the same form (and options) as the standard <code>file</code> component, for
+ * example: <code>incremental-file://input?cursorFile=input/.listing-cursor</code>
+ */
+public class IncrementalFileComponent extends FileComponent {
+	/**
+	 * The scheme the component is registered under by default
+	 */
+	public static final String SCHEME = "incremental-file";
+	
+	@Override
+	protected GenericFileEndpoint<File> buildFileEndpoint(final String uri, final String remaining,
+			final Map<String, Object> parameters) throws Exception {
+		// Let the file component resolve the starting directory - then transfer it to the incremental endpoint
+		final FileEndpoint fileEndpoint = (FileEndpoint)super.buildFileEndpoint(uri, remaining, parameters);
+		
+		final IncrementalFileEndpoint endpoint = new IncrementalFileEndpoint(uri, this);
+		endpoint.setFile(fileEndpoint.getFile());
+		endpoint.setConfiguration(fileEndpoint.getConfiguration());
+		return endpoint;
+	}
+}
@@ -0,0 +1,326 @@
+package uk.nhs.ciao.docs.parser.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.FileComponent;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ComparisonChain;
+
+/**
+ * File consumer which lists its starting directory incrementally.
+ * <p>
+ * The standard file consumer lists (and checks against the idempotent repositories) every file in the
+ * directory on each poll. When a large backlog builds up most of each poll is spent re-listing files which
+ * will not fit in the batch. Instead this consumer keeps a cursor - the <code>(lastModified, name)</code> of
+ * the last file passed to the route - and on each poll:
+ * <ul>
+ * <li>Streams the directory entries lazily via a {@link DirectoryStream} - entries are never all held in memory</li>
+ * <li>Ignores entries at or before the cursor</li>
+ * <li>Keeps the oldest <code>scanBatchSize</code> (or <code>maxMessagesPerPoll</code> if larger) remaining entries
+ * in a bounded heap</li>
+ * <li>Creates files, checks them against the repositories and passes them to the route only for that batch</li>
+ * <li>Once the batch has been processed, advances the cursor past the leading entries which the route began
+ * processing (or which are already in the idempotent repository) - the cursor stops at the first entry which was
+ * rejected (e.g. in progress on another consumer) or was not begun (e.g. the read lock was not acquired), so that
+ * entry is considered again by the next poll</li>
+ * </ul>
+ * The cursor is persisted to the <code>cursorFile</code> (if configured) whenever it changes, so a restarted
+ * consumer resumes where it stopped. The cursor file should be outside of the listed directory - e.g. writes to a
+ * watched directory would trigger further polls.
+ * <p>
+ * Files created with an older modification time than the cursor are picked up by a full rescan, which restarts
+ * the cursor every <code>rescanInterval</code>. The poll of a rescan advances the cursor past every entry it
+ * considers - files which can never be consumed (e.g. already consumed by a <code>noop</code> endpoint) only
+ * hold the cursor until the next rescan.
+ * <p>
+ * Only the starting directory is listed incrementally - recursive endpoints and endpoints using done files
+ * are polled using the standard listing.
+ */
+public class IncrementalFileConsumer extends FileConsumer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalFileConsumer.class);
+
+	private final IncrementalFileEndpoint endpoint;
+	private Cursor cursor;
+	private Cursor savedCursor;
+	private long lastRescan;
+
+	// State of the current poll - only accessed by the polling thread
+	private final List<Entry> consideredEntries = new ArrayList<Entry>();
+	private final Set<String> begunFiles = new HashSet<String>();
+	private boolean rescanning;
+
+	public IncrementalFileConsumer(final IncrementalFileEndpoint endpoint, final Processor processor,
+			final GenericFileOperations<File> operations) {
+		super(endpoint, processor, operations);
+		this.endpoint = endpoint;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		cursor = loadCursor();
+		savedCursor = cursor;
+		lastRescan = System.currentTimeMillis();
+		super.doStart();
+	}
+
+	@Override
+	protected boolean pollDirectory(final String fileName, final List<GenericFile<File>> fileList, final int depth) {
+		if (endpoint.isRecursive() || endpoint.getDoneFileName() != null) {
+			return super.pollDirectory(fileName, fileList, depth);
+		}
+
+		final Path directory = Paths.get(fileName);
+		if (!Files.isDirectory(directory)) {
+			return true;
+		}
+
+		consideredEntries.clear();
+		begunFiles.clear();
+		rescanning = false;
+
+		final long now = System.currentTimeMillis();
+		if (now - lastRescan >= endpoint.getRescanInterval()) {
+			LOGGER.debug("Restarting listing cursor for a full rescan of {}", directory);
+			cursor = Cursor.START;
+			lastRescan = now;
+			rescanning = true;
+		}
+
+		// Entries held by the cursor (e.g. claimed by another consumer) should not use up the whole batch
+		final List<Entry> batch;
+		try {
+			batch = listBatch(directory, Math.max(getMaxMessagesPerPoll(), endpoint.getScanBatchSize()));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to list directory: " + directory, e);
+			return true;
+		}
+
+		final List<File> files = new ArrayList<File>(batch.size());
+		for (final Entry entry: batch) {
+			files.add(entry.path.toFile());
+		}
+
+		final String endpointPath = endpoint.getConfiguration().getDirectory();
+		for (int index = 0; index < batch.size(); index++) {
+			if (!canPollMoreFiles(fileList)) {
+				break;
+			}
+
+			final GenericFile<File> file = asGenericFile(endpointPath, files.get(index), endpoint.getCharset());
+			if (isValidFile(file, false, files)) {
+				fileList.add(file);
+			}
+			consideredEntries.add(batch.get(index));
+		}
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Records the files which the route has begun to process
+	 */
+	@Override
+	protected boolean processExchange(final Exchange exchange) {
+		final boolean begun = super.processExchange(exchange);
+		if (begun) {
+			final GenericFile<?> file = exchange.getProperty(FileComponent.FILE_EXCHANGE_FILE, GenericFile.class);
+			if (file != null) {
+				begunFiles.add(file.getAbsoluteFilePath());
+			}
+		}
+		return begun;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The cursor is advanced once the batch has been processed
+	 */
+	@Override
+	public int processBatch(final Queue<Object> exchanges) {
+		try {
+			return super.processBatch(exchanges);
+		} finally {
+			advanceCursor();
+		}
+	}
+
+	/**
+	 * Advances the cursor past the leading entries of the poll which were begun or already consumed - or past
+	 * every considered entry during a rescan
+	 */
+	private void advanceCursor() {
+		for (final Entry entry: consideredEntries) {
+			final String key = entry.path.toFile().getAbsolutePath();
+			if (!rescanning && !begunFiles.contains(key) && !isConsumed(key)) {
+				break;
+			}
+			cursor = entry.cursor;
+		}
+
+		consideredEntries.clear();
+		begunFiles.clear();
+		saveCursor();
+	}
+
+	/**
+	 * Tests if the file is known to the idempotent repository - it will not be consumed again so should not hold
+	 * the cursor
+	 */
+	private boolean isConsumed(final String absoluteFilePath) {
+		return endpoint.isIdempotent() && endpoint.getIdempotentKey() == null
+				&& endpoint.getIdempotentRepository().contains(absoluteFilePath);
+	}
+
+	/**
+	 * Streams the directory entries, returning the (sorted) oldest entries after the cursor
+	 */
+	private List<Entry> listBatch(final Path directory, final int batchSize) throws IOException {
+		// Max-heap - the newest entry is evicted once the batch is full
+		final PriorityQueue<Entry> heap = new PriorityQueue<Entry>(batchSize + 1, Collections.reverseOrder());
+		final DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+		try {
+			for (final Path path: stream) {
+				final String name = path.getFileName().toString();
+				if (name.startsWith(".")) {
+					continue;
+				}
+
+				final BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					continue; // removed since listed
+				}
+
+				if (!attributes.isRegularFile()) {
+					continue;
+				}
+
+				final Cursor position = new Cursor(attributes.lastModifiedTime().toMillis(), name);
+				if (position.compareTo(cursor) <= 0) {
+					continue;
+				}
+
+				heap.add(new Entry(position, path));
+				if (heap.size() > batchSize) {
+					heap.poll();
+				}
+			}
+		} finally {
+			stream.close();
+		}
+
+		final List<Entry> batch = new ArrayList<Entry>(heap);
+		Collections.sort(batch);
+		return batch;
+	}
+
+	private Cursor loadCursor() {
+		final File cursorFile = endpoint.getCursorFile();
+		if (cursorFile == null || !cursorFile.isFile()) {
+			return Cursor.START;
+		}
+
+		try {
+			final String value = new String(Files.readAllBytes(cursorFile.toPath()), Charsets.UTF_8);
+			final int separator = value.indexOf('\t');
+			return new Cursor(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+		} catch (Exception e) {
+			LOGGER.warn("Unable to read listing cursor - restarting from the beginning: " + cursorFile, e);
+			return Cursor.START;
+		}
+	}
+
+	/**
+	 * Writes the cursor to a temporary file and renames it into place - unless it is unchanged since it was
+	 * last saved
+	 */
+	private void saveCursor() {
+		final File cursorFile = endpoint.getCursorFile();
+		if (cursorFile == null || cursor.compareTo(savedCursor) == 0) {
+			return;
+		}
+
+		try {
+			final Path target = cursorFile.toPath();
+			final Path tempFile = target.resolveSibling("." + target.getFileName() + ".tmp");
+			Files.write(tempFile, (cursor.lastModified + "\t" + cursor.name).getBytes(Charsets.UTF_8));
+			try {
+				Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			savedCursor = cursor;
+		} catch (IOException e) {
+			LOGGER.warn("Unable to save listing cursor: " + cursorFile, e);
+		}
+	}
+
+	/**
+	 * Position of an entry in the listing order
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+		public static final Cursor START = new Cursor(Long.MIN_VALUE, "");
+
+		private final long lastModified;
+		private final String name;
+
+		public Cursor(final long lastModified, final String name) {
+			this.lastModified = lastModified;
+			this.name = name;
+		}
+
+		@Override
+		public int compareTo(final Cursor other) {
+			return ComparisonChain.start()
+					.compare(lastModified, other.lastModified)
+					.compare(name, other.name)
+					.result();
+		}
+	}
+
+	/**
+	 * Directory entry selected for the current batch
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private final Cursor cursor;
+		private final Path path;
+
+		public Entry(final Cursor cursor, final Path path) {
+			this.cursor = cursor;
+			this.path = path;
+		}
+
+		@Override
+		public int compareTo(final Entry other) {
+			return cursor.compareTo(other.cursor);
+		}
+	}
+}
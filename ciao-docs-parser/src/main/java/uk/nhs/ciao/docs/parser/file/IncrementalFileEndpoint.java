@@ -0,0 +1,65 @@
+package uk.nhs.ciao.docs.parser.file;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.FileEndpoint;
+import org.apache.camel.component.file.GenericFileOperations;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * File endpoint whose consumer lists the starting directory incrementally (see {@link IncrementalFileConsumer}).
+ * <p>
+ * In addition to the standard file endpoint options, the following options are supported:
+ * <ul>
+ * <li><code>cursorFile</code> - the file the listing cursor is persisted to (optional - the cursor is
+ * only held in memory if not specified)</li>
+ * <li><code>rescanInterval</code> - the interval in milliseconds between full rescans of the directory
+ * (default 5 minutes)</li>
+ * <li><code>scanBatchSize</code> - the number of entries after the cursor considered per poll - the number of
+ * files passed to the route is still limited by <code>maxMessagesPerPoll</code> (default 1000)</li>
+ * </ul>
+ */
+public class IncrementalFileEndpoint extends FileEndpoint {
+	private File cursorFile;
+	private long rescanInterval = TimeUnit.MINUTES.toMillis(5);
+	private int scanBatchSize = 1000;
+	
+	public IncrementalFileEndpoint(final String endpointUri, final IncrementalFileComponent component) {
+		super(endpointUri, component);
+	}
+	
+	public File getCursorFile() {
+		return cursorFile;
+	}
+	
+	public void setCursorFile(final File cursorFile) {
+		this.cursorFile = cursorFile;
+	}
+	
+	public long getRescanInterval() {
+		return rescanInterval;
+	}
+	
+	public void setRescanInterval(final long rescanInterval) {
+		Preconditions.checkArgument(rescanInterval > 0, "rescanInterval must be positive");
+		this.rescanInterval = rescanInterval;
+	}
+	
+	public int getScanBatchSize() {
+		return scanBatchSize;
+	}
+	
+	public void setScanBatchSize(final int scanBatchSize) {
+		Preconditions.checkArgument(scanBatchSize > 0, "scanBatchSize must be positive");
+		this.scanBatchSize = scanBatchSize;
+	}
+	
+	@Override
+	protected FileConsumer newFileConsumer(final Processor processor, final GenericFileOperations<File> operations) {
+		return new IncrementalFileConsumer(this, processor, operations);
+	}
+}
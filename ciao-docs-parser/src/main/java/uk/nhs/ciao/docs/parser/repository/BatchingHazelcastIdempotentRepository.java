@@ -0,0 +1,279 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+
+/**
+ * {@link IdempotentRepository} backed by a Hazelcast map which reduces the number of remote
+ * operations made per poll.
+ * <p>
+ * Two techniques are used:
+ * <ul>
+ * <li><strong>Batch claims</strong> - keys added concurrently (e.g. by multiple consumers of the same node)
+ * are combined and claimed by a single {@link IMap#executeOnKeys(java.util.Set, com.hazelcast.map.EntryProcessor)} call.
+ * The first caller claims all keys queued so far, while later callers queue their keys for the next batch.
+ * <li><strong>Near-cache</strong> - keys known to be claimed (by this node or another node) are cached locally for
+ * <code>nearCacheTimeToLive</code>. Checks for these keys are answered without a remote call.
+ * </ul>
+ * The near-cache only holds positive results - a key which is not cached is always checked against
+ * the cluster. Keys removed by another node may still be reported as claimed by this node until the cached
+ * entry expires, so the near-cache time-to-live should be shorter than the time-to-live of the map.
+ * <p>
+ * Entries are stored using the same map layout as Camel's <code>HazelcastIdempotentRepository</code>.
+ */
+@ManagedResource(description = "Batching Hazelcast idempotent repository")
+public class BatchingHazelcastIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+	private final HazelcastInstance hazelcastInstance;
+	private final String mapName;
+	private final Queue<PendingClaim> pendingClaims;
+	private final Lock batchLock;
+	private final AtomicLong claims;
+	private final AtomicLong batches;
+	private final AtomicLong nearCacheHits;
+	private int maxBatchSize = 256;
+	private long nearCacheTimeToLive = TimeUnit.SECONDS.toMillis(10);
+	private int nearCacheMaxSize = 10000;
+	private volatile IMap<String, Boolean> map;
+	private volatile Cache<String, Boolean> nearCache;
+
+	public BatchingHazelcastIdempotentRepository(final HazelcastInstance hazelcastInstance, final String mapName) {
+		this.hazelcastInstance = Preconditions.checkNotNull(hazelcastInstance);
+		this.mapName = Preconditions.checkNotNull(mapName);
+		this.pendingClaims = new ConcurrentLinkedQueue<PendingClaim>();
+		this.batchLock = new ReentrantLock();
+		this.claims = new AtomicLong();
+		this.batches = new AtomicLong();
+		this.nearCacheHits = new AtomicLong();
+	}
+
+	/**
+	 * The maximum number of keys claimed by a single remote call (default 256)
+	 */
+	public void setMaxBatchSize(final int maxBatchSize) {
+		Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * How long claimed keys are cached locally (default 10 seconds) - 0 disables the near-cache
+	 */
+	public void setNearCacheTimeToLiveSeconds(final long nearCacheTimeToLiveSeconds) {
+		Preconditions.checkArgument(nearCacheTimeToLiveSeconds >= 0, "nearCacheTimeToLiveSeconds must not be negative");
+		this.nearCacheTimeToLive = TimeUnit.SECONDS.toMillis(nearCacheTimeToLiveSeconds);
+	}
+
+	/**
+	 * The maximum number of keys held in the near-cache (default 10000)
+	 */
+	public void setNearCacheMaxSize(final int nearCacheMaxSize) {
+		Preconditions.checkArgument(nearCacheMaxSize >= 0, "nearCacheMaxSize must not be negative");
+		this.nearCacheMaxSize = nearCacheMaxSize;
+	}
+
+	@ManagedAttribute(description = "The name of the Hazelcast map backing the repository")
+	public String getMapName() {
+		return mapName;
+	}
+
+	@ManagedAttribute(description = "The number of keys claimed")
+	public long getClaims() {
+		return claims.get();
+	}
+
+	@ManagedAttribute(description = "The number of remote batch claim calls")
+	public long getBatches() {
+		return batches.get();
+	}
+
+	@ManagedAttribute(description = "The number of checks answered by the near-cache")
+	public long getNearCacheHits() {
+		return nearCacheHits.get();
+	}
+
+	@Override
+	@ManagedOperation(description = "Adds the key to the repository")
+	public boolean add(final String key) {
+		checkStarted();
+
+		if (isNearCached(key)) {
+			return false;
+		}
+
+		final PendingClaim claim = new PendingClaim(key);
+		pendingClaims.add(claim);
+
+		// Whoever holds the lock claims all queued keys - including those queued while waiting for the lock.
+		// A batch is limited to maxBatchSize keys, so more than one batch may be needed to reach this claim
+		batchLock.lock();
+		try {
+			while (!claim.done) {
+				claimBatch();
+			}
+		} finally {
+			batchLock.unlock();
+		}
+
+		if (claim.failure != null) {
+			throw claim.failure;
+		}
+		return claim.claimed;
+	}
+
+	@Override
+	@ManagedOperation(description = "Does the repository contain the key")
+	public boolean contains(final String key) {
+		checkStarted();
+
+		if (isNearCached(key)) {
+			return true;
+		}
+
+		final boolean found = map.containsKey(key);
+		if (found) {
+			nearCache.put(key, Boolean.TRUE);
+		}
+		return found;
+	}
+
+	@Override
+	@ManagedOperation(description = "Removes the key from the repository")
+	public boolean remove(final String key) {
+		checkStarted();
+
+		nearCache.invalidate(key);
+		return map.remove(key) != null;
+	}
+
+	@Override
+	public boolean confirm(final String key) {
+		// noop
+		return true;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		nearCache = CacheBuilder.newBuilder()
+				.expireAfterWrite(nearCacheTimeToLive, TimeUnit.MILLISECONDS)
+				.maximumSize(nearCacheMaxSize)
+				.build();
+		map = hazelcastInstance.getMap(mapName);
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		map = null;
+		if (nearCache != null) {
+			nearCache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Claims queued keys via a single remote call
+	 * <p>
+	 * Must be called while holding the batch lock
+	 */
+	private void claimBatch() {
+		// Only the first claim of a key in the batch can succeed
+		final Map<String, PendingClaim> batch = new LinkedHashMap<String, PendingClaim>();
+		final List<PendingClaim> duplicates = new ArrayList<PendingClaim>();
+		PendingClaim claim;
+		while (batch.size() < maxBatchSize && (claim = pendingClaims.poll()) != null) {
+			if (batch.containsKey(claim.key)) {
+				duplicates.add(claim);
+			} else {
+				batch.put(claim.key, claim);
+			}
+		}
+
+		try {
+			final Map<String, Object> results = map.executeOnKeys(batch.keySet(), new ClaimEntryProcessor());
+			batches.incrementAndGet();
+			for (final PendingClaim pending: batch.values()) {
+				pending.claimed = Boolean.TRUE.equals(results.get(pending.key));
+				if (pending.claimed) {
+					claims.incrementAndGet();
+				}
+				nearCache.put(pending.key, Boolean.TRUE);
+			}
+		} catch (RuntimeException e) {
+			for (final PendingClaim pending: batch.values()) {
+				pending.failure = e;
+			}
+		} finally {
+			for (final PendingClaim pending: batch.values()) {
+				pending.done = true;
+			}
+			for (final PendingClaim duplicate: duplicates) {
+				duplicate.done = true;
+			}
+		}
+	}
+
+	private boolean isNearCached(final String key) {
+		final boolean cached = nearCache.getIfPresent(key) != null;
+		if (cached) {
+			nearCacheHits.incrementAndGet();
+		}
+		return cached;
+	}
+
+	private void checkStarted() {
+		if (map == null) {
+			throw new IllegalStateException("Idempotent repository is not started: " + mapName);
+		}
+	}
+
+	/**
+	 * Key waiting to be claimed
+	 * <p>
+	 * Fields are only accessed while holding the batch lock
+	 */
+	private static class PendingClaim {
+		private final String key;
+		private boolean done;
+		private boolean claimed;
+		private RuntimeException failure;
+
+		public PendingClaim(final String key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Claims an entry if it is not already present - runs on the member owning the entry
+	 */
+	private static class ClaimEntryProcessor extends AbstractEntryProcessor<String, Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object process(final Map.Entry<String, Boolean> entry) {
+			if (entry.getValue() != null) {
+				return Boolean.FALSE;
+			}
+
+			entry.setValue(Boolean.FALSE);
+			return Boolean.TRUE;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+
+import uk.nhs.ciao.util.Clock;
+import uk.nhs.ciao.util.SystemClock;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * In-memory {@link IdempotentRepository} which supports high levels of concurrency.
+ * <p>
+ * Keys are stored in a {@link ConcurrentHashMap} (mapped to their expiry time) and all operations
+ * are lock-free - unlike <code>MemoryIdempotentRepository</code> which synchronises on a single map.
+ * <p>
+ * Entries expire after <code>timeToLive</code>. Expiry is tracked using a time wheel: each added key
+ * is queued in the bucket of the tick it expires in. Expired buckets are swept as part of subsequent
+ * operations (by a single thread at a time), so expired entries are removed without scanning the
+ * whole map or running a background thread.
+ */
+@ManagedResource(description = "Concurrent idempotent repository")
+public class ConcurrentIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+	private final ConcurrentMap<String, Long> entries;
+	private final AtomicBoolean sweeping;
+	private long timeToLive = TimeUnit.MINUTES.toMillis(10);
+	private long tickDuration = TimeUnit.SECONDS.toMillis(1);
+	private Clock clock = SystemClock.getInstance();
+	private volatile Queue<String>[] wheel;
+	private volatile long lastSweptTick;
+
+	public ConcurrentIdempotentRepository() {
+		this.entries = new ConcurrentHashMap<String, Long>(1024, 0.75f, 64);
+		this.sweeping = new AtomicBoolean();
+	}
+
+	/**
+	 * How long an entry remains in the repository (default 10 minutes)
+	 */
+	public void setTimeToLiveSeconds(final long timeToLiveSeconds) {
+		Preconditions.checkArgument(timeToLiveSeconds > 0, "timeToLiveSeconds must be positive");
+		this.timeToLive = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+	}
+
+	/**
+	 * The resolution of the expiry time wheel (default 1000 milliseconds)
+	 */
+	public void setTickDurationMillis(final long tickDuration) {
+		Preconditions.checkArgument(tickDuration > 0, "tickDuration must be positive");
+		this.tickDuration = tickDuration;
+	}
+
+	public void setClock(final Clock clock) {
+		this.clock = Preconditions.checkNotNull(clock);
+	}
+
+	@ManagedAttribute(description = "The number of entries in the repository (including expired entries waiting to be swept)")
+	public int getSize() {
+		return entries.size();
+	}
+
+	@Override
+	@ManagedOperation(description = "Adds the key to the repository")
+	public boolean add(final String key) {
+		final long now = clock.getMillis();
+		expireEntries(now);
+
+		final Long expires = now + timeToLive;
+		boolean added = false;
+		while (!added) {
+			final Long existing = entries.putIfAbsent(key, expires);
+			if (existing == null) {
+				added = true;
+			} else if (existing > now) {
+				return false;
+			} else {
+				// The existing entry has expired but not yet been swept - replace it
+				added = entries.replace(key, existing, expires);
+			}
+		}
+
+		scheduleExpiry(key, expires);
+		return true;
+	}
+
+	@Override
+	@ManagedOperation(description = "Does the repository contain the key")
+	public boolean contains(final String key) {
+		final Long expires = entries.get(key);
+		return expires != null && expires > clock.getMillis();
+	}
+
+	@Override
+	@ManagedOperation(description = "Removes the key from the repository")
+	public boolean remove(final String key) {
+		final Long expires = entries.remove(key);
+		return expires != null && expires > clock.getMillis();
+	}
+
+	@Override
+	public boolean confirm(final String key) {
+		// noop
+		return true;
+	}
+
+	/**
+	 * Removes all entries from the repository
+	 */
+	@ManagedOperation(description = "Clear the repository")
+	public void clear() {
+		entries.clear();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void doStart() throws Exception {
+		// Enough buckets to cover the time-to-live (plus the current tick)
+		final int buckets = (int)Math.min(Integer.MAX_VALUE - 1, (timeToLive + tickDuration - 1) / tickDuration) + 1;
+		final Queue<String>[] newWheel = new Queue[buckets];
+		for (int index = 0; index < buckets; index++) {
+			newWheel[index] = new ConcurrentLinkedQueue<String>();
+		}
+
+		lastSweptTick = clock.getMillis() / tickDuration;
+		wheel = newWheel;
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		entries.clear();
+		wheel = null;
+	}
+
+	private void scheduleExpiry(final String key, final long expires) {
+		final Queue<String>[] currentWheel = wheel;
+		if (currentWheel != null) {
+			currentWheel[bucketIndex(currentWheel, expires / tickDuration)].add(key);
+		}
+	}
+
+	/**
+	 * Sweeps the buckets of all ticks which have passed since the previous sweep
+	 * <p>
+	 * Only one thread sweeps at a time - other threads continue without waiting
+	 */
+	private void expireEntries(final long now) {
+		final Queue<String>[] currentWheel = wheel;
+		final long currentTick = now / tickDuration;
+		if (currentWheel == null || currentTick <= lastSweptTick || !sweeping.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			// Sweeping more than one revolution would visit the same buckets again
+			final long firstTick = Math.max(lastSweptTick + 1, currentTick - currentWheel.length + 1);
+			for (long tick = firstTick; tick <= currentTick; tick++) {
+				sweepBucket(currentWheel, currentWheel[bucketIndex(currentWheel, tick)], now);
+			}
+			lastSweptTick = currentTick;
+		} finally {
+			sweeping.set(false);
+		}
+	}
+
+	private void sweepBucket(final Queue<String>[] currentWheel, final Queue<String> bucket, final long now) {
+		// Only visit the keys which were in the bucket when the sweep started
+		for (int remaining = bucket.size(); remaining > 0; remaining--) {
+			final String key = bucket.poll();
+			if (key == null) {
+				break;
+			}
+
+			final Long expires = entries.get(key);
+			if (expires == null) {
+				continue;
+			} else if (expires <= now) {
+				entries.remove(key, expires);
+			} else if (bucketIndex(currentWheel, expires / tickDuration) == bucketIndex(currentWheel, now / tickDuration)) {
+				// Expires in a later revolution of the wheel - keep it in this bucket
+				bucket.add(key);
+			}
+			// else: the key was re-added and is scheduled in another bucket
+		}
+	}
+
+	private static int bucketIndex(final Queue<String>[] currentWheel, final long tick) {
+		return (int)(tick % currentWheel.length);
+	}
+}
@@ -0,0 +1,351 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+
+import uk.nhs.ciao.util.Clock;
+import uk.nhs.ciao.util.SystemClock;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * {@link IdempotentRepository} backed by a memory-mapped file.
+ * <p>
+ * Keys are stored as 128-bit digests in a fixed-size open-addressing hash table (linear probing) which
+ * lives entirely in the mapped file - entries do not occupy the Java heap and survive restarts of the
+ * application. Each slot has the layout:
+ * <pre>
+ * digest  - 16 bytes (murmur3 128-bit hash of the key)
+ * expires - 8 bytes: 0 = empty, -1 = removed, otherwise the expiry time (epoch millis)
+ * </pre>
+ * The expiry is written after the digest, so a slot only becomes visible once it has been fully
+ * written. Entries expire after <code>timeToLive</code>.
+ * <p>
+ * Removed and expired slots are reclaimed by shifting later entries of the probe sequence back into
+ * the gap (backward-shift deletion) - removals reclaim their slot immediately and adds reclaim the
+ * expired slots along their probe sequence. Slots are therefore returned to empty, and probes for
+ * missing keys stop at the first empty slot rather than scanning an ever-growing run of dead slots.
+ * <p>
+ * Changes are visible in the file as soon as they are made (surviving a crash of the JVM). The file
+ * is synced to disk when the repository is stopped - setting <code>syncOnWrite</code> also syncs after
+ * every change, protecting against a crash of the operating system at the cost of throughput.
+ */
+@ManagedResource(description = "Memory-mapped idempotent repository")
+public class MappedIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+	private static final int MAGIC = 0x43495231; // CIR1
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 24;
+	private static final int MAX_CAPACITY = 1 << 26;
+	private static final long EMPTY = 0;
+	private static final long REMOVED = -1;
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final File file;
+	private int capacity = 1 << 20;
+	private long timeToLive = TimeUnit.DAYS.toMillis(1);
+	private boolean syncOnWrite;
+	private Clock clock = SystemClock.getInstance();
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Creates a new repository backed by the specified file
+	 * <p>
+	 * The file is created (or opened) when the repository is started
+	 */
+	public MappedIdempotentRepository(final String file) {
+		this.file = new File(Preconditions.checkNotNull(file));
+	}
+
+	/**
+	 * The number of slots in the table - rounded up to a power of two (default 1048576)
+	 * <p>
+	 * The capacity of an existing file is retained
+	 */
+	public void setCapacity(final int capacity) {
+		Preconditions.checkArgument(capacity > 0 && capacity <= MAX_CAPACITY, "capacity must be between 1 and " + MAX_CAPACITY);
+		this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+		if (this.capacity == 0) {
+			this.capacity = 1;
+		}
+	}
+
+	/**
+	 * How long an entry remains in the repository (default one day)
+	 */
+	public void setTimeToLiveSeconds(final long timeToLiveSeconds) {
+		Preconditions.checkArgument(timeToLiveSeconds > 0, "timeToLiveSeconds must be positive");
+		this.timeToLive = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+	}
+
+	public void setSyncOnWrite(final boolean syncOnWrite) {
+		this.syncOnWrite = syncOnWrite;
+	}
+
+	public void setClock(final Clock clock) {
+		this.clock = Preconditions.checkNotNull(clock);
+	}
+
+	@ManagedAttribute(description = "The file backing the repository")
+	public String getFileName() {
+		return file.getAbsolutePath();
+	}
+
+	@ManagedAttribute(description = "The number of slots in the repository")
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The number of live (unexpired) entries - calculated by scanning the table
+	 */
+	@ManagedAttribute(description = "The number of live entries in the repository")
+	public synchronized int getSize() {
+		checkStarted();
+
+		final long now = clock.getMillis();
+		int size = 0;
+		for (int index = 0; index < capacity; index++) {
+			if (isLive(buffer.getLong(slotOffset(index) + 16), now)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	@ManagedOperation(description = "Adds the key to the repository")
+	public synchronized boolean add(final String key) {
+		checkStarted();
+
+		final HashCode digest = HASH_FUNCTION.hashString(key, Charsets.UTF_8);
+		final long high = digest.asLong();
+		final long low = lowBits(digest);
+		final long now = clock.getMillis();
+
+		final int home = (int)high & (capacity - 1);
+		int index = home;
+		int probe = 0;
+		boolean reclaimed = false;
+		while (probe < capacity) {
+			final int offset = slotOffset(index);
+			final long expires = buffer.getLong(offset + 16);
+			if (expires == EMPTY) {
+				buffer.putLong(offset, high);
+				buffer.putLong(offset + 8, low);
+				buffer.putLong(offset + 16, now + timeToLive);
+				sync();
+				return true;
+			} else if (!isLive(expires, now)) {
+				// Entries are shifted back into the reclaimed slot - once the sequence wraps this can include slots
+				// which were already probed, so the sequence is probed again from the start
+				freeSlot(index, now);
+				reclaimed = true;
+				index = home;
+				probe = 0;
+			} else if (buffer.getLong(offset) == high && buffer.getLong(offset + 8) == low) {
+				if (reclaimed) {
+					sync();
+				}
+				return false;
+			} else {
+				index = (index + 1) & (capacity - 1);
+				probe++;
+			}
+		}
+
+		if (reclaimed) {
+			sync();
+		}
+		throw new IllegalStateException("Idempotent repository is full: " + file);
+	}
+
+	@Override
+	@ManagedOperation(description = "Does the repository contain the key")
+	public synchronized boolean contains(final String key) {
+		checkStarted();
+
+		final HashCode digest = HASH_FUNCTION.hashString(key, Charsets.UTF_8);
+		return find(digest.asLong(), lowBits(digest), clock.getMillis()) >= 0;
+	}
+
+	@Override
+	@ManagedOperation(description = "Removes the key from the repository")
+	public synchronized boolean remove(final String key) {
+		checkStarted();
+
+		final HashCode digest = HASH_FUNCTION.hashString(key, Charsets.UTF_8);
+		final long now = clock.getMillis();
+		final int index = find(digest.asLong(), lowBits(digest), now);
+		if (index < 0) {
+			return false;
+		}
+
+		buffer.putLong(slotOffset(index) + 16, REMOVED);
+		freeSlot(index, now);
+		sync();
+		return true;
+	}
+
+	@Override
+	public boolean confirm(final String key) {
+		// noop
+		return true;
+	}
+
+	/**
+	 * Removes all entries from the repository
+	 */
+	@ManagedOperation(description = "Clear the repository")
+	public synchronized void clear() {
+		checkStarted();
+
+		for (int index = 0; index < capacity; index++) {
+			buffer.putLong(slotOffset(index) + 16, EMPTY);
+		}
+		sync();
+	}
+
+	@Override
+	protected synchronized void doStart() throws Exception {
+		Files.createParentDirs(file);
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			final boolean exists = randomAccessFile.length() >= HEADER_SIZE;
+			if (exists) {
+				if (randomAccessFile.readInt() != MAGIC) {
+					throw new IOException("Not an idempotent repository file: " + file);
+				}
+				capacity = randomAccessFile.readInt();
+				if (capacity <= 0 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+					throw new IOException("Invalid capacity " + capacity + " in idempotent repository file: " + file);
+				}
+			}
+
+			final long size = HEADER_SIZE + (long)capacity * SLOT_SIZE;
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+			if (!exists) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, capacity);
+				buffer.force();
+			}
+		} finally {
+			// The mapping remains valid after the file is closed
+			Closeables.close(randomAccessFile, true);
+		}
+	}
+
+	@Override
+	protected synchronized void doStop() throws Exception {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Returns the index of the live slot containing the digest, or -1 if it is not present
+	 */
+	private int find(final long high, final long low, final long now) {
+		int index = (int)high & (capacity - 1);
+		for (int probe = 0; probe < capacity; probe++) {
+			final int offset = slotOffset(index);
+			final long expires = buffer.getLong(offset + 16);
+			if (expires == EMPTY) {
+				return -1;
+			} else if (isLive(expires, now) && buffer.getLong(offset) == high && buffer.getLong(offset + 8) == low) {
+				return index;
+			}
+
+			index = (index + 1) & (capacity - 1);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Empties the (removed or expired) slot at the specified index, shifting back any later live entries
+	 * of the probe sequence which would no longer be reachable from their home slot.
+	 * <p>
+	 * Once the probe sequence wraps, entries before the gap may also depend on it - so the scan continues until
+	 * an empty slot is found or the scan reaches the gap. Each move brings an entry closer to its home slot,
+	 * so the scan always terminates.
+	 * <p>
+	 * The table remains consistent if the process stops at any point: each entry is copied into the gap
+	 * before its original slot is marked as removed, and only the final gap is emptied.
+	 */
+	private void freeSlot(final int index, final long now) {
+		final int mask = capacity - 1;
+		int gap = index;
+		int next = (index + 1) & mask;
+		for (; next != gap; next = (next + 1) & mask) {
+			final int offset = slotOffset(next);
+			final long expires = buffer.getLong(offset + 16);
+			if (expires == EMPTY) {
+				break;
+			} else if (!isLive(expires, now)) {
+				continue;
+			}
+
+			// Move the entry unless its home slot lies between the gap and its current slot
+			final long high = buffer.getLong(offset);
+			final int home = (int)high & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				final int gapOffset = slotOffset(gap);
+				buffer.putLong(gapOffset, high);
+				buffer.putLong(gapOffset + 8, buffer.getLong(offset + 8));
+				buffer.putLong(gapOffset + 16, expires);
+				buffer.putLong(offset + 16, REMOVED);
+				gap = next;
+			}
+		}
+
+		buffer.putLong(slotOffset(gap) + 16, EMPTY);
+	}
+
+	private static boolean isLive(final long expires, final long now) {
+		return expires > now;
+	}
+
+	private static long lowBits(final HashCode digest) {
+		final byte[] bytes = digest.asBytes();
+		long value = 0;
+		for (int index = 15; index >= 8; index--) {
+			value = (value << 8) | (bytes[index] & 0xffL);
+		}
+		return value;
+	}
+
+	private static int slotOffset(final int index) {
+		return HEADER_SIZE + index * SLOT_SIZE;
+	}
+
+	private void checkStarted() {
+		if (buffer == null) {
+			throw new IllegalStateException("Idempotent repository is not started: " + file);
+		}
+	}
+
+	private void sync() {
+		if (syncOnWrite) {
+			buffer.force();
+		}
+	}
+}
@@ -11,11 +11,17 @@ import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.camel.CamelContext;
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
+import org.apache.camel.builder.ExpressionBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.spi.PollingConsumerPollStrategy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -166,6 +172,52 @@ public class DocumentParserApplicationTest {
 		MockEndpoint.assertIsSatisfied(10, TimeUnit.SECONDS, endpoint);
 	}
 	
+	@Test
+	public void testApplicationProcessesManyDocumentsConcurrently() throws Exception {
+		LOGGER.info("Checking many documents are processed by concurrent consumers");
+		
+		final int documentCount = 20;
+		runApplication();
+		
+		final MockEndpoint endpoint = MockEndpoint.resolve(getCamelContext(), "jms:queue:parsed-documents");
+		endpoint.expectedMessageCount(documentCount);
+		endpoint.expectsNoDuplicates(ExpressionBuilder.headerExpression(HeaderNames.SOURCE_FILE_NAME));
+		
+		final File inputFolder = new File("target/test-data/input/auto-detect");
+		for (int index = 0; index < documentCount; index++) {
+			copyInputFixtureToFile("Example2.pdf", inputFolder, "Example2-" + index + ".pdf");
+		}
+		
+		MockEndpoint.assertIsSatisfied(25, TimeUnit.SECONDS, endpoint);
+	}
+	
+	@Test
+	public void testSynchronousRouteDrainsBacklogInOnePoll() throws Exception {
+		LOGGER.info("Checking a backlog is drained by a single poll of a synchronous route");
+		
+		final int documentCount = 10;
+		final File inputFolder = new File("target/test-data/input/discharge-notifications");
+		for (int index = 0; index < documentCount; index++) {
+			copyInputFixtureToFile("Example.pdf", inputFolder, "Example-" + index + ".pdf");
+		}
+		
+		runApplication();
+		
+		// The first poll is delayed until after the application has started
+		final ScheduledPollConsumer consumer = (ScheduledPollConsumer)getCamelContext()
+				.getRoute("parse-document-discharge-notification").getConsumer();
+		final CountingPollStrategy pollStrategy = new CountingPollStrategy(consumer.getPollStrategy());
+		consumer.setPollStrategy(pollStrategy);
+		
+		while (pollStrategy.polledMessages.get() < documentCount) {
+			Thread.sleep(50);
+		}
+		
+		// The polls of a synchronous route are not limited - the whole backlog is taken at once
+		assertEquals(documentCount, pollStrategy.polledMessages.get());
+		assertEquals(1, pollStrategy.nonEmptyPolls.get());
+	}
+	
 	private Map<String, Object> fromJson(final byte[] json) throws IOException {
 		return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
 	}
@@ -182,6 +234,10 @@ public class DocumentParserApplicationTest {
 	}
 	
 	private void copyInputFixtureToFile(final String resourceName, final File outputFolder) throws IOException {
+		copyInputFixtureToFile(resourceName, outputFolder, resourceName);
+	}
+	
+	private void copyInputFixtureToFile(final String resourceName, final File outputFolder, final String fileName) throws IOException {
 		final Resource resource = new ClassPathResource("fixtures/input/" + resourceName);
 		
 		// First write to a temp file
@@ -189,7 +245,7 @@ public class DocumentParserApplicationTest {
 		if (!tempFolder.exists()) {
 			tempFolder.mkdirs();
 		}
-		final File tempFile = new File(tempFolder, resourceName);
+		final File tempFile = new File(tempFolder, fileName);
 		if (tempFile.exists()) {
 			tempFile.delete();
 		}
@@ -206,7 +262,7 @@ public class DocumentParserApplicationTest {
 			Closeables.closeQuietly(in);
 			
 			// Then move to the final destination
-			final File outputFile = new File(outputFolder, resourceName);
+			final File outputFile = new File(outputFolder, fileName);
 			if (!outputFolder.exists()) {
 				outputFolder.mkdirs();
 			}
@@ -217,4 +273,37 @@ public class DocumentParserApplicationTest {
 			Closeables.closeQuietly(in);
 		}
 	}
+	
+	/**
+	 * Counts the polls (and polled messages) of a consumer
+	 */
+	private static class CountingPollStrategy implements PollingConsumerPollStrategy {
+		private final PollingConsumerPollStrategy delegate;
+		private final AtomicInteger nonEmptyPolls = new AtomicInteger();
+		private final AtomicInteger polledMessages = new AtomicInteger();
+		
+		public CountingPollStrategy(final PollingConsumerPollStrategy delegate) {
+			this.delegate = delegate;
+		}
+		
+		@Override
+		public boolean begin(final Consumer consumer, final Endpoint endpoint) {
+			return delegate.begin(consumer, endpoint);
+		}
+		
+		@Override
+		public void commit(final Consumer consumer, final Endpoint endpoint, final int polledMessages) {
+			delegate.commit(consumer, endpoint, polledMessages);
+			if (polledMessages > 0) {
+				nonEmptyPolls.incrementAndGet();
+				this.polledMessages.addAndGet(polledMessages);
+			}
+		}
+		
+		@Override
+		public boolean rollback(final Consumer consumer, final Endpoint endpoint, final int retryCounter,
+				final Exception cause) throws Exception {
+			return delegate.rollback(consumer, endpoint, retryCounter, cause);
+		}
+	}
 }
@@ -0,0 +1,71 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.camel.component.file.GenericFile;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for {@link DocumentPriorityComparator}
+ */
+public class DocumentPriorityComparatorTest {
+	private static final long NOW = 1440000000000L;
+	private static final long KB = 1024;
+	
+	@Test
+	public void testSmallFilesAreOrderedFirst() {
+		final GenericFile<File> large = createFile("large.pdf", 5000 * KB, NOW);
+		final GenericFile<File> medium = createFile("medium.pdf", 200 * KB, NOW);
+		final GenericFile<File> small = createFile("small.pdf", 20 * KB, NOW);
+		
+		assertOrder(new DocumentPriorityComparator<File>(), small, medium, large);
+	}
+	
+	@Test
+	public void testWaitingFilesGainPriority() {
+		// Waited 60 seconds - effective size is reduced by 60 * 100 KiB
+		final GenericFile<File> large = createFile("large.pdf", 5000 * KB, NOW - 60000);
+		final GenericFile<File> small = createFile("small.pdf", 20 * KB, NOW);
+		
+		assertOrder(new DocumentPriorityComparator<File>(), large, small);
+	}
+	
+	@Test
+	public void testZeroAgingRateOrdersBySizeOnly() {
+		final GenericFile<File> large = createFile("large.pdf", 5000 * KB, NOW - 3600000);
+		final GenericFile<File> small = createFile("small.pdf", 20 * KB, NOW);
+		
+		assertOrder(new DocumentPriorityComparator<File>(0), small, large);
+	}
+	
+	@Test
+	public void testTiesAreOrderedByName() {
+		final GenericFile<File> first = createFile("a.pdf", 20 * KB, NOW);
+		final GenericFile<File> second = createFile("b.pdf", 20 * KB, NOW);
+		
+		assertOrder(new DocumentPriorityComparator<File>(), first, second);
+	}
+	
+	@SafeVarargs
+	private static void assertOrder(final DocumentPriorityComparator<File> comparator, final GenericFile<File>... expected) {
+		final List<GenericFile<File>> actual = Lists.newArrayList(expected);
+		Collections.reverse(actual);
+		Collections.sort(actual, comparator);
+		
+		assertEquals(Lists.newArrayList(expected), actual);
+	}
+	
+	private GenericFile<File> createFile(final String name, final long length, final long lastModified) {
+		final GenericFile<File> file = new GenericFile<File>();
+		file.setFileName(name);
+		file.setFileLength(length);
+		file.setLastModified(lastModified);
+		return file;
+	}
+}
@@ -0,0 +1,121 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link InFlightPollingPolicy}
+ */
+public class InFlightPollingPolicyTest {
+	private static final int MAX_IN_FLIGHT = 2;
+	private static final int DOCUMENT_COUNT = 6;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File inputFolder;
+	private CamelContext context;
+	private MockEndpoint resultEndpoint;
+	private InFlightPollingPolicy policy;
+	private CountDownLatch release;
+	private AtomicInteger started;
+	private AtomicInteger maxObservedInFlight;
+
+	@Before
+	public void setup() throws Exception {
+		inputFolder = folder.newFolder("input");
+
+		context = new DefaultCamelContext();
+		resultEndpoint = MockEndpoint.resolve(context, "mock:result");
+		policy = new InFlightPollingPolicy(MAX_IN_FLIGHT);
+		release = new CountDownLatch(1);
+		started = new AtomicInteger();
+		maxObservedInFlight = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		context.stop();
+	}
+
+	@Test
+	public void testPollsAreSkippedWhileAtCapacity() throws Exception {
+		for (int index = 0; index < DOCUMENT_COUNT; index++) {
+			Files.write("document-" + index, new File(inputFolder, "document-" + index + ".txt"), Charsets.UTF_8);
+		}
+
+		resultEndpoint.expectedMessageCount(DOCUMENT_COUNT);
+		startRoute();
+
+		// The route blocks with the maximum number of documents in-flight - subsequent polls are skipped
+		assertTrue("Expected polls to be skipped", waitForSkippedPolls());
+		assertEquals(MAX_IN_FLIGHT, policy.getInFlight());
+		assertEquals(MAX_IN_FLIGHT, started.get());
+
+		// Once released the remaining documents are consumed - never exceeding the limit
+		release.countDown();
+		resultEndpoint.assertIsSatisfied();
+		assertEquals(DOCUMENT_COUNT, started.get());
+		assertTrue(maxObservedInFlight.get() <= MAX_IN_FLIGHT);
+	}
+
+	private boolean waitForSkippedPolls() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			// wait for several skipped polls to be sure no further documents are started
+			if (policy.getSkippedPolls() > 5) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	private void startRoute() throws Exception {
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from("file://" + inputFolder.getAbsolutePath() + "?delete=true&delay=10")
+				.routePolicy(policy)
+				.threads(DOCUMENT_COUNT)
+				.process(new Processor() {
+					@Override
+					public void process(final Exchange exchange) throws Exception {
+						started.incrementAndGet();
+						updateMaxObservedInFlight(policy.getInFlight());
+						assertTrue(release.await(30, TimeUnit.SECONDS));
+					}
+				})
+				.to(resultEndpoint);
+			}
+		});
+		context.start();
+	}
+
+	private void updateMaxObservedInFlight(final int value) {
+		int current;
+		do {
+			current = maxObservedInFlight.get();
+		} while (value > current && !maxObservedInFlight.compareAndSet(current, value));
+	}
+}
@@ -0,0 +1,105 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+import static uk.nhs.ciao.docs.parser.HeaderNames.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentCodec;
+import uk.nhs.ciao.docs.parser.dataformat.ParsedDocumentFormat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link InProgressControlFilesProcessor}
+ */
+public class InProgressControlFilesProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File inProgressFolder;
+	private Exchange exchange;
+	
+	@Before
+	public void setup() throws Exception {
+		inProgressFolder = new File(folder.getRoot(), "in-progress/123");
+		
+		exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setHeader(IN_PROGRESS_FOLDER, inProgressFolder.getAbsolutePath());
+		exchange.getIn().setHeader(COMPLETED_FOLDER, "/data/completed");
+		exchange.getIn().setHeader(ERROR_FOLDER, "/data/error");
+		exchange.getIn().setHeader(TIMESTAMP, 1440000000000L);
+		exchange.getIn().setBody("{\"properties\":{}}".getBytes(Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testControlFilesAndEventAreWritten() throws Exception {
+		new InProgressControlFilesProcessor().process(exchange);
+		assertEntriesWritten();
+	}
+	
+	@Test
+	public void testAtomicWritesLeaveNoTemporaryFiles() throws Exception {
+		new InProgressControlFilesProcessor(true).process(exchange);
+		assertEntriesWritten();
+		
+		assertEquals(2, new File(inProgressFolder, "control").list().length);
+		assertEquals(1, new File(inProgressFolder, "events").list().length);
+	}
+	
+	@Test
+	public void testExistingFilesAreOverwritten() throws Exception {
+		new InProgressControlFilesProcessor(true).process(exchange);
+		
+		exchange.getIn().setHeader(COMPLETED_FOLDER, "/data/other");
+		new InProgressControlFilesProcessor(true).process(exchange);
+		
+		assertEquals("/data/other", read("control/completed-folder"));
+	}
+	
+	@Test
+	public void testBinaryDocumentIsWrittenToEventAsJson() throws Exception {
+		final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		properties.put("key", "value");
+		final ParsedDocument document = new ParsedDocument(new Document("somedoc.pdf", new byte[] {1, 2, 3}), properties);
+		
+		final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		new ParsedDocumentCodec(ParsedDocumentFormat.BINARY).marshal(exchange, document, binary);
+		exchange.getIn().setBody(binary.toByteArray());
+		exchange.getIn().setHeader(PARSED_DOCUMENT_FORMAT, ParsedDocumentFormat.BINARY.getHeaderValue());
+		
+		new InProgressControlFilesProcessor().process(exchange);
+		
+		final ParsedDocument event = new ObjectMapper().readValue(
+				new File(inProgressFolder, "events/20150819-160000000-document-parsed"), ParsedDocument.class);
+		assertEquals("somedoc.pdf", event.getOriginalDocument().getName());
+		assertArrayEquals(new byte[] {1, 2, 3}, event.getOriginalDocument().getContent());
+		assertEquals(properties, event.getProperties());
+		
+		// The published body is unchanged
+		assertArrayEquals(binary.toByteArray(), exchange.getIn().getBody(byte[].class));
+	}
+	
+	private void assertEntriesWritten() throws Exception {
+		assertEquals("/data/completed", read("control/completed-folder"));
+		assertEquals("/data/error", read("control/error-folder"));
+		assertEquals("{\"properties\":{}}", read("events/20150819-160000000-document-parsed"));
+	}
+	
+	private String read(final String path) throws Exception {
+		return Files.toString(new File(inProgressFolder, path), Charsets.UTF_8);
+	}
+}
@@ -0,0 +1,126 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.spi.RoutePolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link InputFolderWatchPolicy}
+ */
+public class InputFolderWatchPolicyTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File inputFolder;
+	private CamelContext context;
+	private MockEndpoint resultEndpoint;
+	private InputFolderWatchPolicy policy;
+
+	@Before
+	public void setup() throws Exception {
+		inputFolder = folder.newFolder("input");
+
+		context = new DefaultCamelContext();
+		resultEndpoint = MockEndpoint.resolve(context, "mock:result");
+		policy = new InputFolderWatchPolicy(inputFolder.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Test
+	public void testCreatedFileTriggersPoll() throws Exception {
+		// The scheduled polls would not pick up the files within the test timeout
+		startRoute();
+
+		resultEndpoint.expectedBodiesReceived("document-1.txt");
+		createFile("document-1.txt");
+		resultEndpoint.assertIsSatisfied();
+
+		resultEndpoint.reset();
+		resultEndpoint.expectedBodiesReceived("document-2.txt");
+		createFile("document-2.txt");
+		resultEndpoint.assertIsSatisfied();
+
+		assertTrue(policy.getTriggeredPolls() >= 2);
+	}
+
+	@Test
+	public void testRestartedRouteIsTriggered() throws Exception {
+		startRoute();
+		context.stopRoute("input");
+		context.startRoute("input");
+
+		resultEndpoint.expectedBodiesReceived("document.txt");
+		createFile("document.txt");
+		resultEndpoint.assertIsSatisfied();
+	}
+
+	@Test
+	public void testRestartedRouteWithInFlightPolicyIsTriggered() throws Exception {
+		// Both policies wrap the poll strategy of the same consumer
+		final InFlightPollingPolicy inFlightPolicy = new InFlightPollingPolicy(2);
+		startRoute(inFlightPolicy, policy);
+
+		resultEndpoint.expectedBodiesReceived("document-1.txt");
+		createFile("document-1.txt");
+		resultEndpoint.assertIsSatisfied();
+
+		context.stopRoute("input");
+		context.startRoute("input");
+		context.stopRoute("input");
+		context.startRoute("input");
+
+		resultEndpoint.reset();
+		resultEndpoint.expectedBodiesReceived("document-2.txt");
+		createFile("document-2.txt");
+		resultEndpoint.assertIsSatisfied();
+
+		assertFalse(PollStrategyChain.contains(policy.getDelegate(), policy));
+		assertFalse(PollStrategyChain.contains(inFlightPolicy.getDelegate(), inFlightPolicy));
+	}
+
+	/**
+	 * Creates the file outside of the input folder then moves it in - so the consumer never sees
+	 * a partially written file
+	 */
+	private void createFile(final String name) throws Exception {
+		final File file = new File(folder.getRoot(), name);
+		Files.write(name, file, Charsets.UTF_8);
+		Files.move(file, new File(inputFolder, name));
+	}
+
+	private void startRoute() throws Exception {
+		startRoute(policy);
+	}
+
+	private void startRoute(final RoutePolicy... policies) throws Exception {
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from("file://" + inputFolder.getAbsolutePath() + "?delete=true&initialDelay=60000&delay=60000")
+				.routeId("input")
+				.routePolicy(policies)
+				.convertBodyTo(String.class)
+				.to(resultEndpoint);
+			}
+		});
+		context.start();
+	}
+}
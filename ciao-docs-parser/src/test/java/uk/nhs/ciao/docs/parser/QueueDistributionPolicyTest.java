@@ -0,0 +1,202 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IQueue;
+
+/**
+ * Tests for {@link QueueDistributionPolicy} running on a two-node embedded cluster
+ */
+public class QueueDistributionPolicyTest {
+	private static final String QUEUE_NAME = "documents";
+	private static final int QUEUE_CAPACITY = 3;
+	private static final long TIMEOUT_MILLIS = 20000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File inputFolder;
+	private Node node1;
+	private Node node2;
+
+	@Before
+	public void setup() throws Exception {
+		inputFolder = folder.newFolder("input");
+
+		final String groupName = "ciao-docs-parser-test-" + UUID.randomUUID();
+		node1 = new Node(createConfig(groupName));
+		node2 = new Node(createConfig(groupName));
+		assertEquals(2, node1.hazelcastInstance.getCluster().getMembers().size());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try {
+			node1.stop();
+		} finally {
+			node2.stop();
+		}
+	}
+
+	@Test
+	public void testOnlyTheLeaderDistributesFiles() throws Exception {
+		for (int index = 0; index < 5; index++) {
+			Files.write("document-" + index, new File(inputFolder, "document-" + index + ".txt"), Charsets.UTF_8);
+		}
+
+		node1.start();
+		node2.start();
+		final Node leader = waitForLeader();
+		final Node follower = leader == node1 ? node2 : node1;
+
+		// Distribution stops once the queue is full
+		final IQueue<Object> queue = leader.hazelcastInstance.getQueue(QUEUE_NAME);
+		waitForSkippedPolls(leader);
+		assertEquals(QUEUE_CAPACITY, queue.size());
+		assertEquals(QUEUE_CAPACITY, leader.distributed.get());
+
+		// ... and resumes as the queue is drained
+		final Set<Object> received = Sets.newHashSet();
+		while (received.size() < 5) {
+			final Object name = queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			assertNotNull("Timed out waiting for distributed files", name);
+			received.add(name);
+		}
+
+		assertEquals(5, leader.distributed.get());
+		assertEquals(0, follower.distributed.get());
+		assertFalse(follower.policy.isLeader());
+	}
+
+	@Test
+	public void testFollowerTakesOverWhenLeaderStops() throws Exception {
+		node1.start();
+		node2.start();
+		final Node leader = waitForLeader();
+		final Node follower = leader == node1 ? node2 : node1;
+
+		leader.stop();
+		assertSame(follower, waitForLeader());
+
+		Files.write("document", new File(inputFolder, "document.txt"), Charsets.UTF_8);
+		final IQueue<Object> queue = follower.hazelcastInstance.getQueue(QUEUE_NAME);
+		assertEquals("document.txt", queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		assertEquals(1, follower.distributed.get());
+	}
+
+	private Node waitForLeader() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (System.currentTimeMillis() < deadline) {
+			final boolean leader1 = node1.isLeader();
+			final boolean leader2 = node2.isLeader();
+			assertFalse("Both nodes are leaders", leader1 && leader2);
+
+			if (leader1) {
+				return node1;
+			} else if (leader2) {
+				return node2;
+			}
+			Thread.sleep(10);
+		}
+
+		fail("Timed out waiting for leader election");
+		return null;
+	}
+
+	private void waitForSkippedPolls(final Node node) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (node.policy.getSkippedPolls() == 0) {
+			assertTrue("Timed out waiting for skipped polls", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static Config createConfig(final String groupName) {
+		final Config config = new Config();
+		config.getGroupConfig().setName(groupName);
+		config.setProperty("hazelcast.phone.home.enabled", "false");
+
+		final JoinConfig join = config.getNetworkConfig().setPort(5801).setPortAutoIncrement(true).getJoin();
+		join.getMulticastConfig().setEnabled(false);
+		join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+		return config;
+	}
+
+	/**
+	 * A cluster node listing the shared input folder
+	 */
+	private class Node {
+		private final HazelcastInstance hazelcastInstance;
+		private final QueueDistributionPolicy policy;
+		private final AtomicInteger distributed;
+		private final CamelContext context;
+		private boolean stopped;
+
+		public Node(final Config config) {
+			this.hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+			this.policy = new QueueDistributionPolicy(hazelcastInstance, QUEUE_NAME, QUEUE_CAPACITY);
+			this.distributed = new AtomicInteger();
+			this.context = new DefaultCamelContext();
+		}
+
+		public boolean isLeader() {
+			return !stopped && policy.isLeader();
+		}
+
+		public void start() throws Exception {
+			context.addRoutes(new RouteBuilder() {
+				@Override
+				public void configure() throws Exception {
+					from("file://" + inputFolder.getAbsolutePath() + "?delete=true&delay=10")
+					.routePolicy(policy)
+					.process(new Processor() {
+						@Override
+						public void process(final Exchange exchange) throws Exception {
+							final String name = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+							hazelcastInstance.getQueue(QUEUE_NAME).put(name);
+							distributed.incrementAndGet();
+						}
+					});
+				}
+			});
+			context.start();
+		}
+
+		public void stop() throws Exception {
+			if (stopped) {
+				return;
+			}
+
+			stopped = true;
+			try {
+				context.stop();
+			} finally {
+				hazelcastInstance.shutdown();
+			}
+		}
+	}
+}
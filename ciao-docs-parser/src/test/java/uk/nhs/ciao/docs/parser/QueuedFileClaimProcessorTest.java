@@ -0,0 +1,115 @@
+package uk.nhs.ciao.docs.parser;
+
+import static org.junit.Assert.*;
+import static uk.nhs.ciao.docs.parser.HeaderNames.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.Synchronization;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link QueuedFileClaimProcessor}
+ */
+public class QueuedFileClaimProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File inputFile;
+	private File inProgressFolder;
+	private File errorFolder;
+	private MemoryIdempotentRepository inProgressRepository;
+	private QueuedFileClaimProcessor processor;
+	private Exchange exchange;
+	
+	@Before
+	public void setup() throws Exception {
+		inputFile = new File(folder.getRoot(), "input/example.pdf");
+		Files.createParentDirs(inputFile);
+		Files.write("content", inputFile, Charsets.UTF_8);
+		
+		inProgressFolder = new File(folder.getRoot(), "in-progress/123");
+		errorFolder = new File(folder.getRoot(), "error/123");
+		
+		inProgressRepository = new MemoryIdempotentRepository();
+		processor = new QueuedFileClaimProcessor(inProgressRepository);
+		exchange = createExchange();
+	}
+	
+	@Test
+	public void testFileIsClaimed() throws Exception {
+		processor.process(exchange);
+		
+		assertNull(exchange.getProperty(Exchange.ROUTE_STOP));
+		assertEquals(inputFile, exchange.getIn().getBody());
+		assertEquals("example.pdf", exchange.getIn().getHeader(Exchange.FILE_NAME_ONLY));
+		assertEquals(7L, exchange.getIn().getHeader(Exchange.FILE_LENGTH));
+		assertTrue(inProgressRepository.contains(inputFile.getAbsolutePath()));
+	}
+	
+	@Test
+	public void testClaimedFileIsSkipped() throws Exception {
+		inProgressRepository.add(inputFile.getAbsolutePath());
+		processor.process(exchange);
+		
+		assertEquals(Boolean.TRUE, exchange.getProperty(Exchange.ROUTE_STOP));
+	}
+	
+	@Test
+	public void testMissingFileIsSkipped() throws Exception {
+		inputFile.delete();
+		processor.process(exchange);
+		
+		assertEquals(Boolean.TRUE, exchange.getProperty(Exchange.ROUTE_STOP));
+		assertFalse(inProgressRepository.contains(inputFile.getAbsolutePath()));
+	}
+	
+	@Test
+	public void testFileIsMovedToInProgressFolderOnCompletion() throws Exception {
+		processor.process(exchange);
+		for (final Synchronization synchronization: completions()) {
+			synchronization.onComplete(exchange);
+		}
+		
+		assertFalse(inputFile.exists());
+		assertTrue(new File(inProgressFolder, "input/example.pdf").isFile());
+		assertFalse(inProgressRepository.contains(inputFile.getAbsolutePath()));
+	}
+	
+	@Test
+	public void testFileIsMovedToErrorFolderOnFailure() throws Exception {
+		processor.process(exchange);
+		for (final Synchronization synchronization: completions()) {
+			synchronization.onFailure(exchange);
+		}
+		
+		assertFalse(inputFile.exists());
+		assertTrue(new File(errorFolder, "input/example.pdf").isFile());
+		assertFalse(inProgressRepository.contains(inputFile.getAbsolutePath()));
+	}
+	
+	private Exchange createExchange() {
+		final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(inputFile.getAbsolutePath());
+		exchange.getIn().setHeader(IN_PROGRESS_FOLDER, inProgressFolder.getAbsolutePath());
+		exchange.getIn().setHeader(ERROR_FOLDER, errorFolder.getAbsolutePath());
+		return exchange;
+	}
+	
+	private List<Synchronization> completions() {
+		final List<Synchronization> completions = exchange.handoverCompletions();
+		assertEquals(1, completions.size());
+		return completions;
+	}
+}
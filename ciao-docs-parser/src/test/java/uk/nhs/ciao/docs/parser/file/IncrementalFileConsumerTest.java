@@ -0,0 +1,167 @@
+package uk.nhs.ciao.docs.parser.file;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.SimpleRegistry;
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link IncrementalFileConsumer}
+ */
+public class IncrementalFileConsumerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File inputFolder;
+	private File cursorFile;
+	private SimpleRegistry registry;
+	private CamelContext context;
+	private MockEndpoint resultEndpoint;
+	
+	@Before
+	public void setup() throws Exception {
+		inputFolder = folder.newFolder("input");
+		cursorFile = new File(folder.getRoot(), ".listing-cursor");
+		
+		registry = new SimpleRegistry();
+		context = new DefaultCamelContext(registry);
+		context.addComponent(IncrementalFileComponent.SCHEME, new IncrementalFileComponent());
+		resultEndpoint = MockEndpoint.resolve(context, "mock:result");
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+	
+	@Test
+	public void testFilesAreConsumedInBatchesOldestFirst() throws Exception {
+		for (int index = 0; index < 25; index++) {
+			createFile("document-" + index + ".txt", 1447767609000L + index * 1000);
+		}
+		
+		resultEndpoint.expectedMessageCount(25);
+		resultEndpoint.expectedBodiesReceived(expectedBodies(0, 25));
+		startRoute("maxMessagesPerPoll=10");
+		
+		resultEndpoint.assertIsSatisfied();
+		assertTrue(cursorFile.isFile());
+		assertEquals("1447767633000\tdocument-24.txt", Files.toString(cursorFile, Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testConsumerResumesFromPersistedCursor() throws Exception {
+		createFile("document-0.txt", 1447767609000L);
+		createFile("document-1.txt", 1447767610000L);
+		Files.write("1447767609000\tdocument-0.txt", cursorFile, Charsets.UTF_8);
+		
+		resultEndpoint.expectedBodiesReceived("document-1.txt");
+		startRoute("maxMessagesPerPoll=10");
+		
+		resultEndpoint.assertIsSatisfied();
+	}
+	
+	@Test
+	public void testSkippedFilesArePickedUpByRescan() throws Exception {
+		createFile("document-1.txt", 1447767610000L);
+		Files.write("1447767611000\tdocument-2.txt", cursorFile, Charsets.UTF_8);
+		
+		resultEndpoint.expectedBodiesReceived("document-1.txt");
+		startRoute("rescanInterval=1");
+		
+		resultEndpoint.assertIsSatisfied();
+	}
+	
+	@Test
+	public void testUnchangedCursorIsNotRewritten() throws Exception {
+		createFile("document-0.txt", 1447767609000L);
+		
+		resultEndpoint.expectedBodiesReceived("document-0.txt");
+		startRoute("maxMessagesPerPoll=10");
+		resultEndpoint.assertIsSatisfied();
+		
+		// Later polls find no new files - so should leave the cursor file untouched
+		assertTrue(cursorFile.setLastModified(1000L));
+		Thread.sleep(500);
+		assertEquals(1000L, cursorFile.lastModified());
+		assertEquals("1447767609000\tdocument-0.txt", Files.toString(cursorFile, Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testInProgressFileHoldsCursor() throws Exception {
+		createFile("document-0.txt", 1447767609000L);
+		createFile("document-1.txt", 1447767610000L);
+		
+		final String claimedPath = new File(inputFolder, "document-0.txt").getAbsolutePath();
+		final IdempotentRepository<String> claims = MemoryIdempotentRepository.memoryIdempotentRepository();
+		claims.add(claimedPath);
+		registry.put("claims", claims);
+		
+		// The oldest file is in progress elsewhere - newer files are still consumed, but the cursor is held
+		resultEndpoint.expectedBodiesReceived("document-1.txt");
+		startRoute("inProgressRepository=#claims");
+		resultEndpoint.assertIsSatisfied();
+		Thread.sleep(100);
+		assertFalse(cursorFile.exists());
+		
+		// Once released the file is picked up without waiting for a rescan
+		resultEndpoint.reset();
+		resultEndpoint.expectedBodiesReceived("document-0.txt");
+		claims.remove(claimedPath);
+		resultEndpoint.assertIsSatisfied();
+		
+		// document-1 is already in the idempotent repository - so no longer holds the cursor
+		assertCursor("1447767610000\tdocument-1.txt");
+	}
+	
+	private void assertCursor(final String expected) throws Exception {
+		// The cursor is saved once the whole batch has been processed
+		for (int attempt = 0; attempt < 50 && !cursorFile.isFile(); attempt++) {
+			Thread.sleep(100);
+		}
+		assertTrue(cursorFile.isFile());
+		assertEquals(expected, Files.toString(cursorFile, Charsets.UTF_8));
+	}
+	
+	private void startRoute(final String options) throws Exception {
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from(IncrementalFileComponent.SCHEME + "://" + inputFolder.getAbsolutePath() + "?noop=true&delay=10&" +
+						"cursorFile=" + cursorFile.getAbsolutePath() + "&" + options)
+				.convertBodyTo(String.class)
+				.to(resultEndpoint);
+			}
+		});
+		context.start();
+	}
+	
+	private void createFile(final String name, final long lastModified) throws Exception {
+		final File file = new File(inputFolder, name);
+		Files.write(name, file, Charsets.UTF_8);
+		assertTrue(file.setLastModified(lastModified));
+	}
+	
+	private Object[] expectedBodies(final int from, final int to) {
+		final Object[] bodies = new Object[to - from];
+		for (int index = from; index < to; index++) {
+			bodies[index - from] = "document-" + index + ".txt";
+		}
+		return bodies;
+	}
+}
@@ -0,0 +1,187 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Tests for {@link BatchingHazelcastIdempotentRepository} running on a two-member embedded cluster
+ */
+public class BatchingHazelcastIdempotentRepositoryTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchingHazelcastIdempotentRepositoryTest.class);
+	private static final String MAP_NAME = "file-inprogress-repository";
+	
+	private HazelcastInstance member1;
+	private HazelcastInstance member2;
+	private BatchingHazelcastIdempotentRepository repository1;
+	private BatchingHazelcastIdempotentRepository repository2;
+	
+	@Before
+	public void setup() throws Exception {
+		final String groupName = "ciao-docs-parser-test-" + UUID.randomUUID();
+		member1 = Hazelcast.newHazelcastInstance(createConfig(groupName));
+		member2 = Hazelcast.newHazelcastInstance(createConfig(groupName));
+		assertEquals(2, member1.getCluster().getMembers().size());
+		
+		repository1 = new BatchingHazelcastIdempotentRepository(member1, MAP_NAME);
+		repository1.start();
+		
+		repository2 = new BatchingHazelcastIdempotentRepository(member2, MAP_NAME);
+		repository2.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		try {
+			repository1.stop();
+			repository2.stop();
+		} finally {
+			member1.shutdown();
+			member2.shutdown();
+		}
+	}
+	
+	@Test
+	public void testKeyClaimedByAnotherMemberIsNotAdded() {
+		assertTrue(repository1.add("/input/example.pdf"));
+		assertFalse(repository2.add("/input/example.pdf"));
+		assertTrue(repository2.contains("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testClaimedKeysAreNearCached() {
+		assertTrue(repository1.add("/input/example.pdf"));
+		
+		assertTrue(repository1.contains("/input/example.pdf"));
+		assertFalse(repository1.add("/input/example.pdf"));
+		assertEquals(2, repository1.getNearCacheHits());
+	}
+	
+	@Test
+	public void testRemovedKeyCanBeClaimedAgain() {
+		repository1.add("/input/example.pdf");
+		
+		assertTrue(repository1.remove("/input/example.pdf"));
+		assertFalse(repository1.contains("/input/example.pdf"));
+		assertTrue(repository2.add("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testEachKeyIsClaimedOnceAcrossMembers() throws Exception {
+		final int consumersPerMember = 8;
+		final int keys = 5000;
+		final AtomicInteger claimed = new AtomicInteger();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final ExecutorService executorService = Executors.newFixedThreadPool(consumersPerMember * 2);
+		final long start;
+		try {
+			final List<Future<Void>> futures = Lists.newArrayList();
+			for (int consumer = 0; consumer < consumersPerMember * 2; consumer++) {
+				final BatchingHazelcastIdempotentRepository repository = consumer % 2 == 0 ? repository1 : repository2;
+				final int offset = consumer * 313;
+				futures.add(executorService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						startLatch.await();
+						for (int count = 0; count < keys; count++) {
+							if (repository.add("/input/example-" + ((offset + count) % keys) + ".pdf")) {
+								claimed.incrementAndGet();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			
+			start = System.nanoTime();
+			startLatch.countDown();
+			for (final Future<Void> future: futures) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final long batches = repository1.getBatches() + repository2.getBatches();
+		LOGGER.info(String.format("Claimed %d keys in %.2fs (%.0f claims/s, %d remote batches, %d near-cache hits)",
+				keys, seconds, keys / seconds, batches, repository1.getNearCacheHits() + repository2.getNearCacheHits()));
+		
+		assertEquals(keys, claimed.get());
+		assertEquals(keys, repository1.getClaims() + repository2.getClaims());
+		assertTrue("Expected claims to be batched", batches < (long)keys * 2);
+	}
+	
+	@Test
+	public void testEveryAdderIsClaimedWhenBatchesAreFull() throws Exception {
+		final int maxBatchSize = 2;
+		final int adders = 16;
+		final BatchingHazelcastIdempotentRepository repository = new BatchingHazelcastIdempotentRepository(member1, MAP_NAME);
+		repository.setMaxBatchSize(maxBatchSize);
+		repository.start();
+		
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final ExecutorService executorService = Executors.newFixedThreadPool(adders);
+		try {
+			final List<Future<Integer>> futures = Lists.newArrayList();
+			for (int adder = 0; adder < adders; adder++) {
+				final int offset = adder * 100;
+				futures.add(executorService.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						startLatch.await();
+						int claimed = 0;
+						for (int count = 0; count < 100; count++) {
+							if (repository.add("/input/example-" + (offset + count) + ".pdf")) {
+								claimed++;
+							}
+						}
+						return claimed;
+					}
+				}));
+			}
+			
+			startLatch.countDown();
+			for (final Future<Integer> future: futures) {
+				// Every key is distinct - so every add must claim its key
+				assertEquals(Integer.valueOf(100), future.get());
+			}
+		} finally {
+			executorService.shutdownNow();
+			repository.stop();
+		}
+		
+		assertEquals(adders * 100, repository.getClaims());
+		assertTrue(repository.getBatches() >= adders * 100 / maxBatchSize);
+	}
+	
+	private static Config createConfig(final String groupName) {
+		final Config config = new Config();
+		config.getGroupConfig().setName(groupName);
+		config.setProperty("hazelcast.phone.home.enabled", "false");
+		
+		final JoinConfig join = config.getNetworkConfig().setPort(5801).setPortAutoIncrement(true).getJoin();
+		join.getMulticastConfig().setEnabled(false);
+		join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+		return config;
+	}
+}
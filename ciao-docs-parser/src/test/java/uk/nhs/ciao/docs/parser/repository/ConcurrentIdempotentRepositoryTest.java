@@ -0,0 +1,139 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import uk.nhs.ciao.util.Clock;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for {@link ConcurrentIdempotentRepository}
+ */
+public class ConcurrentIdempotentRepositoryTest {
+	private static final long START = 1447767609936L;
+	
+	private Clock clock;
+	private ConcurrentIdempotentRepository repository;
+	
+	@Before
+	public void setup() throws Exception {
+		clock = Mockito.mock(Clock.class);
+		Mockito.when(clock.getMillis()).thenReturn(START);
+		
+		repository = new ConcurrentIdempotentRepository();
+		repository.setTimeToLiveSeconds(60);
+		repository.setClock(clock);
+		repository.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+	
+	@Test
+	public void testAddAndContains() {
+		assertTrue(repository.add("/input/example.pdf"));
+		assertFalse(repository.add("/input/example.pdf"));
+		
+		assertTrue(repository.contains("/input/example.pdf"));
+		assertFalse(repository.contains("/input/other.pdf"));
+		assertEquals(1, repository.getSize());
+	}
+	
+	@Test
+	public void testRemove() {
+		repository.add("/input/example.pdf");
+		
+		assertTrue(repository.remove("/input/example.pdf"));
+		assertFalse(repository.remove("/input/example.pdf"));
+		assertFalse(repository.contains("/input/example.pdf"));
+		assertTrue(repository.add("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testEntriesExpire() {
+		repository.add("/input/example.pdf");
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 60000);
+		assertFalse(repository.contains("/input/example.pdf"));
+		assertTrue(repository.add("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testExpiredEntriesAreSwept() {
+		for (int index = 0; index < 100; index++) {
+			repository.add("/input/example-" + index + ".pdf");
+		}
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 30000);
+		repository.add("/input/later.pdf");
+		assertEquals(101, repository.getSize());
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 61000);
+		repository.add("/input/other.pdf");
+		assertEquals(2, repository.getSize());
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 200000);
+		repository.add("/input/other.pdf");
+		assertEquals(1, repository.getSize());
+	}
+	
+	@Test
+	public void testReaddedEntriesAreNotSweptEarly() {
+		repository.add("/input/example.pdf");
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 30000);
+		repository.remove("/input/example.pdf");
+		repository.add("/input/example.pdf");
+		
+		Mockito.when(clock.getMillis()).thenReturn(START + 61000);
+		repository.add("/input/other.pdf");
+		assertTrue(repository.contains("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testOnlyOneConsumerClaimsEachKey() throws Exception {
+		final int consumers = 16;
+		final int keys = 1000;
+		final AtomicInteger claimed = new AtomicInteger();
+		final ExecutorService executorService = Executors.newFixedThreadPool(consumers);
+		try {
+			final List<Future<Void>> futures = Lists.newArrayList();
+			for (int consumer = 0; consumer < consumers; consumer++) {
+				futures.add(executorService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int index = 0; index < keys; index++) {
+							if (repository.add("/input/example-" + index + ".pdf")) {
+								claimed.incrementAndGet();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			
+			for (final Future<Void> future: futures) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		
+		assertEquals(keys, claimed.get());
+		assertEquals(keys, repository.getSize());
+	}
+}
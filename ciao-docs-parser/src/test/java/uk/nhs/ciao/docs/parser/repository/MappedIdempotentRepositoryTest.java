@@ -0,0 +1,163 @@
+package uk.nhs.ciao.docs.parser.repository;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import uk.nhs.ciao.util.Clock;
+
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link MappedIdempotentRepository}
+ */
+public class MappedIdempotentRepositoryTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File file;
+	private Clock clock;
+	private MappedIdempotentRepository repository;
+	
+	@Before
+	public void setup() throws Exception {
+		file = new File(folder.getRoot(), "repository");
+		clock = Mockito.mock(Clock.class);
+		Mockito.when(clock.getMillis()).thenReturn(1447767609936L);
+		
+		repository = createRepository();
+		repository.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+	
+	@Test
+	public void testAddAndContains() {
+		assertTrue(repository.add("/input/example.pdf"));
+		assertFalse(repository.add("/input/example.pdf"));
+		
+		assertTrue(repository.contains("/input/example.pdf"));
+		assertFalse(repository.contains("/input/other.pdf"));
+		assertEquals(1, repository.getSize());
+	}
+	
+	@Test
+	public void testRemove() {
+		repository.add("/input/example.pdf");
+		
+		assertTrue(repository.remove("/input/example.pdf"));
+		assertFalse(repository.remove("/input/example.pdf"));
+		assertFalse(repository.contains("/input/example.pdf"));
+		assertTrue(repository.add("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testEntriesExpire() {
+		repository.add("/input/example.pdf");
+		
+		Mockito.when(clock.getMillis()).thenReturn(1447767609936L + 60000);
+		assertFalse(repository.contains("/input/example.pdf"));
+		assertEquals(0, repository.getSize());
+		assertTrue(repository.add("/input/example.pdf"));
+	}
+	
+	@Test
+	public void testEntriesSurviveRestart() throws Exception {
+		repository.add("/input/example.pdf");
+		repository.stop();
+		
+		repository = createRepository();
+		repository.setCapacity(16); // the capacity of the existing file is retained
+		repository.start();
+		
+		assertTrue(repository.contains("/input/example.pdf"));
+		assertEquals(1024, repository.getCapacity());
+	}
+	
+	@Test
+	public void testCollidingSlotsAreProbed() {
+		for (int index = 0; index < 1000; index++) {
+			assertTrue(repository.add("/input/example-" + index + ".pdf"));
+		}
+		
+		repository.remove("/input/example-500.pdf");
+		for (int index = 0; index < 1000; index++) {
+			assertEquals(index != 500, repository.contains("/input/example-" + index + ".pdf"));
+		}
+	}
+	
+	@Test
+	public void testRemovedAndExpiredSlotsAreEmptied() throws Exception {
+		for (int index = 0; index < 5000; index++) {
+			assertTrue(repository.add("/input/removed-" + index + ".pdf"));
+			assertTrue(repository.remove("/input/removed-" + index + ".pdf"));
+		}
+		
+		for (int index = 0; index < 500; index++) {
+			assertTrue(repository.add("/input/expired-" + index + ".pdf"));
+		}
+		Mockito.when(clock.getMillis()).thenReturn(1447767609936L + 60000);
+		for (int index = 0; index < 500; index++) {
+			assertTrue(repository.add("/input/example-" + index + ".pdf"));
+		}
+		assertEquals(500, repository.getSize());
+		
+		// Slots are only marked as removed while entries are shifted back - none should remain
+		repository.stop();
+		assertEquals(0, countRemovedSlots());
+		
+		repository = createRepository();
+		repository.start();
+		for (int index = 0; index < 500; index++) {
+			assertTrue(repository.contains("/input/example-" + index + ".pdf"));
+		}
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testAddFailsWhenFull() throws Exception {
+		repository.stop();
+		file.delete();
+		
+		repository = createRepository();
+		repository.setCapacity(4);
+		repository.start();
+		
+		for (int index = 0; index < 5; index++) {
+			repository.add("/input/example-" + index + ".pdf");
+		}
+	}
+	
+	/**
+	 * Counts the slots marked as removed in the repository file
+	 */
+	private int countRemovedSlots() throws Exception {
+		final ByteBuffer buffer = ByteBuffer.wrap(Files.toByteArray(file));
+		final int capacity = buffer.getInt(4);
+		int removed = 0;
+		for (int index = 0; index < capacity; index++) {
+			if (buffer.getLong(16 + index * 24 + 16) == -1) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+	
+	private MappedIdempotentRepository createRepository() {
+		final MappedIdempotentRepository repository = new MappedIdempotentRepository(file.getAbsolutePath());
+		repository.setCapacity(1000);
+		repository.setTimeToLiveSeconds(60);
+		repository.setClock(clock);
+		return repository;
+	}
+}